@@ -3,6 +3,7 @@ import type { Request, Response } from 'express';
 import { UserModel, type CreateUserData } from '../db/models/User';
 import { generateToken } from '../middleware/auth';
 import { DEBUG } from '../config/env';
+import { invalidateLeaderboard } from '../services/gameService';
 
 /**
  * Register a new user
@@ -202,6 +203,11 @@ export const updateProfile = async (req: Request, res: Response): Promise<void>
     }
 
     const updatedUser = await UserModel.updateProfile(req.user.id, updates);
+    // The leaderboard shows usernames, so cached copies are stale after a rename.
+    // The name in the token may be older than the stored one, so any rename counts
+    if (username) {
+      invalidateLeaderboard();
+    }
     
     res.json({
       message: 'Profile updated successfully',
@@ -5,15 +5,48 @@ import { GameSessionModel } from '../db/models/GameSession';
 import { DEBUG } from '../config/env';
 import * as gameService from '../services/gameService';
 
+// Largest page a client may ask for
+const MAX_LEADERBOARD_PAGE = 200;
+
 /**
- * Get leaderboard
+ * Get leaderboard, paged with ?offset=&limit=
  */
 export const getLeaderboard = async (req: Request, res: Response): Promise<void> => {
   try {
-    const limit = parseInt(req.query.limit as string) || 10;
-    const leaderboard = await UserModel.getLeaderboard(limit);
+    const limit = Math.min(parseInt(req.query.limit as string) || 10, MAX_LEADERBOARD_PAGE);
+    const offset = Math.max(parseInt(req.query.offset as string) || 0, 0);
+
+    // Clients keep a copy and revalidate it: answer 304 without querying the
+    // database if nothing changed since their copy. The ETag carries a version
+    // bumped by every finished game or rename, so it is exact; Last-Modified only has whole
+    // seconds, so it is used only by clients that send no ETag (RFC 7232 §3.3).
+    const etag = `"lb-${gameService.getLeaderboardVersion()}-${offset}-${limit}"`;
+    const lastModified = gameService.getLeaderboardModifiedAt();
+    res.set('ETag', etag);
+    res.set('Last-Modified', lastModified.toUTCString());
+    res.set('Cache-Control', 'no-cache');
+
+    const ifNoneMatch = req.get('If-None-Match');
+    if (ifNoneMatch !== undefined) {
+      const tags = ifNoneMatch.split(',').map(tag => tag.trim().replace(/^W\//, ''));
+      if (tags.includes(etag) || tags.includes('*')) {
+        res.status(304).end();
+        return;
+      }
+    } else {
+      const ifModifiedSince = Date.parse(req.get('If-Modified-Since') || '');
+      if (!Number.isNaN(ifModifiedSince) && lastModified.getTime() <= ifModifiedSince) {
+        res.status(304).end();
+        return;
+      }
+    }
+
+    const [leaderboard, total] = await Promise.all([
+      UserModel.getLeaderboard(limit, offset),
+      UserModel.getLeaderboardSize(),
+    ]);
     
-    res.json({ leaderboard });
+    res.json({ leaderboard, offset, total });
   } catch (error) {
     if (DEBUG) {
       console.error('Get leaderboard error:', error);
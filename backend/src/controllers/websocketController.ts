@@ -109,6 +109,12 @@ export const setupWebSocketServer = (server: Server): WebSocketServer => {
           case 'attack':
             gameService.handleAttack(player, data);
             break;
+          case 'subscribe_leaderboard':
+            gameService.handleLeaderboardSubscription(player, true);
+            break;
+          case 'unsubscribe_leaderboard':
+            gameService.handleLeaderboardSubscription(player, false);
+            break;
           case 'join_friend':
             gameService.handleJoinFriend(player, data.friend_username, wss.clients);
             break;
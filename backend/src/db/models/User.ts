@@ -21,6 +21,10 @@ export interface UserStats {
   avg_win_duration: number | null;
 }
 
+export interface LeaderboardPosition extends UserStats {
+  rank: number;              // 1-based position in the leaderboard order
+}
+
 export interface CreateUserData {
   username: string;
   email: string;
@@ -97,20 +101,56 @@ export class UserModel {
   }
 
   /**
-   * Get leaderboard (top players by wins)
+   * Get leaderboard (top players by wins), one page at a time
    */
-  static async getLeaderboard(limit: number = 10): Promise<UserStats[]> {
-    // Ensure limit is a positive integer and convert to string for MySQL compatibility
+  static async getLeaderboard(limit: number = 10, offset: number = 0): Promise<UserStats[]> {
+    // Ensure limit and offset are non-negative integers and convert to string for MySQL compatibility
     const safeLimit = Math.max(1, Math.floor(limit));
+    const safeOffset = Math.max(0, Math.floor(offset));
+    // id breaks ties so pages do not overlap or skip players
     const query = `
       SELECT id, username, wins, losses, total_games, win_percentage, avg_win_duration FROM user_stats 
       WHERE total_games > 0 
-      ORDER BY wins DESC, win_percentage DESC 
-      LIMIT ${safeLimit}
+      ORDER BY wins DESC, win_percentage DESC, id ASC 
+      LIMIT ${safeLimit} OFFSET ${safeOffset}
     `;
     return executeQuery<UserStats[]>(query, []);
   }
 
+  /**
+   * Count the players on the leaderboard
+   */
+  static async getLeaderboardSize(): Promise<number> {
+    const query = 'SELECT COUNT(*) AS total FROM user_stats WHERE total_games > 0';
+    const rows = await executeQuery<{ total: number }[]>(query, []);
+    return Number(rows[0]?.total ?? 0);
+  }
+
+  /**
+   * Get the stats and leaderboard rank of a user, or null if the user is not ranked yet
+   */
+  static async getLeaderboardPosition(userId: number): Promise<LeaderboardPosition | null> {
+    const stats = await this.getUserStats(userId);
+    if (!stats || stats.total_games <= 0) {
+      return null;
+    }
+    // Count the players ahead in the order of getLeaderboard
+    const query = `
+      SELECT COUNT(*) AS ahead FROM user_stats
+      WHERE total_games > 0 AND (
+        wins > ?
+        OR (wins = ? AND win_percentage > ?)
+        OR (wins = ? AND win_percentage = ? AND id < ?)
+      )
+    `;
+    const rows = await executeQuery<{ ahead: number }[]>(query, [
+      stats.wins,
+      stats.wins, stats.win_percentage,
+      stats.wins, stats.win_percentage, stats.id,
+    ]);
+    return { ...stats, rank: Number(rows[0]?.ahead ?? 0) + 1 };
+  }
+
   /**
    * Update user profile
    */
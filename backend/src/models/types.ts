@@ -24,4 +24,5 @@ export interface Player {
   username: string;          // Username from database
   gameSessionId?: number;    // Database game session ID
   gameStartTime?: Date;      // When the current game started
+  leaderboardSubscriber?: boolean; // Receives leaderboard_delta messages
 }
@@ -3,7 +3,7 @@ import { WebSocket } from 'ws';
 import type { Player, Ship } from '../models/types';
 import { DEBUG } from '../config/env';
 import { verifyToken } from '../middleware/auth';
-import { UserModel } from '../db/models/User';
+import { UserModel, type LeaderboardPosition } from '../db/models/User';
 import { GameSessionModel } from '../db/models/GameSession';
 
 // Game state variables
@@ -11,6 +11,15 @@ const players = new Map<string, Player>(); // Stores all active players by usern
 let waitingPlayer: Player | null = null;   // Holds the player waiting in the queue
 let activeGames = 0;                       // Counts active games
 let playersInQueue = 0;                    // Tracks players in the queue
+// Bumped every time the leaderboard may have changed, used in its ETag. Unlike a
+// date, it changes even when two games end within the same second. It restarts at 0
+// with the server, so the ETag also carries the time the server started: clients keep
+// ETags on disk across restarts.
+const leaderboardBoot = Date.now();
+let leaderboardVersion = 0;
+// Last time a finished game may have changed the leaderboard, used as its Last-Modified.
+// HTTP dates have a one second resolution, so keep whole seconds only.
+let leaderboardModifiedAt = new Date(Math.floor(Date.now() / 1000) * 1000);
 
 /**
  * Helper function to send a WebSocket message with logging
@@ -39,6 +48,77 @@ export const broadcast = (clients: Set<WebSocket>, data: any) => {
   });
 };
 
+/**
+ * Start or stop sending leaderboard_delta messages to a player
+ */
+export const handleLeaderboardSubscription = (player: Player, subscribe: boolean) => {
+  player.leaderboardSubscriber = subscribe;
+  if (DEBUG) console.log(`${player.username} ${subscribe ? 'subscribed to' : 'unsubscribed from'} leaderboard updates`);
+};
+
+/**
+ * Get the leaderboard positions of the given users, or null if nobody listens to deltas
+ */
+const getLeaderboardPositions = async (userIds: number[]): Promise<(LeaderboardPosition | null)[] | null> => {
+  const anySubscriber = [...players.values()].some(p => p.leaderboardSubscriber);
+  if (!anySubscriber) {
+    return null;
+  }
+  return Promise.all(userIds.map(id => UserModel.getLeaderboardPosition(id)));
+};
+
+/**
+ * Tell subscribed players which rows of the leaderboard changed.
+ * Clients remove every changed player at previous_rank (null if they were not ranked),
+ * then insert them at rank in ascending order, which gives the new leaderboard.
+ */
+const broadcastLeaderboardDelta = async (
+  before: (LeaderboardPosition | null)[],
+  after: (LeaderboardPosition | null)[]
+) => {
+  const changes = after.flatMap((position, i) => position ? [{
+    username: position.username,
+    wins: position.wins,
+    losses: position.losses,
+    total_games: position.total_games,
+    win_percentage: Number(position.win_percentage),
+    rank: position.rank,
+    previous_rank: before[i]?.rank ?? null,
+  }] : []);
+  if (changes.length === 0) {
+    return;
+  }
+  const message = {
+    type: 'leaderboard_delta',
+    total: await UserModel.getLeaderboardSize(),
+    changes,
+  };
+  for (const subscriber of players.values()) {
+    if (subscriber.leaderboardSubscriber && subscriber.ws.readyState === WebSocket.OPEN) {
+      sendMessage(subscriber, message);
+    }
+  }
+};
+
+/**
+ * Get the version of the leaderboard, which changes every time it may have changed,
+ * including across server restarts
+ */
+export const getLeaderboardVersion = (): string => `${leaderboardBoot}-${leaderboardVersion}`;
+
+/**
+ * Mark the leaderboard as changed, after a finished game or a renamed player
+ */
+export const invalidateLeaderboard = () => {
+  leaderboardVersion++;
+  leaderboardModifiedAt = new Date(Math.floor(Date.now() / 1000) * 1000);
+};
+
+/**
+ * Get the last time the leaderboard may have changed
+ */
+export const getLeaderboardModifiedAt = (): Date => leaderboardModifiedAt;
+
 /**
  * Get the current game statistics
  */
@@ -238,7 +318,14 @@ export const handleAttack = async (player: Player, data: any) => {
     const allSunk = opponent.ships.every(ship => ship.hits?.length === ship.length);
     if (allSunk) {
       sendMessage(player, { type: 'you_win' });
-      sendMessage(opponent, { type: 'you_lose' });
+      // The loser gets to see the winner's fleet
+      const opponentShips = player.ships.map(ship => ({
+        posX: ship.posX,
+        posY: ship.posY,
+        length: ship.length,
+        isHorizontal: ship.isHorizontal,
+      }));
+      sendMessage(opponent, { type: 'you_lose', opponentShips });
       if (DEBUG) console.log(`Game over: Player ${player.username} wins.`);
       await endGame(player, opponent, 'win');
     } else {
@@ -308,9 +395,9 @@ export const startGame = async (player1: Player, player2: Player, clients: Set<W
     }
   }
 
-  const startGameMessage = { type: 'start_game' };
-  sendMessage(player1, startGameMessage);
-  sendMessage(player2, startGameMessage);
+  // Each player is told who they play against, for their local game history
+  sendMessage(player1, { type: 'start_game', opponent: player2.username });
+  sendMessage(player2, { type: 'start_game', opponent: player1.username });
   
   playersInQueue -= 2;
   activeGames++;
@@ -361,11 +448,18 @@ export const endGame = async (
       const gameSessionId = winner.gameSessionId || loser.gameSessionId!;
       
       if (endType === 'win' && gameDuration) {
+        const before = await getLeaderboardPositions([winner.userId, loser.userId]);
         await GameSessionModel.completeGame(gameSessionId, {
           winner_id: winner.userId,
           loser_id: loser.userId,
           game_duration_seconds: gameDuration,
         });
+        if (before) {
+          const after = await getLeaderboardPositions([winner.userId, loser.userId]);
+          if (after) {
+            await broadcastLeaderboardDelta(before, after);
+          }
+        }
         
         if (DEBUG) {
           console.log(`Game session ${gameSessionId} completed: ${winner.username} beats ${loser.username} in ${gameDuration}s`);
@@ -384,6 +478,9 @@ export const endGame = async (
     }
   }
 
+  // Player stats may have changed, invalidate cached leaderboards
+  invalidateLeaderboard();
+
   // Clean up player state
   winner.opponent = null;
   loser.opponent = null;
@@ -0,0 +1,61 @@
+#!/usr/bin/env bash
+#
+# Compare startup of the jlink image with and without the AppCDS archive.
+#
+# Build the image first:   mvn -Pappcds clean package
+# Then run:                scripts/startup-benchmark.sh [runs]
+#
+# Each run launches the application with -Dbatalhanaval.exitAfterWarmup=true, so it
+# exits right after printing its startup timeline. Reported values are medians of
+# "first frame" and "fully warm" (ms since JVM start) and of the peak RSS (KiB).
+# The JVM is started fresh for every run; the OS page cache is not dropped.
+# On a headless machine run this under xvfb-run.
+
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+IMAGE="target/app"
+RUNS="${1:-10}"
+MAIN="pt.goncalo3.batalhanaval/pt.goncalo3.batalhanaval.BattleshipApplication"
+
+if [ ! -x "$IMAGE/bin/java" ]; then
+    echo "No jlink image at $IMAGE, build it with: mvn -Pappcds clean package" >&2
+    exit 1
+fi
+if [ ! -f "$IMAGE/lib/server/classes.jsa" ]; then
+    echo "No CDS archive at $IMAGE/lib/server/classes.jsa, build with the appcds profile" >&2
+    exit 1
+fi
+
+median() {
+    sort -n | awk '{ values[NR] = $1 } END { if (NR % 2) print values[(NR + 1) / 2]; else print int((values[NR / 2] + values[NR / 2 + 1]) / 2) }'
+}
+
+# run_case <label> <jvm options...>
+run_case() {
+    local label="$1"
+    shift
+    local frames="" warm="" rss=""
+    local log rss_file
+    log="$(mktemp)"
+    rss_file="$(mktemp)"
+
+    for _ in $(seq "$RUNS"); do
+        /usr/bin/time -f "%M" -o "$rss_file" \
+            "$IMAGE/bin/java" "$@" -Dbatalhanaval.exitAfterWarmup=true -m "$MAIN" > "$log" 2>&1
+        frames+="$(awk '$1 == "first" && $2 == "frame" { print $3 }' "$log")"$'\n'
+        warm+="$(awk '$1 == "fully" && $2 == "warm" { print $3 }' "$log")"$'\n'
+        rss+="$(tail -n 1 "$rss_file")"$'\n'
+    done
+
+    printf "%-14s first frame %6s ms   fully warm %6s ms   peak RSS %8s KiB\n" "$label" \
+        "$(printf "%s" "$frames" | median)" \
+        "$(printf "%s" "$warm" | median)" \
+        "$(printf "%s" "$rss" | median)"
+    rm -f "$log" "$rss_file"
+}
+
+echo "Startup benchmark, median of $RUNS runs"
+run_case "no CDS" -Xshare:off
+run_case "AppCDS" -Xshare:on
@@ -0,0 +1,174 @@
+package pt.goncalo3.batalhanaval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Shots to sink a whole fleet with and without the {@link EndgameSolver}: the density
+ * strategy plays every fleet twice, once shooting the last ships by the heatmap and
+ * once by the solver, so the difference is measured game by game.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbench.main="pt.goncalo3.batalhanaval.EndgameBenchmark
+ *     --games 5000 --max-configurations 16 --seed 1"
+ *
+ * Fleets are uniform random. The solver has no deadline, only its limit of
+ * configurations, so the same seed gives the same games on any machine; the time it
+ * takes per endgame move is reported. Games are cut into chunks run on one thread per
+ * core, as in {@link SelfPlayTournament}.
+ */
+public class EndgameBenchmark {
+    private static final int CHUNK = 256;
+
+    /**
+     * Counts of a set of games, merged across chunks
+     */
+    static final class Tally {
+        long games;
+        long heatmapShots, solverShots;
+        double differenceSquares;   // Of the per-game difference, for its interval
+        long solverWins, solverLosses;
+        long endgameMoves, solvedMoves, solveNanos;
+
+        void add(Tally other) {
+            games += other.games;
+            heatmapShots += other.heatmapShots;
+            solverShots += other.solverShots;
+            differenceSquares += other.differenceSquares;
+            solverWins += other.solverWins;
+            solverLosses += other.solverLosses;
+            endgameMoves += other.endgameMoves;
+            solvedMoves += other.solvedMoves;
+            solveNanos += other.solveNanos;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long games = 5_000;
+        long seed = 1;
+        int maxConfigurations = EndgameSolver.DEFAULT_MAX_CONFIGURATIONS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--games" -> games = Long.parseLong(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--max-configurations" -> maxConfigurations = Integer.parseInt(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        System.out.println("=== ENDGAME SOLVER: " + games + " games, up to " + maxConfigurations
+                + " configurations, seed " + seed + ", " + threads + " threads ===");
+        SplittableRandom random = new SplittableRandom(seed);
+        EndgameSolver solver = new EndgameSolver(maxConfigurations);
+        List<Callable<Tally>> tasks = new ArrayList<>();
+        for (long first = 0; first < games; first += CHUNK) {
+            int count = (int) Math.min(CHUNK, games - first);
+            SplittableRandom chunkRandom = random.split();
+            tasks.add(() -> playChunk(solver, count, chunkRandom));
+        }
+        long start = System.nanoTime();
+        Tally tally = new Tally();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Tally> result : pool.invokeAll(tasks)) {
+                tally.add(result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        report(tally, (System.nanoTime() - start) / 1e9);
+        System.out.println("===============================================================");
+    }
+
+    private static Tally playChunk(EndgameSolver solver, int count, SplittableRandom random) {
+        Tally tally = new Tally();
+        int[] layout = new int[Fleet.TYPES.size()];
+        for (int game = 0; game < count; game++) {
+            FleetPlacer.randomLayout(random, layout);
+            List<Ship> ships = FleetPlacer.toShips(layout);
+            long seed = random.nextLong();
+            int heatmap = play(ships, null, new SplittableRandom(seed), tally);
+            int solved = play(ships, solver, new SplittableRandom(seed), tally);
+            tally.games++;
+            tally.heatmapShots += heatmap;
+            tally.solverShots += solved;
+            tally.differenceSquares += (double) (heatmap - solved) * (heatmap - solved);
+            if (solved < heatmap) {
+                tally.solverWins++;
+            } else if (solved > heatmap) {
+                tally.solverLosses++;
+            }
+        }
+        return tally;
+    }
+
+    /**
+     * Sink a fleet
+     * @param solver The solver for the last ships, or null for the heatmap only
+     * @return Shots taken
+     */
+    private static int play(List<Ship> ships, EndgameSolver solver, SplittableRandom random, Tally tally) {
+        ShotStrategy targeting = new ShotStrategy.Density(null, null, solver);
+        int[] shipAt = new int[Fleet.CELLS];
+        int[] afloat = new int[ships.size()];
+        for (int i = 0; i < ships.size(); i++) {
+            Ship ship = ships.get(i);
+            afloat[i] = ship.getLength();
+            for (int k = 0; k < ship.getLength(); k++) {
+                int x = ship.getPosX() + (ship.isHorizontal() ? k : 0);
+                int y = ship.getPosY() + (ship.isHorizontal() ? 0 : k);
+                shipAt[TargetBoard.cell(x, y)] = i + 1;
+            }
+        }
+        TargetBoard board = TargetBoard.forFleet();
+        int shots = 0;
+        while (board.remainingShips() > 0) {
+            boolean endgame = solver != null && board.remainingShips() <= EndgameSolver.MAX_SHIPS;
+            long start = System.nanoTime();
+            int cell = targeting.nextShot(board, random, Long.MAX_VALUE);
+            if (endgame) {
+                tally.endgameMoves++;
+                tally.solveNanos += System.nanoTime() - start;
+                if (solver.solve(board, Long.MAX_VALUE) != null) {
+                    tally.solvedMoves++;
+                }
+            }
+            int x = cell % Fleet.BOARD_SIZE, y = cell / Fleet.BOARD_SIZE;
+            shots++;
+            int ship = shipAt[cell] - 1;
+            if (ship < 0) {
+                board.miss(x, y);
+            } else {
+                board.hit(x, y);
+                if (--afloat[ship] == 0) {
+                    board.sunk(ships.get(ship));
+                }
+            }
+        }
+        return shots;
+    }
+
+    private static void report(Tally tally, double seconds) {
+        double heatmap = (double) tally.heatmapShots / tally.games;
+        double solved = (double) tally.solverShots / tally.games;
+        double difference = heatmap - solved;
+        double variance = tally.differenceSquares / tally.games - difference * difference;
+        double half = 1.96 * Math.sqrt(variance / tally.games);
+        System.out.printf("%d games in %.1f s%n", tally.games, seconds);
+        System.out.printf("  heatmap only        %6.3f shots per game%n", heatmap);
+        System.out.printf("  with endgame solver %6.3f shots per game%n", solved);
+        System.out.printf("  saved %.3f shots per game [%.3f, %.3f]; solver better in %.1f%% of games, worse in %.1f%%%n",
+                difference, difference - half, difference + half,
+                100.0 * tally.solverWins / tally.games, 100.0 * tally.solverLosses / tally.games);
+        System.out.printf("  endgame moves solved %.1f%%, %.2f ms per endgame move%n",
+                100.0 * tally.solvedMoves / Math.max(1, tally.endgameMoves),
+                tally.solveNanos / 1e6 / Math.max(1, tally.endgameMoves));
+        System.out.println("  value cache: " + EndgameSolver.cacheStats());
+    }
+}
@@ -0,0 +1,49 @@
+package pt.goncalo3.batalhanaval;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random fleets per second from {@link FleetPlacer}: the bitboard layout alone, and
+ * turned into ships as the placement screen gets them.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbench.main="org.openjdk.jmh.Main FleetPlacerBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FleetPlacerBenchmark {
+    private SplittableRandom random;
+    private int[] layout;
+
+    @Setup
+    public void setup() {
+        random = new SplittableRandom(11);
+        layout = new int[Fleet.TYPES.size()];
+    }
+
+    @Benchmark
+    public int[] layout() {
+        FleetPlacer.randomLayout(random, layout);
+        return layout;
+    }
+
+    @Benchmark
+    public Object ships() {
+        return FleetPlacer.random(random);
+    }
+}
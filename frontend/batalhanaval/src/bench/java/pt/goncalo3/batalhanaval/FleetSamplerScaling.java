@@ -0,0 +1,117 @@
+package pt.goncalo3.batalhanaval;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Samples per second of the {@link FleetSampler} with 1, 2, 4 and one worker per core:
+ * every worker count samples the same late-game boards, each with a fresh sampler so no
+ * sample is reused, for the same budget per board.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbench.main="pt.goncalo3.batalhanaval.FleetSamplerScaling
+ *     --boards 40 --budget-ms 150 --seed 1"
+ *
+ * Boards are taken from games of the hunt-and-target strategy against uniform random
+ * fleets, at the first shot where the Hard AI would start sampling. Workers run on the
+ * common ForkJoin pool, so more workers than its parallelism queue up behind each other;
+ * raise it with -Djava.util.concurrent.ForkJoinPool.common.parallelism to try them.
+ */
+public class FleetSamplerScaling {
+    // Sample when this many hits are open or this few ships are left, as ShotStrategy.Density
+    private static final int SAMPLE_MIN_OPEN_HITS = 2;
+    private static final int SAMPLE_MAX_SHIPS = 2;
+
+    public static void main(String[] args) {
+        int boards = 40;
+        long budgetMillis = 150;
+        long seed = 1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--boards" -> boards = Integer.parseInt(value);
+                case "--budget-ms" -> budgetMillis = Long.parseLong(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        TreeSet<Integer> workerCounts = new TreeSet<>(List.of(1, 2, 4, cores));
+        System.out.println("=== FLEET SAMPLER SCALING: " + boards + " boards, " + budgetMillis
+                + " ms each, seed " + seed + ", " + cores + " cores, common pool parallelism "
+                + ForkJoinPool.getCommonPoolParallelism() + " ===");
+        List<TargetBoard> positions = positions(boards, new SplittableRandom(seed));
+        Duration budget = Duration.ofMillis(budgetMillis);
+
+        // Warm up the JIT before timing anything
+        measure(positions.subList(0, Math.min(10, positions.size())), cores, budget, seed);
+
+        double single = 0;
+        for (int workers : workerCounts) {
+            double rate = measure(positions, workers, budget, seed);
+            if (workers == 1) {
+                single = rate;
+            }
+            System.out.printf("  %3d workers  %,12.0f samples/s  x%.2f%n", workers, rate, rate / single);
+        }
+        System.out.println("===============================================================");
+    }
+
+    /**
+     * Sample every board once with a fresh sampler
+     * @return New samples per second of wall time
+     */
+    private static double measure(List<TargetBoard> positions, int workers, Duration budget, long seed) {
+        long samples = 0;
+        long start = System.nanoTime();
+        for (TargetBoard board : positions) {
+            FleetSampler.Estimate estimate = new FleetSampler(seed, workers).sample(board, budget);
+            samples += estimate.samples() - estimate.reused();
+        }
+        return samples / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Play games until each has reached the point where sampling starts
+     */
+    private static List<TargetBoard> positions(int count, SplittableRandom random) {
+        List<TargetBoard> positions = new ArrayList<>(count);
+        while (positions.size() < count) {
+            List<Ship> ships = FleetPlacer.random(random);
+            int[] shipAt = new int[Fleet.CELLS];
+            int[] afloat = new int[ships.size()];
+            for (int i = 0; i < ships.size(); i++) {
+                Ship ship = ships.get(i);
+                afloat[i] = ship.getLength();
+                for (int k = 0; k < ship.getLength(); k++) {
+                    int x = ship.getPosX() + (ship.isHorizontal() ? k : 0);
+                    int y = ship.getPosY() + (ship.isHorizontal() ? 0 : k);
+                    shipAt[TargetBoard.cell(x, y)] = i + 1;
+                }
+            }
+            TargetBoard board = TargetBoard.forFleet();
+            while (board.remainingShips() > 0) {
+                if (board.openHits() >= SAMPLE_MIN_OPEN_HITS || board.remainingShips() <= SAMPLE_MAX_SHIPS) {
+                    positions.add(board.copy());
+                    break;
+                }
+                int cell = ShotStrategy.huntTargetShot(board, random, Long.MAX_VALUE);
+                int x = cell % Fleet.BOARD_SIZE, y = cell / Fleet.BOARD_SIZE;
+                int ship = shipAt[cell] - 1;
+                if (ship < 0) {
+                    board.miss(x, y);
+                } else {
+                    board.hit(x, y);
+                    if (--afloat[ship] == 0) {
+                        board.sunk(ships.get(ship));
+                    }
+                }
+            }
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,75 @@
+package pt.goncalo3.batalhanaval;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Time and heap allocation of the {@link GameArchive} scans over 1M synthetic games.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbench.main=pt.goncalo3.batalhanaval.GameArchiveScanBenchmark
+ *
+ * The archive is written to a temporary data directory. Allocation is read from the
+ * thread's allocation counter, so it covers everything the scan allocates on the heap.
+ */
+public class GameArchiveScanBenchmark {
+    private static final int GAMES = 1_000_000;
+    private static final int BATCH = 10_000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("archive-bench");
+        System.setProperty("batalhanaval.dataDir", dir.toString());
+        GameArchive archive = GameArchive.getInstance();
+
+        System.out.println("=== GAME ARCHIVE SCAN BENCHMARK (" + GAMES + " games) ===");
+        long start = System.nanoTime();
+        SplittableRandom random = new SplittableRandom(42);
+        for (int done = 0; done < GAMES; done += BATCH) {
+            List<GameRecord> batch = new ArrayList<>(BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                batch.add(randomGame(random));
+            }
+            archive.addAll(batch);
+        }
+        System.out.printf("Written in %.0f ms%n", (System.nanoTime() - start) / 1_000_000.0);
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int run = 0; run < RUNS; run++) {
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            start = System.nanoTime();
+            GameArchive.CellStats cells = archive.winRateByFirstShot();
+            double cellsMs = (System.nanoTime() - start) / 1_000_000.0;
+            long cellsBytes = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+            allocated = threads.getCurrentThreadAllocatedBytes();
+            start = System.nanoTime();
+            GameArchive.TurnStats turns = archive.hitRateByTurn();
+            double turnsMs = (System.nanoTime() - start) / 1_000_000.0;
+            long turnsBytes = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+            System.out.printf("Run %d: win rate by first shot %.1f ms (%d bytes, corner %.3f), "
+                            + "hit rate by turn %.1f ms (%d bytes, turn 1 %.3f)%n",
+                    run + 1, cellsMs, cellsBytes, cells.winRate(0), turnsMs, turnsBytes, turns.hitRate(0));
+        }
+    }
+
+    /**
+     * A game with a random fleet and random attacks of both players, about one in three hitting
+     */
+    private static GameRecord randomGame(SplittableRandom random) {
+        List<Ship> fleet = List.of(new Ship(0, random.nextInt(6), random.nextInt(10), 5, true),
+                new Ship(1, random.nextInt(10), random.nextInt(7), 4, false));
+        int count = 40 + random.nextInt(80);
+        List<GameRecord.Move> moves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            GameRecord.Result result = random.nextInt(3) == 0 ? GameRecord.Result.HIT : GameRecord.Result.MISS;
+            moves.add(new GameRecord.Move(i % 2 == 0, random.nextInt(10), random.nextInt(10), result, i * 2_000L));
+        }
+        GameRecord.Outcome outcome = GameRecord.Outcome.values()[random.nextInt(3)];
+        return new GameRecord(0, count * 2_000L, "bench", outcome, fleet, fleet, moves);
+    }
+}
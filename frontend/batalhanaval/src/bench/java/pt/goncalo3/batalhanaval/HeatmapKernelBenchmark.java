@@ -0,0 +1,125 @@
+package pt.goncalo3.batalhanaval;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalar against vector {@link HeatmapKernel} over square boards of several sizes:
+ * the counts of every placement of ships of length 2 to 5, weighted like the hit
+ * weights of {@link DensityTargeting}. masks() is the placement-by-placement loop the
+ * kernel replaces, for reference.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbench.main="org.openjdk.jmh.Main HeatmapKernelBenchmark"
+ *
+ * That both kernels give exactly the counts of the reference loop is checked by
+ * HeatmapKernelTest in the normal build.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class HeatmapKernelBenchmark {
+    private static final int MIN_LENGTH = 2;
+    private static final int MAX_LENGTH = 5;
+
+    @Param({"10", "16", "32", "64"})
+    int size;
+
+    @Param({"scalar", "vector"})
+    String kernel;
+
+    private HeatmapKernel selected;
+    private int[][] horizontal;  // Placement weights by first cell, per length
+    private int[][] vertical;
+    private long[][] masks;      // The same placements as bitboards, per length
+    private int[][] weights;
+    private int[] counts;
+
+    @Setup
+    public void setup() {
+        if (kernel.equals("vector") && HeatmapKernel.get() == HeatmapKernel.scalar()) {
+            throw new IllegalStateException("vector kernel unavailable, run with --add-modules=jdk.incubator.vector");
+        }
+        selected = kernel.equals("vector") ? HeatmapKernel.get() : HeatmapKernel.scalar();
+
+        int cells = size * size;
+        int words = (cells + 63) / 64;
+        horizontal = new int[MAX_LENGTH + 1][cells];
+        vertical = new int[MAX_LENGTH + 1][cells];
+        masks = new long[MAX_LENGTH + 1][];
+        weights = new int[MAX_LENGTH + 1][];
+        SplittableRandom random = new SplittableRandom(7);
+        for (int length = MIN_LENGTH; length <= MAX_LENGTH; length++) {
+            int count = 2 * size * (size - length + 1);
+            masks[length] = new long[count * words];
+            weights[length] = new int[count];
+            int i = 0;
+            for (int across = 1; across >= 0; across--) {
+                for (int y = 0; y < size; y++) {
+                    for (int x = 0; x < size; x++) {
+                        if ((across == 1 ? x : y) + length > size) {
+                            continue;
+                        }
+                        // Some placements ruled out, some through open hits
+                        int weight = random.nextInt(4) == 0 ? 0 : 1 << 4 * random.nextInt(3);
+                        (across == 1 ? horizontal : vertical)[length][y * size + x] = weight;
+                        weights[length][i] = weight;
+                        for (int k = 0; k < length; k++) {
+                            int cell = across == 1 ? y * size + x + k : (y + k) * size + x;
+                            masks[length][i * words + cell / 64] |= 1L << (cell % 64);
+                        }
+                        i++;
+                    }
+                }
+            }
+        }
+        counts = new int[cells];
+    }
+
+    @Benchmark
+    public int[] spread() {
+        Arrays.fill(counts, 0);
+        for (int length = MIN_LENGTH; length <= MAX_LENGTH; length++) {
+            selected.placements(counts, horizontal[length], vertical[length], length, size);
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public int[] masks() {
+        Arrays.fill(counts, 0);
+        int words = (size * size + 63) / 64;
+        for (int length = MIN_LENGTH; length <= MAX_LENGTH; length++) {
+            long[] board = masks[length];
+            int[] weight = weights[length];
+            for (int i = 0; i < weight.length; i++) {
+                if (weight[i] == 0) {
+                    continue;
+                }
+                for (int w = 0; w < words; w++) {
+                    long bits = board[i * words + w];
+                    while (bits != 0) {
+                        counts[w * 64 + Long.numberOfTrailingZeros(bits)] += weight[i];
+                        bits &= bits - 1;
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,93 @@
+package pt.goncalo3.batalhanaval;
+
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Heap retained by 100k leaderboard rows in each row model.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec
+ *
+ * Usernames are created once and shared by every model, so the numbers are the
+ * cost of the row model itself. Heap use is read after repeated GCs and is only
+ * approximate, hence the fixed heap set by the benchmark profile.
+ */
+public class LeaderboardHeapBenchmark {
+    private static final int ENTRIES = 100_000;
+
+    /**
+     * The previous row model: six JavaFX properties, percentage formatted up front
+     */
+    static class PropertyEntry {
+        private final IntegerProperty rank = new SimpleIntegerProperty();
+        private final StringProperty username = new SimpleStringProperty();
+        private final IntegerProperty wins = new SimpleIntegerProperty();
+        private final IntegerProperty losses = new SimpleIntegerProperty();
+        private final IntegerProperty totalGames = new SimpleIntegerProperty();
+        private final StringProperty winPercentage = new SimpleStringProperty();
+
+        PropertyEntry(int rank, String username, int wins, int losses, int totalGames, double winPercentage) {
+            this.rank.set(rank);
+            this.username.set(username);
+            this.wins.set(wins);
+            this.losses.set(losses);
+            this.totalGames.set(totalGames);
+            this.winPercentage.set(String.format("%.1f%%", winPercentage));
+        }
+    }
+
+    public static void main(String[] args) {
+        List<Leaderboard.Row> rows = new ArrayList<>(ENTRIES);
+        for (int i = 0; i < ENTRIES; i++) {
+            int wins = ENTRIES - i;
+            int losses = i % 97;
+            rows.add(new Leaderboard.Row("player" + i, wins, losses, wins + losses, 100.0 * wins / (wins + losses)));
+        }
+
+        System.out.println("=== LEADERBOARD HEAP BENCHMARK (" + ENTRIES + " entries) ===");
+
+        measure("JavaFX properties", () -> {
+            List<PropertyEntry> properties = new ArrayList<>(ENTRIES);
+            for (int i = 0; i < ENTRIES; i++) {
+                Leaderboard.Row row = rows.get(i);
+                properties.add(new PropertyEntry(i + 1, row.username(), row.wins(), row.losses(), row.totalGames(), row.winPercentage()));
+            }
+            return properties;
+        });
+        measure("immutable entries", () -> Leaderboard.toEntries(rows, 0));
+        measure("columns", () -> LeaderboardColumns.of(rows, 0));
+
+        System.out.println("==========================================================");
+    }
+
+    private static void measure(String model, Supplier<Object> build) {
+        long before = usedHeap();
+        Object retained = build.get();
+        report(model, usedHeap() - before);
+        Reference.reachabilityFence(retained);
+    }
+
+    private static void report(String model, long bytes) {
+        System.out.printf("  %-18s %10d bytes  %6.1f bytes/entry%n", model, bytes, (double) bytes / ENTRIES);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,148 @@
+package pt.goncalo3.batalhanaval;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Builds the {@link OpeningBook}: the sampled heatmap of every common opening.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbench.main="pt.goncalo3.batalhanaval.OpeningBookGenerator
+ *     --depth 5 --branch 3 --budget-ms 20"
+ *
+ * The openings are the empty board, every first shot, and then, up to the depth, the
+ * best few cells of each board's heatmap, each as a hit and as a miss: what the
+ * computer plays, and what a player following the hints plays. Boards already seen up
+ * to a rotation or mirror are skipped. Each heatmap is sampled by a {@link FleetSampler}
+ * for the given time, far longer than a move could spend on it. Sunk ships are left
+ * out; such boards miss the book and are computed as usual.
+ *
+ * Writes opening-book.bin in the data directory unless --out says otherwise, then
+ * reads it back to check every board and time the lookups. The book shipped with the
+ * application is made with:
+ *
+ *     mvn -Pbenchmark test-compile exec:exec -Dbench.main="pt.goncalo3.batalhanaval.OpeningBookGenerator
+ *         --depth 4 --branch 3 --budget-ms 20 --out src/main/resources/pt/goncalo3/batalhanaval/opening-book.bin"
+ *
+ * and must be made again whenever the fleet or the file format changes.
+ */
+public class OpeningBookGenerator {
+
+    public static void main(String[] args) throws Exception {
+        int depth = 5;
+        int branch = 3;
+        long budgetMs = 20;
+        long seed = 1;
+        Path out = AppData.file("opening-book.bin");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--depth" -> depth = Integer.parseInt(value);
+                case "--branch" -> branch = Integer.parseInt(value);
+                case "--budget-ms" -> budgetMs = Long.parseLong(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--out" -> out = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Duration budget = Duration.ofMillis(budgetMs);
+
+        System.out.println("=== OPENING BOOK: " + depth + " shots deep, best " + branch + " cells, "
+                + budgetMs + " ms per board ===");
+        long start = System.nanoTime();
+        Map<Long, double[]> heatmaps = new LinkedHashMap<>();
+        List<TargetBoard> boards = new ArrayList<>();
+        Deque<TargetBoard> queue = new ArrayDeque<>();
+        queue.add(TargetBoard.forFleet());
+        while (!queue.isEmpty()) {
+            TargetBoard board = queue.poll();
+            OpeningBook.Key key = OpeningBook.key(board);
+            if (heatmaps.containsKey(key.key())) {
+                continue;
+            }
+            FleetSampler.Estimate estimate = new FleetSampler(seed ^ key.key()).sample(board, budget);
+            if (estimate.samples() == 0) {
+                continue;  // No fleet fits this board
+            }
+            // Stored in the orientation of the key
+            int[] symmetry = TargetBoard.symmetry(key.symmetry());
+            double[] stored = new double[Fleet.CELLS];
+            for (int cell = 0; cell < Fleet.CELLS; cell++) {
+                stored[symmetry[cell]] = estimate.probability()[cell];
+            }
+            heatmaps.put(key.key(), stored);
+            boards.add(board);
+            if (heatmaps.size() % 500 == 0) {
+                System.out.printf("  %d boards, %.0f s%n", heatmaps.size(), (System.nanoTime() - start) / 1e9);
+            }
+
+            if (board.shots() < depth) {
+                for (int cell : candidates(estimate.probability(), board, board.shots() == 0 ? Fleet.CELLS : branch)) {
+                    int x = cell % Fleet.BOARD_SIZE, y = cell / Fleet.BOARD_SIZE;
+                    TargetBoard hit = board.copy();
+                    hit.hit(x, y);
+                    queue.add(hit);
+                    TargetBoard miss = board.copy();
+                    miss.miss(x, y);
+                    queue.add(miss);
+                }
+            }
+        }
+        OpeningBook.write(out, depth, heatmaps);
+        System.out.printf("%d boards in %.1f s, %d bytes written to %s%n", heatmaps.size(),
+                (System.nanoTime() - start) / 1e9, Files.size(out), out);
+
+        verify(out, boards);
+        System.out.println("===============================================================");
+    }
+
+    /**
+     * The cells not attacked yet with the highest probability, best first
+     */
+    private static int[] candidates(double[] probability, TargetBoard board, int count) {
+        return IntStream.range(0, Fleet.CELLS)
+                .filter(cell -> !board.isShot(cell) && probability[cell] > 0)
+                .boxed()
+                .sorted((a, b) -> Double.compare(probability[b], probability[a]))
+                .limit(count)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * Read the book back: every board must be found, and lookups timed against computing
+     */
+    private static void verify(Path path, List<TargetBoard> boards) throws Exception {
+        OpeningBook book = OpeningBook.open(path);
+        for (TargetBoard board : boards) {
+            if (book.lookup(board) == null) {
+                throw new IllegalStateException("Board missing from the book after " + board.shots() + " shots");
+            }
+        }
+        // The last rounds, once the JIT has warmed up, are the ones to read
+        for (int round = 0; round < 10; round++) {
+            long lookupStart = System.nanoTime();
+            int found = 0;
+            for (TargetBoard board : boards) {
+                found += book.lookup(board).best();
+            }
+            long lookupNanos = System.nanoTime() - lookupStart;
+            long computeStart = System.nanoTime();
+            for (TargetBoard board : boards) {
+                found += DensityTargeting.heatmap(board).best();
+            }
+            long computeNanos = System.nanoTime() - computeStart;
+            if (round >= 7) {
+                System.out.printf("Lookup %.2f us per board, quick heatmap %.2f us (%d)%n",
+                        lookupNanos / 1e3 / boards.size(), computeNanos / 1e3 / boards.size(), found);
+            }
+        }
+    }
+}
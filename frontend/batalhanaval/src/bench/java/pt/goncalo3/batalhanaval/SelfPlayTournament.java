@@ -0,0 +1,307 @@
+package pt.goncalo3.batalhanaval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Headless bot-vs-bot games with the rules of the server: a hit lets the attacker
+ * shoot again, the first to sink the whole fleet wins. Boards, ships and strategies
+ * are the client's own ({@link TargetBoard}, {@link FleetPlacer}, {@link ShotStrategy}).
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbench.main="pt.goncalo3.batalhanaval.SelfPlayTournament
+ *     --games 1000000 --a density --b hunt --place-a random --place-b smart --seed 1"
+ *
+ * Targeting: random, hunt (hunt/target with parity) or density (the heatmap, without
+ * the time-budgeted sampler, which would make results depend on the machine).
+ * Placement: random (uniform) or smart (drawn from a pool of layouts found by the
+ * adversarial search with a fixed number of evaluations).
+ *
+ * Games are cut into chunks, each with its own generator split from the seed in
+ * order, and run on one thread per core; counts are merged at the end, so the same
+ * seed gives the same results whatever the number of threads. The two sides take
+ * turns starting.
+ */
+public class SelfPlayTournament {
+    private static final int CHUNK = 1024;  // Games per task
+    private static final int MAX_SHOTS = Fleet.CELLS;
+    private static final double Z = 1.96;   // 95% intervals
+    private static final int SMART_POOL = 32;
+    private static final int SMART_EVALUATIONS = 100;
+
+    /**
+     * How one side shoots and places its fleet
+     * @param name Shown in the report
+     * @param targeting Creates the targeting strategy, once per chunk of games
+     * @param placement Draws a layout, see {@link FleetPlacer#randomLayout}
+     */
+    record Player(String name, Supplier<ShotStrategy> targeting, Placement placement) {
+    }
+
+    /**
+     * Draws the layout of a fleet
+     */
+    interface Placement {
+        void layout(SplittableRandom random, int[] layout);
+    }
+
+    /**
+     * Counts of a set of games, merged across chunks
+     */
+    static final class Tally {
+        final long[] wins = new long[2];
+        // Shots of the winner, per side, by number of shots
+        final long[][] winningShots = new long[2][MAX_SHOTS + 1];
+        final long[] startsWon = new long[2];  // Games won by the side that started
+
+        void add(Tally other) {
+            for (int side = 0; side < 2; side++) {
+                wins[side] += other.wins[side];
+                startsWon[side] += other.startsWon[side];
+                for (int shots = 0; shots <= MAX_SHOTS; shots++) {
+                    winningShots[side][shots] += other.winningShots[side][shots];
+                }
+            }
+        }
+
+        long games() {
+            return wins[0] + wins[1];
+        }
+    }
+
+    /**
+     * One side during a game: its fleet, and what it knows of the other's
+     */
+    private static final class Side {
+        final ShotStrategy targeting;
+        final Placement placement;
+        final int[] layout = new int[Fleet.TYPES.size()];
+        final int[] shipAt = new int[Fleet.CELLS];  // Ship index + 1 on each cell of the fleet
+        final int[] afloat = new int[Fleet.TYPES.size()];
+        List<Ship> ships;
+        int cellsAfloat;
+        TargetBoard board;
+        int shots;
+
+        Side(Player player) {
+            this.targeting = player.targeting().get();
+            this.placement = player.placement();
+        }
+
+        void reset(SplittableRandom random) {
+            placement.layout(random, layout);
+            ships = FleetPlacer.toShips(layout);
+            Arrays.fill(shipAt, 0);
+            cellsAfloat = 0;
+            for (int i = 0; i < ships.size(); i++) {
+                Ship ship = ships.get(i);
+                afloat[i] = ship.getLength();
+                cellsAfloat += ship.getLength();
+                for (int k = 0; k < ship.getLength(); k++) {
+                    int x = ship.getPosX() + (ship.isHorizontal() ? k : 0);
+                    int y = ship.getPosY() + (ship.isHorizontal() ? 0 : k);
+                    shipAt[TargetBoard.cell(x, y)] = i + 1;
+                }
+            }
+            board = TargetBoard.forFleet();
+            shots = 0;
+        }
+
+        /**
+         * Shoot once at the other side
+         * @return Whether it was a hit
+         */
+        boolean shootAt(Side other, SplittableRandom random) {
+            int cell = targeting.nextShot(board, random, Long.MAX_VALUE);
+            int x = cell % Fleet.BOARD_SIZE, y = cell / Fleet.BOARD_SIZE;
+            shots++;
+            int ship = other.shipAt[cell] - 1;
+            if (ship < 0) {
+                board.miss(x, y);
+                return false;
+            }
+            board.hit(x, y);
+            other.cellsAfloat--;
+            if (--other.afloat[ship] == 0) {
+                board.sunk(other.ships.get(ship));
+            }
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long games = 100_000;
+        long seed = 1;
+        String targetingA = "density", targetingB = "hunt";
+        String placementA = "random", placementB = "random";
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--games" -> games = Long.parseLong(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--a" -> targetingA = value;
+                case "--b" -> targetingB = value;
+                case "--place-a" -> placementA = value;
+                case "--place-b" -> placementB = value;
+                case "--threads" -> threads = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        Player a = new Player(targetingA + "/" + placementA, targeting(targetingA), placement(placementA, random.split()));
+        Player b = new Player(targetingB + "/" + placementB, targeting(targetingB), placement(placementB, random.split()));
+
+        System.out.println("=== SELF-PLAY TOURNAMENT: " + a.name() + " vs " + b.name()
+                + ", " + games + " games, seed " + seed + ", " + threads + " threads ===");
+        long start = System.nanoTime();
+        Tally tally = play(a, b, games, random.split(), threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        report(a, b, tally, seconds);
+        System.out.println("===============================================================");
+    }
+
+    /**
+     * Play the games on a pool of threads
+     */
+    static Tally play(Player a, Player b, long games, SplittableRandom random, int threads) throws Exception {
+        List<Callable<Tally>> tasks = new ArrayList<>();
+        for (long first = 0; first < games; first += CHUNK) {
+            long from = first;
+            int count = (int) Math.min(CHUNK, games - first);
+            SplittableRandom chunkRandom = random.split();
+            tasks.add(() -> playChunk(a, b, from, count, chunkRandom));
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Tally total = new Tally();
+            for (Future<Tally> result : pool.invokeAll(tasks)) {
+                total.add(result.get());
+            }
+            return total;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Tally playChunk(Player a, Player b, long first, int count, SplittableRandom random) {
+        Side[] sides = {new Side(a), new Side(b)};
+        Tally tally = new Tally();
+        for (long game = first; game < first + count; game++) {
+            sides[0].reset(random);
+            sides[1].reset(random);
+            int starter = (int) (game & 1);
+            int turn = starter;
+            while (true) {
+                Side attacker = sides[turn];
+                Side defender = sides[1 - turn];
+                if (!attacker.shootAt(defender, random)) {
+                    turn = 1 - turn;
+                } else if (defender.cellsAfloat == 0) {
+                    break;
+                }
+            }
+            tally.wins[turn]++;
+            tally.winningShots[turn][sides[turn].shots]++;
+            if (turn == starter) {
+                tally.startsWon[starter]++;
+            }
+        }
+        return tally;
+    }
+
+    static Supplier<ShotStrategy> targeting(String name) {
+        return switch (name) {
+            case "random" -> () -> ShotStrategy::randomShot;
+            case "hunt" -> () -> ShotStrategy::huntTargetShot;
+            case "density" -> () -> new ShotStrategy.Density(null);
+            default -> throw new IllegalArgumentException("Unknown targeting " + name + " (random, hunt, density)");
+        };
+    }
+
+    /**
+     * Make a placement; the smart pool is searched up front, in parallel but seeded per layout
+     */
+    static Placement placement(String name, SplittableRandom random) throws Exception {
+        switch (name) {
+            case "random":
+                return FleetPlacer::randomLayout;
+            case "smart":
+                List<Callable<int[]>> searches = new ArrayList<>();
+                for (int i = 0; i < SMART_POOL; i++) {
+                    SplittableRandom searchRandom = random.split();
+                    searches.add(() -> FleetPlacer.searchLayout(new ShotStrategy.Density(null), searchRandom, SMART_EVALUATIONS));
+                }
+                int[][] pool = new int[SMART_POOL][];
+                List<Future<int[]>> found = ForkJoinPool.commonPool().invokeAll(searches);
+                for (int i = 0; i < SMART_POOL; i++) {
+                    pool[i] = found.get(i).get();
+                }
+                return (layoutRandom, layout) -> System.arraycopy(pool[layoutRandom.nextInt(SMART_POOL)], 0, layout, 0, layout.length);
+            default:
+                throw new IllegalArgumentException("Unknown placement " + name + " (random, smart)");
+        }
+    }
+
+    private static void report(Player a, Player b, Tally tally, double seconds) {
+        long games = tally.games();
+        System.out.printf("%d games in %.1f s: %.0f games/s%n", games, seconds, games / seconds);
+        Player[] players = {a, b};
+        for (int side = 0; side < 2; side++) {
+            double[] interval = wilson(tally.wins[side], games);
+            System.out.printf("  %-16s wins %5.1f%% [%5.1f%%, %5.1f%%]   shots to win: mean %5.1f, median %3d%n",
+                    players[side].name(), 100.0 * tally.wins[side] / games, 100 * interval[0], 100 * interval[1],
+                    mean(tally.winningShots[side]), median(tally.winningShots[side]));
+        }
+        long started = tally.startsWon[0] + tally.startsWon[1];
+        double[] interval = wilson(started, games);
+        System.out.printf("  side that started wins %5.1f%% [%5.1f%%, %5.1f%%]%n",
+                100.0 * started / games, 100 * interval[0], 100 * interval[1]);
+        System.out.println("  heatmap cache: " + DensityTargeting.cacheStats()[0]);
+    }
+
+    /**
+     * Wilson score interval of a proportion
+     */
+    static double[] wilson(long successes, long trials) {
+        if (trials == 0) {
+            return new double[]{0, 1};
+        }
+        double p = (double) successes / trials;
+        double z2 = Z * Z;
+        double center = (p + z2 / (2 * trials)) / (1 + z2 / trials);
+        double half = Z * Math.sqrt(p * (1 - p) / trials + z2 / (4.0 * trials * trials)) / (1 + z2 / trials);
+        return new double[]{center - half, center + half};
+    }
+
+    private static double mean(long[] histogram) {
+        long count = 0, sum = 0;
+        for (int shots = 0; shots < histogram.length; shots++) {
+            count += histogram[shots];
+            sum += shots * histogram[shots];
+        }
+        return count == 0 ? Double.NaN : (double) sum / count;
+    }
+
+    private static int median(long[] histogram) {
+        long count = 0;
+        for (long games : histogram) {
+            count += games;
+        }
+        long seen = 0;
+        for (int shots = 0; shots < histogram.length; shots++) {
+            seen += histogram[shots];
+            if (seen * 2 >= count && count > 0) {
+                return shots;
+            }
+        }
+        return -1;
+    }
+}
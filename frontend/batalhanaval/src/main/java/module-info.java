@@ -4,11 +4,12 @@ module pt.goncalo3.batalhanaval {
     requires java.desktop;
     requires java.net.http;    // Add for HttpClient
     requires java.prefs;       // Add for Preferences
-    requires org.json;         // Add for JSON handling
+    requires java.management;  // Add for the JVM start time in StartupTimeline
     requires Java.WebSocket;   // Add for WebSocket client
     requires com.fasterxml.jackson.databind;  // Add for Jackson JSON processing
+    requires static jdk.incubator.vector;      // Optional: heatmap kernel, see HeatmapKernel
 
-    opens pt.goncalo3.batalhanaval to javafx.fxml;
+    opens pt.goncalo3.batalhanaval to javafx.fxml, com.fasterxml.jackson.databind;  // Jackson reads the API records reflectively
     exports pt.goncalo3.batalhanaval;
 }
 
@@ -0,0 +1,276 @@
+package pt.goncalo3.batalhanaval;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shared client for the REST API of the server.
+ *
+ * One HttpClient (and so one connection pool) is used by every part of the application,
+ * negotiating HTTP/2 when the server supports it. Responses are decoded with Jackson
+ * straight from the response stream into typed records, errors are mapped to
+ * {@link ApiException} in one place, and idempotent GETs are retried on transient failures
+ * (but not on timeouts, which already took the whole request timeout).
+ */
+public class ApiClient {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final int MAX_GET_ATTEMPTS = 3;
+    private static final long RETRY_BASE_DELAY_MS = 200;
+    private static final String USER_AGENT = "BattleshipGame/1.0";
+
+    /**
+     * Error returned by the server, or an unexpected HTTP status
+     */
+    public static class ApiException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+        private final String serverMessage;
+
+        public ApiException(int statusCode, String serverMessage) {
+            super("HTTP " + statusCode + (serverMessage != null ? " - " + serverMessage : ""));
+            this.statusCode = statusCode;
+            this.serverMessage = serverMessage;
+        }
+
+        /**
+         * Get the HTTP status code of the response
+         * @return The status code
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * Get the "error" message sent by the server
+         * @return The message, or null if the server did not send one
+         */
+        public String getServerMessage() {
+            return serverMessage;
+        }
+    }
+
+    // Body of every error response of the server: { "error": "..." }
+    record ErrorBody(String error) {
+    }
+
+    private static ApiClient instance;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = Json.MAPPER;
+
+    private ApiClient() {
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .executor(executor)
+                .build();
+    }
+
+    // Get singleton instance
+    public static synchronized ApiClient getInstance() {
+        if (instance == null) {
+            instance = new ApiClient();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the underlying HttpClient, e.g. to open WebSockets on the same client
+     * @return The shared HttpClient
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Get the virtual-thread executor the client runs on.
+     * Blocking API calls made on behalf of the UI should be submitted here.
+     * @return The shared executor, one virtual thread per task
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Result of a conditional GET
+     * @param body The decoded body, or null if the server answered 304 Not Modified
+     * @param etag The ETag validator of the response, or the one sent if not modified
+     * @param lastModified The Last-Modified validator of the response, or the one sent if not modified
+     */
+    public record Conditional<T>(T body, String etag, String lastModified) {
+        public boolean isNotModified() {
+            return body == null;
+        }
+    }
+
+    /**
+     * Send a GET request, retrying transient failures
+     * @param path Path relative to the API base URL, including the query string
+     * @param responseType Record the response body is decoded into
+     * @param token JWT token for protected routes, or null
+     * @return The decoded response body
+     * @throws ApiException If the server answers with an error status
+     * @throws IOException If network issues occur
+     * @throws InterruptedException If request is interrupted
+     */
+    public <T> T get(String path, Class<T> responseType, String token)
+            throws IOException, InterruptedException {
+        return getConditional(path, responseType, token, null, null).body();
+    }
+
+    /**
+     * Send a GET request with If-None-Match / If-Modified-Since validators, retrying transient failures
+     * other than timeouts
+     * @param path Path relative to the API base URL, including the query string
+     * @param responseType Record the response body is decoded into
+     * @param token JWT token for protected routes, or null
+     * @param etag ETag of the copy the caller already has, or null
+     * @param lastModified Last-Modified of the copy the caller already has, or null
+     * @return The decoded body and its validators, or no body if the caller's copy is still current
+     * @throws ApiException If the server answers with an error status
+     * @throws IOException If network issues occur
+     * @throws InterruptedException If request is interrupted
+     */
+    public <T> Conditional<T> getConditional(String path, Class<T> responseType, String token,
+                                             String etag, String lastModified)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder builder = newRequest(path, token).GET();
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            builder.header("If-Modified-Since", lastModified);
+        }
+        HttpRequest request = builder.build();
+
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= MAX_GET_ATTEMPTS; attempt++) {
+            try {
+                HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                if (response.statusCode() == 304) {
+                    response.body().close();
+                    return new Conditional<>(null, etag, lastModified);
+                }
+                T body = decode(response, responseType);
+                return new Conditional<>(body,
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null));
+            } catch (ApiException e) {
+                if (!isTransient(e.getStatusCode())) {
+                    throw e;
+                }
+                lastError = e;
+            } catch (HttpTimeoutException e) {
+                // The request already waited its whole timeout: retrying would keep the caller
+                // waiting several times as long for a server that is not answering
+                throw e;
+            } catch (IOException e) {
+                lastError = e;
+            }
+
+            if (attempt < MAX_GET_ATTEMPTS) {
+                long delay = RETRY_BASE_DELAY_MS << (attempt - 1);
+                System.err.println("GET " + path + " failed (" + lastError.getMessage() + "), retrying in " + delay + " ms");
+                Thread.sleep(delay);
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * Send a POST request with a JSON body. Not retried, as it is not idempotent.
+     * @param path Path relative to the API base URL
+     * @param body Object serialized as the JSON request body
+     * @param responseType Record the response body is decoded into
+     * @param token JWT token for protected routes, or null
+     * @return The decoded response body
+     * @throws ApiException If the server answers with an error status
+     * @throws IOException If network issues occur
+     * @throws InterruptedException If request is interrupted
+     */
+    public <T> T post(String path, Object body, Class<T> responseType, String token)
+            throws IOException, InterruptedException {
+        HttpRequest request = newRequest(path, token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+        return execute(request, responseType);
+    }
+
+    /**
+     * Send a PUT request with a JSON body
+     * @param path Path relative to the API base URL
+     * @param body Object serialized as the JSON request body
+     * @param responseType Record the response body is decoded into
+     * @param token JWT token for protected routes, or null
+     * @return The decoded response body
+     * @throws ApiException If the server answers with an error status
+     * @throws IOException If network issues occur
+     * @throws InterruptedException If request is interrupted
+     */
+    public <T> T put(String path, Object body, Class<T> responseType, String token)
+            throws IOException, InterruptedException {
+        HttpRequest request = newRequest(path, token)
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+        return execute(request, responseType);
+    }
+
+    private HttpRequest.Builder newRequest(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(ServerConfig.API_BASE_URL + path))
+                .header("Accept", "application/json")
+                .header("User-Agent", USER_AGENT)
+                .timeout(REQUEST_TIMEOUT);
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+
+    /**
+     * Send the request and decode the body from the response stream
+     */
+    private <T> T execute(HttpRequest request, Class<T> responseType)
+            throws IOException, InterruptedException {
+        return decode(httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream()), responseType);
+    }
+
+    private <T> T decode(HttpResponse<InputStream> response, Class<T> responseType) throws IOException {
+        try (InputStream body = response.body()) {
+            int status = response.statusCode();
+            if (status >= 200 && status < 300) {
+                return objectMapper.readValue(body, responseType);
+            }
+            throw new ApiException(status, readErrorMessage(body));
+        }
+    }
+
+    private String readErrorMessage(InputStream body) {
+        try {
+            ErrorBody error = objectMapper.readValue(body, ErrorBody.class);
+            return error != null ? error.error() : null;
+        } catch (IOException e) {
+            // Not a JSON error body (e.g. a proxy error page)
+            return null;
+        }
+    }
+
+    private static boolean isTransient(int statusCode) {
+        return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+}
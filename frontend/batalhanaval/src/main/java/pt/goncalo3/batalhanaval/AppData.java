@@ -0,0 +1,71 @@
+package pt.goncalo3.batalhanaval;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Location of the files the client keeps between runs (caches, settings).
+ * Defaults to ~/.batalhanaval and can be moved with -Dbatalhanaval.dataDir=...
+ */
+public final class AppData {
+    private static final String DATA_DIR_PROPERTY = "batalhanaval.dataDir";
+
+    /**
+     * Writes the content of a file to the given stream
+     */
+    @FunctionalInterface
+    public interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private AppData() {
+    }
+
+    /**
+     * Get the path of a file in the data directory, creating the directory if needed
+     * @param name File name
+     * @return The path of the file (which may not exist yet)
+     * @throws IOException If the directory cannot be created
+     */
+    public static Path file(String name) throws IOException {
+        String custom = System.getProperty(DATA_DIR_PROPERTY);
+        Path dir = custom != null ? Path.of(custom) : Path.of(System.getProperty("user.home"), ".batalhanaval");
+        Files.createDirectories(dir);
+        return dir.resolve(name);
+    }
+
+    /**
+     * Replace a file atomically: the content is written to a temporary file next to it,
+     * which is forced to the disk and then moved over the target, so readers never see a
+     * half-written file, even after a crash.
+     * @param target The file to replace
+     * @param writer Writes the new content
+     * @throws IOException If the file cannot be written
+     */
+    public static void writeAtomically(Path target, Writer writer) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream out = Channels.newOutputStream(channel);
+                writer.write(out);
+                out.flush();
+                // Otherwise the rename may reach the disk before the content does
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package pt.goncalo3.batalhanaval;
+
+import javafx.scene.image.Image;
+
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache for the images bundled with the application.
+ * Images are decoded once and shared by every view that shows them.
+ */
+public final class Assets {
+    private static final String BASE = "/pt/goncalo3/batalhanaval/";
+
+    public static final String PLAYER_AVATAR = "playerAvatar.png";
+    public static final String ENEMY_AVATAR = "enemyAvatar.png";
+
+    private static final ConcurrentMap<String, Image> images = new ConcurrentHashMap<>();
+
+    private Assets() {
+    }
+
+    /**
+     * Get a bundled image, decoding it on first use
+     * @param name File name relative to the application resources
+     * @return The decoded image
+     */
+    public static Image image(String name) {
+        return images.computeIfAbsent(name, Assets::decode);
+    }
+
+    /**
+     * Decode every bundled image, meant to be called from a background thread
+     */
+    public static void preload() {
+        image(PLAYER_AVATAR);
+        image(ENEMY_AVATAR);
+    }
+
+    private static Image decode(String name) {
+        URL url = Assets.class.getResource(BASE + name);
+        if (url == null) {
+            throw new RuntimeException("Cannot find " + name + " at '" + BASE + name + "'");
+        }
+        return new Image(url.toExternalForm());
+    }
+}
@@ -1,38 +1,130 @@
 package pt.goncalo3.batalhanaval;
 
-import java.net.URL;
+import java.net.InetAddress;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 public class BattleshipApplication extends Application {
+    // Threads used to warm up the rest of the application after the first frame
+    private static final int WARMUP_THREADS = 2;
+    // Exit as soon as warm-up is done: used by the AppCDS training run and the startup benchmark
+    private static final String EXIT_AFTER_WARMUP_PROPERTY = "batalhanaval.exitAfterWarmup";
+
+    private ExecutorService warmupExecutor;
 
     @Override
     public void start(Stage stage) throws Exception {
-        // 1) Locate the FXML on the classpath (with a leading “/”):
-        URL fxmlUrl = getClass().getResource("/pt/goncalo3/batalhanaval/fxml/home-view.fxml");
-        if (fxmlUrl == null) {
-            throw new RuntimeException(
-                    "Cannot find home-view.fxml at '/pt/goncalo3/batalhanaval/fxml/home-view.fxml' on the classpath."
-            );
-        }
+        StartupTimeline.mark("fx start");
+
+        // 0) Check the stored session with the server while the UI is built
+        SessionRestore.getInstance().start()
+                .whenComplete((result, error) -> StartupTimeline.mark("session restored"));
 
-        // 2) Load that FXML hierarchy:
-        FXMLLoader loader = new FXMLLoader(fxmlUrl);
-        Parent root = loader.load();
+        // 1) Attach the navigator to the stage and load only the home view for now
+        Navigator navigator = Navigator.getInstance();
+        navigator.init(stage, Navigator.View.HOME);
+        StartupTimeline.mark("home view loaded");
 
-        // 3) Create a Scene (size 400×700) and attach the CSS stylesheet:
-        Scene scene = new Scene(root, 400, 700);
+        // 2) The first layout pulse after show() produces the first frame;
+        //    start warming up everything else only once it is on screen
+        Scene scene = stage.getScene();
+        Runnable firstFrameListener = new Runnable() {
+            private boolean fired;
 
-        // 4) Show the Stage
-        stage.setTitle("Battleship Game");
-        stage.setScene(scene);
+            @Override
+            public void run() {
+                if (fired) {
+                    return;
+                }
+                fired = true;
+                StartupTimeline.mark("first frame");
+                Platform.runLater(() -> scene.removePostLayoutPulseListener(this));
+                warmUp(navigator);
+            }
+        };
+        scene.addPostLayoutPulseListener(firstFrameListener);
+
+        // 3) Show the Stage
         stage.show();
     }
 
+    /**
+     * Load the remaining views, stylesheets, images, JSON mapper, HTTP stack and cached leaderboard on
+     * background threads, so the first use of each of them does not block the UI.
+     */
+    private void warmUp(Navigator navigator) {
+        warmupExecutor = Executors.newFixedThreadPool(WARMUP_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        CompletableFuture<Void> views = navigator.preload(warmupExecutor,
+                Navigator.View.LOGIN,
+                Navigator.View.LEADERBOARD,
+                Navigator.View.WAITING,
+                Navigator.View.SHIP_PLACEMENT,
+                Navigator.View.PLAYING
+        ).whenComplete((ignored, error) -> StartupTimeline.mark("views preloaded"));
+
+        CompletableFuture<Void> images = CompletableFuture.runAsync(Assets::preload, warmupExecutor)
+                .whenComplete((ignored, error) -> StartupTimeline.mark("images decoded"));
+
+        CompletableFuture<Void> json = CompletableFuture.runAsync(Json::warmUp, warmupExecutor)
+                .whenComplete((ignored, error) -> StartupTimeline.mark("json warm"));
+
+        CompletableFuture<Void> http = CompletableFuture.runAsync(BattleshipApplication::warmUpHttp, warmupExecutor)
+                .whenComplete((ignored, error) -> StartupTimeline.mark("http warm"));
+
+        CompletableFuture<Void> leaderboard = CompletableFuture.runAsync(
+                () -> LeaderboardCache.getInstance().loadSnapshot(), warmupExecutor)
+                .whenComplete((ignored, error) -> StartupTimeline.mark("leaderboard snapshot"));
+
+        CompletableFuture.allOf(views, images, json, http, leaderboard)
+                .whenComplete((ignored, error) -> Platform.runLater(() -> {
+                    if (error != null) {
+                        System.err.println("Warm-up finished with errors: " + error.getMessage());
+                    }
+                    StartupTimeline.mark("fully warm");
+                    StartupTimeline.print();
+                    warmupExecutor.shutdown();
+                    if (Boolean.getBoolean(EXIT_AFTER_WARMUP_PROPERTY)) {
+                        Platform.exit();
+                    }
+                }));
+    }
+
+    /**
+     * Create the shared API client and resolve the server address ahead of the first request
+     */
+    private static void warmUpHttp() {
+        ApiClient.getInstance();
+        URI apiUri = URI.create(ServerConfig.API_BASE_URL);
+        try {
+            InetAddress.getByName(apiUri.getHost());
+        } catch (Exception e) {
+            System.err.println("Could not resolve " + apiUri.getHost() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (warmupExecutor != null) {
+            warmupExecutor.shutdownNow();
+        }
+        GameConnection.getInstance().shutdown();
+        // Save settings changed in the last moments before exit
+        SettingsStore.getInstance().close();
+    }
+
     public static void main(String[] args) {
+        StartupTimeline.mark("main");
         launch(args);
     }
 }
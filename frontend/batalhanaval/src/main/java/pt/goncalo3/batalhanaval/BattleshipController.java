@@ -2,26 +2,35 @@ package pt.goncalo3.batalhanaval;
 
 import javafx.application.Platform;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.TextArea;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.shape.Rectangle;
-import javafx.stage.Stage;
 import javafx.scene.input.MouseButton;
+import javafx.scene.paint.Color;
 
-import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
-public class BattleshipController implements Game.GameStateListener {
+public class BattleshipController implements Navigator.Lifecycle, Game.GameStateListener {
     private static final double CIRCLE_RADIUS = 12.0;
     private static final double CELL_SIZE = CIRCLE_RADIUS * 2.0;
     private static final int GRID_SIZE = 10;
+    private static final String HINTS_KEY = "showHints";
+    private static final Color HINT_COLOR = Color.web("#1B98E0");
+    // Sample whole fleets for the hints once this many hits are open or this few ships are left
+    private static final int SAMPLER_MIN_OPEN_HITS = 2;
+    private static final int SAMPLER_MAX_SHIPS = 2;
+    private static final Duration SAMPLER_BUDGET = Duration.ofMillis(150);
+    // How long the end of the game waits for the shot report
+    private static final Duration REPORT_WAIT = Duration.ofSeconds(1);
 
     @FXML private GridPane playerGrid;
     @FXML private GridPane enemyGrid;
@@ -30,20 +39,41 @@ public class BattleshipController implements Game.GameStateListener {
     @FXML private Label statusMessage;
     @FXML private VBox playerBoardSection;
     @FXML private VBox enemyBoardSection;
+    @FXML private CheckBox hintToggle;
 
     private Rectangle[][] playerSquares = new Rectangle[GRID_SIZE][GRID_SIZE];
     private Rectangle[][] enemySquares  = new Rectangle[GRID_SIZE][GRID_SIZE];
     private List<Ship> playerShips;
-    private Game gameInstance = Game.getInstance();
+    private Game gameInstance;
     private String lastGameEventSummary = "";
+    private FleetSampler sampler;
+    private int hintRequest;  // Stamps the latest hint update, to drop stale sampled ones
 
     @FXML
     public void initialize() {
         buildGameGrids();
+
+        hintToggle.setSelected(Boolean.parseBoolean(SettingsStore.getInstance().get(HINTS_KEY)));
+        hintToggle.selectedProperty().addListener((obs, was, selected) -> {
+            SettingsStore.getInstance().put(HINTS_KEY, Boolean.toString(selected));
+            updateHints();
+        });
+    }
+
+    /**
+     * Bind the cached view to the current game and clear the boards of the previous one
+     */
+    @Override
+    public void onShow() {
+        clearBoards();
+        lastGameEventSummary = "";
         initializeUIState();
+        gameInstance = Game.getInstance();
         gameInstance.setGameStateListener(this);
+        sampler = new FleetSampler(System.nanoTime());
         playerShips = gameInstance.getShips();
         displayPlayerShips();
+        updateHints();
 
         if (gameInstance.isYourTurn()) {
             onYourTurn();
@@ -90,6 +120,16 @@ public class BattleshipController implements Game.GameStateListener {
         }
     }
 
+    private void clearBoards() {
+        for (int row = 0; row < GRID_SIZE; row++) {
+            for (int col = 0; col < GRID_SIZE; col++) {
+                playerSquares[row][col].getStyleClass().removeAll("ship", "hit", "miss", "destroyed");
+                enemySquares[row][col].getStyleClass().removeAll("hit", "miss", "destroyed", "hint-best");
+                enemySquares[row][col].setStyle(null);
+            }
+        }
+    }
+
     private void buildGameGrids() {
         buildPlayerGrid();
         buildEnemyGrid();
@@ -141,7 +181,9 @@ public class BattleshipController implements Game.GameStateListener {
         else if (button == MouseButton.SECONDARY) {
             if (!square.getStyleClass().contains("hit")) {
                 square.getStyleClass().removeAll("miss");
+                square.getStyleClass().removeAll("hint-best");
                 square.getStyleClass().add("miss");
+                square.setStyle(null);
                 updateStatusMessage("Marked as potential miss.");
             }
         }
@@ -189,6 +231,74 @@ public class BattleshipController implements Game.GameStateListener {
         }
     }
 
+    /**
+     * Shade the cells of the enemy board not attacked yet by their density, darkest where
+     * a ship is most likely, and outline the best one. Cleared when hints are off.
+     * Once open hits constrain the board, the sampled heatmap replaces the quick one
+     * when it is ready. Openings come precomputed from the {@link OpeningBook}, and a
+     * board sampled before is painted from the cache at once.
+     */
+    private void updateHints() {
+        if (gameInstance == null) {
+            return;
+        }
+        int request = ++hintRequest;
+        if (!hintToggle.isSelected()) {
+            paintHints(null);
+            return;
+        }
+        TargetBoard board = gameInstance.getTargetBoard();
+        DensityTargeting.Heatmap booked = OpeningBook.getInstance().lookup(board);
+        if (booked != null) {
+            paintHints(booked);
+            return;
+        }
+        if (board.openHits() < SAMPLER_MIN_OPEN_HITS && board.remainingShips() > SAMPLER_MAX_SHIPS) {
+            paintHints(DensityTargeting.cachedHeatmap(board));
+            return;
+        }
+        DensityTargeting.Heatmap sampled = DensityTargeting.sampledHeatmap(board);
+        if (sampled != null) {
+            paintHints(sampled);
+            return;
+        }
+        paintHints(DensityTargeting.cachedHeatmap(board));
+        TargetBoard snapshot = board.copy();
+        FleetSampler sampler = this.sampler;
+        CompletableFuture.supplyAsync(() -> sampler.sample(snapshot, SAMPLER_BUDGET))
+                .thenAccept(estimate -> Platform.runLater(() -> {
+                    // Dropped if the board changed or hints were turned off meanwhile
+                    if (request != hintRequest || estimate.samples() == 0) {
+                        return;
+                    }
+                    System.out.printf("Sampled hints: %d fleets (%d reused), +/- %.3f%n",
+                            estimate.samples(), estimate.reused(), estimate.maxHalfWidth());
+                    paintHints(DensityTargeting.storeSampled(snapshot, estimate.probability()));
+                }));
+    }
+
+    private void paintHints(DensityTargeting.Heatmap heatmap) {
+        for (int row = 0; row < GRID_SIZE; row++) {
+            for (int col = 0; col < GRID_SIZE; col++) {
+                Rectangle square = enemySquares[row][col];
+                int cell = TargetBoard.cell(col, row);
+                square.getStyleClass().remove("hint-best");
+                boolean marked = square.getStyleClass().contains("hit") || square.getStyleClass().contains("miss")
+                        || square.getStyleClass().contains("destroyed");
+                if (heatmap == null || marked) {
+                    square.setStyle(null);
+                    continue;
+                }
+                Color fill = Color.WHITE.interpolate(HINT_COLOR, 0.85 * heatmap.relative(cell));
+                square.setStyle(String.format("-fx-fill: #%02x%02x%02x;", Math.round(fill.getRed() * 255),
+                        Math.round(fill.getGreen() * 255), Math.round(fill.getBlue() * 255)));
+                if (cell == heatmap.best()) {
+                    square.getStyleClass().add("hint-best");
+                }
+            }
+        }
+    }
+
     private void updateStatusMessage(String message) {
         if (statusMessage != null) {
             statusMessage.setText(message);
@@ -228,37 +338,7 @@ public class BattleshipController implements Game.GameStateListener {
 
             Optional<ButtonType> result = alert.showAndWait();
             if (result.isPresent() && result.get() == homeButtonType) {
-                try {
-                    FXMLLoader loader = new FXMLLoader(getClass().getResource("/pt/goncalo3/batalhanaval/fxml/home-view.fxml"));
-                    Parent homeRoot = loader.load();
-
-                    Scene currentScene = null;
-                    if (statusMessage != null && statusMessage.getScene() != null) {
-                        currentScene = statusMessage.getScene();
-                    } else if (playerGrid != null && playerGrid.getScene() != null) {
-                        currentScene = playerGrid.getScene();
-                    } else if (enemyGrid != null && enemyGrid.getScene() != null) {
-                        currentScene = enemyGrid.getScene();
-                    }
-
-
-                    if (currentScene != null) {
-                        Stage primaryStage = (Stage) currentScene.getWindow();
-                        primaryStage.setScene(new Scene(homeRoot));
-                        primaryStage.setTitle("Battleship - Home");
-                        primaryStage.show();
-                    } else {
-                        System.err.println("Error: Could not retrieve current scene to navigate home after disconnection.");
-                        if (statusMessage != null) {
-                            statusMessage.setText("Disconnected. Error navigating to home (scene not found).");
-                        }
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    if (statusMessage != null) {
-                        statusMessage.setText("Disconnected. Error loading home screen.");
-                    }
-                }
+                Navigator.getInstance().show(Navigator.View.HOME);
             } else {
                 // Fallback message if the alert is closed without pressing the button
                 if (statusMessage != null) {
@@ -344,56 +424,53 @@ public class BattleshipController implements Game.GameStateListener {
         Platform.runLater(() -> {
             if (enemyGrid != null) enemyGrid.setDisable(true);
 
-            Alert alert = new Alert(Alert.AlertType.INFORMATION);
-            alert.setTitle("Game Over");
-            alert.setHeaderText(won ? "You Won!" : "You Lost!");
-            alert.setContentText(won ? "Congratulations! Well played." : "Better luck next time!");
+            // The report of the player's shots goes in the alert, unless it takes too long
+            GameRecord record = gameInstance != null ? gameInstance.getRecord() : null;
+            CompletableFuture<ShotAnalysis.Report> analysis = record != null
+                    ? ShotAnalysis.getInstance().analyze(record)
+                    : CompletableFuture.completedFuture(null);
+            analysis.completeOnTimeout(null, REPORT_WAIT.toMillis(), TimeUnit.MILLISECONDS)
+                    .exceptionally(error -> {
+                        System.err.println("Shot analysis failed: " + error.getMessage());
+                        return null;
+                    })
+                    .thenAccept(report -> Platform.runLater(() -> showGameOver(won, report)));
+        });
+    }
 
-            ButtonType homeButtonType = new ButtonType("Go to Home Page");
-            alert.getButtonTypes().setAll(homeButtonType);
+    /**
+     * Show the outcome, with the shot report if there is one: the summary in the alert,
+     * every shot in its details
+     */
+    private void showGameOver(boolean won, ShotAnalysis.Report report) {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Game Over");
+        alert.setHeaderText(won ? "You Won!" : "You Lost!");
+        String message = won ? "Congratulations! Well played." : "Better luck next time!";
+        if (report != null && !report.shots().isEmpty()) {
+            message += "\n\n" + report.summary();
+            TextArea details = new TextArea(report.details());
+            details.setEditable(false);
+            details.setStyle("-fx-font-family: monospace;");
+            alert.getDialogPane().setExpandableContent(details);
+        }
+        alert.setContentText(message);
 
-            if (statusMessage != null && statusMessage.getScene() != null && statusMessage.getScene().getWindow() != null) {
-                alert.initOwner(statusMessage.getScene().getWindow());
-            }
+        ButtonType homeButtonType = new ButtonType("Go to Home Page");
+        alert.getButtonTypes().setAll(homeButtonType);
 
-            Optional<ButtonType> result = alert.showAndWait();
-            if (result.isPresent() && result.get() == homeButtonType) {
-                try {
-                    FXMLLoader loader = new FXMLLoader(getClass().getResource("/pt/goncalo3/batalhanaval/fxml/home-view.fxml"));
-                    Parent homeRoot = loader.load();
-
-                    Scene currentScene = statusMessage.getScene();
-                    if (currentScene == null) {
-                        if (playerGrid != null && playerGrid.getScene() != null) {
-                            currentScene = playerGrid.getScene();
-                        } else if (enemyGrid != null && enemyGrid.getScene() != null) {
-                            currentScene = enemyGrid.getScene();
-                        }
-                    }
+        if (statusMessage != null && statusMessage.getScene() != null && statusMessage.getScene().getWindow() != null) {
+            alert.initOwner(statusMessage.getScene().getWindow());
+        }
 
-                    if (currentScene != null) {
-                        Stage primaryStage = (Stage) currentScene.getWindow();
-                        primaryStage.setScene(new Scene(homeRoot));
-                        primaryStage.setTitle("Battleship - Home");
-                        primaryStage.show();
-                    } else {
-                        System.err.println("Error: Could not retrieve current scene to navigate home.");
-                        if (statusMessage != null) {
-                            statusMessage.setText("Game Over. Error navigating to home (scene not found).");
-                        }
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    if (statusMessage != null) {
-                        statusMessage.setText("Game Over. Error loading home screen.");
-                    }
-                }
-            } else {
-                if (statusMessage != null) {
-                    statusMessage.setText(won ? "You won! Congratulations!" : "You lost. Better luck next time!");
-                }
+        Optional<ButtonType> result = alert.showAndWait();
+        if (result.isPresent() && result.get() == homeButtonType) {
+            Navigator.getInstance().show(Navigator.View.HOME);
+        } else {
+            if (statusMessage != null) {
+                statusMessage.setText(won ? "You won! Congratulations!" : "You lost. Better luck next time!");
             }
-        });
+        }
     }
 
     @Override
@@ -422,6 +499,7 @@ public class BattleshipController implements Game.GameStateListener {
                 enemySquares[y][x].getStyleClass().add(result);
                 lastGameEventSummary = result.toUpperCase();
             }
+            updateHints();
         });
     }
 
@@ -472,6 +550,9 @@ public class BattleshipController implements Game.GameStateListener {
                     }
                 }
             }
+            if (!onPlayerGrid) {
+                updateHints();
+            }
         });
     }
 }
\ No newline at end of file
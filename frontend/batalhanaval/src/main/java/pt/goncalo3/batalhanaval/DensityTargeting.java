@@ -0,0 +1,152 @@
+package pt.goncalo3.batalhanaval;
+
+import java.util.Arrays;
+
+/**
+ * Probability-density targeting: for every ship still afloat, count each legal
+ * placement on the {@link TargetBoard} and add it to the cells it covers.
+ *
+ * A placement is legal when it covers no miss and no cell of a sunk ship. Placements
+ * through open hits are weighted up, so once a ship is hit the cells around the hit
+ * dominate (the usual hunt and target behaviour falls out of the counts). Each ship's
+ * counts are divided by its total, which makes a cell's value the expected number of
+ * ships covering it. The counts are added up by the {@link HeatmapKernel}; a heatmap
+ * takes microseconds, well under the budget of a hint or an AI move.
+ *
+ * Heatmaps are also kept in {@link TranspositionCache}s by the hash of their board:
+ * one for quick heatmaps, which searches and playouts reach over and over, and one for
+ * sampled heatmaps, which cost a whole time budget each.
+ */
+public final class DensityTargeting {
+    // A placement weighs 16 times more per open hit it covers
+    static final int HIT_WEIGHT_SHIFT = 4;
+    private static final int CACHE_CAPACITY = 1 << 16;
+
+    private static final TranspositionCache<Heatmap> QUICK = new TranspositionCache<>(CACHE_CAPACITY);
+    private static final TranspositionCache<Heatmap> SAMPLED = new TranspositionCache<>(CACHE_CAPACITY);
+
+    /**
+     * Density of every cell, 0 for cells already attacked
+     * @param density Expected number of ships covering each cell, indexed by y * 10 + x
+     * @param best The cell with the highest density, or -1 if no ship fits anywhere
+     */
+    public record Heatmap(double[] density, int best) {
+        public double density(int x, int y) {
+            return density[TargetBoard.cell(x, y)];
+        }
+
+        /**
+         * Get the density of a cell relative to the best cell, from 0 to 1
+         */
+        public double relative(int cell) {
+            return best < 0 || density[best] == 0 ? 0 : density[cell] / density[best];
+        }
+    }
+
+    private DensityTargeting() {
+    }
+
+    /**
+     * Get the heatmap of a board from the cache, computing it if needed
+     * @param board The board; it is only read
+     * @return The heatmap; its density must not be modified
+     */
+    public static Heatmap cachedHeatmap(TargetBoard board) {
+        return QUICK.get(board.hash(), () -> heatmap(board));
+    }
+
+    /**
+     * Get the sampled heatmap of a board, if one was stored
+     * @param board The board; it is only read
+     * @return The heatmap, or null; its density must not be modified
+     */
+    public static Heatmap sampledHeatmap(TargetBoard board) {
+        return SAMPLED.get(board.hash());
+    }
+
+    /**
+     * Store the heatmap of a board estimated by a {@link FleetSampler}
+     * @param board The board sampled
+     * @param probability The estimate
+     * @return The heatmap, as {@link #heatmapOf}
+     */
+    public static Heatmap storeSampled(TargetBoard board, double[] probability) {
+        Heatmap heatmap = heatmapOf(probability, board);
+        SAMPLED.put(board.hash(), heatmap);
+        return heatmap;
+    }
+
+    /**
+     * Get the counters of the quick and the sampled heatmap caches
+     */
+    public static TranspositionCache.Stats[] cacheStats() {
+        return new TranspositionCache.Stats[]{QUICK.stats(), SAMPLED.stats()};
+    }
+
+    /**
+     * Compute the heatmap of a board
+     * @param board The board; it is only read
+     * @return The heatmap
+     */
+    public static Heatmap heatmap(TargetBoard board) {
+        long blockedLow = board.blockedLow();
+        long blockedHigh = board.blockedHigh();
+        long hitLow = board.hitLow();
+        long hitHigh = board.hitHigh();
+        double[] density = new double[Fleet.CELLS];
+        int[] counts = new int[Fleet.CELLS];
+        int[] horizontal = new int[Fleet.CELLS];
+        int[] vertical = new int[Fleet.CELLS];
+        HeatmapKernel kernel = HeatmapKernel.get();
+
+        for (int length = 1; length <= Fleet.BOARD_SIZE; length++) {
+            int ships = board.remaining(length);
+            if (ships == 0) {
+                continue;
+            }
+            long[] low = TargetBoard.placementsLow(length);
+            long[] high = TargetBoard.placementsHigh(length);
+            int[] starts = TargetBoard.placementStarts(length);
+            int horizontalCount = TargetBoard.horizontalPlacements(length);
+            Arrays.fill(horizontal, 0);
+            Arrays.fill(vertical, 0);
+            long total = 0;
+            for (int p = 0; p < low.length; p++) {
+                if ((low[p] & blockedLow | high[p] & blockedHigh) != 0) {
+                    continue;
+                }
+                int covered = Long.bitCount(low[p] & hitLow) + Long.bitCount(high[p] & hitHigh);
+                int weight = 1 << HIT_WEIGHT_SHIFT * covered;
+                (p < horizontalCount ? horizontal : vertical)[starts[p]] = weight;
+                total += weight;
+            }
+            if (total == 0) {
+                continue;
+            }
+            Arrays.fill(counts, 0);
+            kernel.placements(counts, horizontal, vertical, length, Fleet.BOARD_SIZE);
+            // Ships of the same length share their counts
+            double scale = (double) ships / total;
+            for (int cell = 0; cell < Fleet.CELLS; cell++) {
+                density[cell] += counts[cell] * scale;
+            }
+        }
+
+        return heatmapOf(density, board);
+    }
+
+    /**
+     * Make a heatmap of per-cell values, clearing the cells already attacked
+     */
+    static Heatmap heatmapOf(double[] density, TargetBoard board) {
+        int best = -1;
+        for (int cell = 0; cell < Fleet.CELLS; cell++) {
+            if (board.isShot(cell)) {
+                density[cell] = 0;
+            } else if (density[cell] > 0 && (best < 0 || density[cell] > density[best])) {
+                best = cell;
+            }
+        }
+        return new Heatmap(density, best);
+    }
+}
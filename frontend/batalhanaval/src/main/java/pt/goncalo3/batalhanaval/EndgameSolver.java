@@ -0,0 +1,505 @@
+package pt.goncalo3.batalhanaval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays the end of a game exactly: with at most {@link #MAX_SHIPS} ships left, finds
+ * the shot that minimizes the expected number of shots to sink them all.
+ *
+ * A configuration is a placement of every ship left that is consistent with the
+ * board: it covers every open hit, no miss and no sunk cell, and no ship of it is hit
+ * on all of its cells (it would have been reported sunk). All configurations are
+ * equally likely. A shot splits them by what the server would answer: a miss, a hit,
+ * or a hit that sinks a ship at a given placement. The value of a board is then
+ *
+ *     E(board) = 1 + min over cells of the sum over answers of P(answer) * E(next board)
+ *
+ * with E = the cells left to hit once a single configuration remains. The search only
+ * shoots cells some configuration covers, and only the cell every configuration covers
+ * when there is one (it must be shot anyway, and shooting it early only tells more).
+ * Cells are tried by how many configurations cover them, and each is cut as soon as
+ * its value is bound to be no better than the best so far. The bound: every ship cell
+ * left costs a shot, and so does every miss before the next hit. Until that hit the
+ * shots are a fixed sequence of cells, so the first j of them all miss with probability
+ * at least 1 - (the j highest covers) / (the configurations).
+ *
+ * Values of boards are memoized in a {@link TranspositionCache} by their Zobrist hash,
+ * shared by every search and game; they are exact, so the cache only saves time. The
+ * cells of the first shot are searched in parallel on the common pool. A search gives
+ * up past its deadline or with more than its limit of configurations, and the caller
+ * falls back to the heatmap.
+ *
+ * Within the default limit only a fifth of endgame moves are solved, and
+ * EndgameBenchmark shows no significant saving in shots per game, so the Hard AI does
+ * not use the solver; it is only played by the benchmark until it pays off.
+ */
+public final class EndgameSolver {
+    /**
+     * Ships left at most for a board to be solved
+     */
+    public static final int MAX_SHIPS = 2;
+    /**
+     * Configurations solved at most by default
+     */
+    public static final int DEFAULT_MAX_CONFIGURATIONS = 16;
+
+    private static final TranspositionCache<Double> VALUES = new TranspositionCache<>(1 << 18);
+
+    /**
+     * The best shot of a board
+     * @param cell The cell to attack, indexed by y * 10 + x
+     * @param expectedShots Shots to sink every ship left, this one included, on average
+     * @param configurations Configurations consistent with the board
+     * @param boards Boards searched
+     */
+    public record Solution(int cell, double expectedShots, int configurations, long boards) {
+    }
+
+    /**
+     * Thrown through the search when the deadline passes
+     */
+    private static final class OutOfTime extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        OutOfTime() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final OutOfTime OUT_OF_TIME = new OutOfTime();
+
+    private final int maxConfigurations;
+
+    public EndgameSolver() {
+        this(DEFAULT_MAX_CONFIGURATIONS);
+    }
+
+    /**
+     * @param maxConfigurations Boards with more configurations than this are not solved
+     */
+    public EndgameSolver(int maxConfigurations) {
+        this.maxConfigurations = maxConfigurations;
+    }
+
+    /**
+     * Get the counters of the cache of board values
+     */
+    public static TranspositionCache.Stats cacheStats() {
+        return VALUES.stats();
+    }
+
+    /**
+     * Solve a board. Blocks the calling thread until solved or the deadline.
+     * @param board The board; it is only read, and must not change during the call
+     * @param deadline Give up at this {@link System#nanoTime()}
+     * @return The best shot, or null if the board has more than {@link #MAX_SHIPS} ships
+     * left, too many configurations, or was not solved in time
+     */
+    public Solution solve(TargetBoard board, long deadline) {
+        Search search = Search.of(board, maxConfigurations, deadline);
+        if (search == null) {
+            return null;
+        }
+        int[] all = new int[search.count];
+        Arrays.setAll(all, i -> i);
+        long hitLow = board.hitLow() | board.sunkLow(), hitHigh = board.hitHigh() | board.sunkHigh();
+        if (search.count == 1) {
+            long low = (search.aLow[0] | search.bLow[0]) & ~hitLow;
+            long high = (search.aHigh[0] | search.bHigh[0]) & ~hitHigh;
+            int cell = low != 0 ? Long.numberOfTrailingZeros(low) : 64 + Long.numberOfTrailingZeros(high);
+            return new Solution(cell, search.unhit(0, hitLow, hitHigh), 1, 1);
+        }
+
+        int[] cover = new int[Fleet.CELLS];
+        search.cover(all, cover);
+        int[] candidates = search.candidates(cover, all.length, hitLow, hitHigh);
+        int lowerBound = search.unhit(0, hitLow, hitHigh);
+        int[] covers = Search.covers(cover, candidates);
+        AtomicLong best = new AtomicLong(Double.doubleToLongBits(Double.MAX_VALUE));
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (int i = 0; i < candidates.length; i++) {
+            int cell = candidates[i], candidate = i;
+            double bound = Search.bound(all.length, covers, candidate, lowerBound);
+            tasks.add(() -> {
+                double cutoff = Double.longBitsToDouble(best.get());
+                if (bound > cutoff) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                double value = search.shot(all, hitLow, hitHigh, cell, lowerBound, covers, candidate, cutoff, true);
+                best.accumulateAndGet(Double.doubleToLongBits(value),
+                        (a, b) -> Double.longBitsToDouble(a) <= Double.longBitsToDouble(b) ? a : b);
+                return value;
+            });
+        }
+        try {
+            List<Future<Double>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+            int bestCell = -1;
+            double bestValue = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < candidates.length; i++) {
+                double value = results.get(i).get();
+                if (value < bestValue) {
+                    bestValue = value;
+                    bestCell = candidates[i];
+                }
+            }
+            return new Solution(bestCell, bestValue, search.count, search.states.sum());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OutOfTime) {
+                return null;
+            }
+            throw new IllegalStateException("Endgame search failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * The configurations of one board, and the search over them. Ship a is the longer
+     * one; b is absent (all zero) with a single ship left. The search only reads the
+     * arrays, so the cells of the first shot can be searched on several threads.
+     *
+     * A state of the search is a set of configurations and the cells of theirs already
+     * hit; misses and ships sunk before are left out, since they change nothing. Its key
+     * XORs a hash of each configuration with a hash of those cells, so states are
+     * shared between boards, searches and games.
+     */
+    private static final class Search {
+        final long[] aLow, aHigh, bLow, bHigh;
+        final long[] ids;
+        final int[] aPlacement, bPlacement;
+        final int aLength, bLength;
+        final int count;
+        final long deadline;
+        final LongAdder states = new LongAdder();
+
+        private Search(int aLength, int bLength, int capacity, long deadline) {
+            this.aLength = aLength;
+            this.bLength = bLength;
+            this.deadline = deadline;
+            aLow = new long[capacity];
+            aHigh = new long[capacity];
+            bLow = new long[capacity];
+            bHigh = new long[capacity];
+            ids = new long[capacity];
+            aPlacement = new int[capacity];
+            bPlacement = new int[capacity];
+            count = 0;
+        }
+
+        private Search(Search other, int count) {
+            aLength = other.aLength;
+            bLength = other.bLength;
+            deadline = other.deadline;
+            aLow = Arrays.copyOf(other.aLow, count);
+            aHigh = Arrays.copyOf(other.aHigh, count);
+            bLow = Arrays.copyOf(other.bLow, count);
+            bHigh = Arrays.copyOf(other.bHigh, count);
+            ids = Arrays.copyOf(other.ids, count);
+            aPlacement = Arrays.copyOf(other.aPlacement, count);
+            bPlacement = Arrays.copyOf(other.bPlacement, count);
+            this.count = count;
+        }
+
+        /**
+         * Enumerate the configurations of a board
+         * @return The search, or null if the board cannot be solved
+         */
+        static Search of(TargetBoard board, int maxConfigurations, long deadline) {
+            int[] lengths = new int[MAX_SHIPS];
+            int ships = 0;
+            for (int length = Fleet.BOARD_SIZE; length >= 1; length--) {
+                for (int i = 0; i < board.remaining(length); i++) {
+                    if (ships == MAX_SHIPS) {
+                        return null;
+                    }
+                    lengths[ships++] = length;
+                }
+            }
+            if (ships == 0) {
+                return null;
+            }
+            long blockedLow = board.blockedLow(), blockedHigh = board.blockedHigh();
+            long openLow = board.hitLow(), openHigh = board.hitHigh();
+            Search search = new Search(lengths[0], lengths[1], maxConfigurations + 1, deadline);
+            int count = 0;
+
+            long[] aLow = TargetBoard.placementsLow(lengths[0]), aHigh = TargetBoard.placementsHigh(lengths[0]);
+            for (int a = 0; a < placements(lengths[0]); a++) {
+                if (!fits(aLow[a], aHigh[a], blockedLow, blockedHigh, openLow, openHigh)) {
+                    continue;
+                }
+                if (ships == 1) {
+                    if ((openLow & ~aLow[a] | openHigh & ~aHigh[a]) == 0
+                            && (count = search.add(count, a, aLow[a], aHigh[a], 0, 0, 0)) > maxConfigurations) {
+                        return null;
+                    }
+                } else {
+                    long[] bLow = TargetBoard.placementsLow(lengths[1]), bHigh = TargetBoard.placementsHigh(lengths[1]);
+                    // Two ships of one length: each pair once
+                    for (int b = lengths[0] == lengths[1] ? a + 1 : 0; b < placements(lengths[1]); b++) {
+                        if ((aLow[a] & bLow[b] | aHigh[a] & bHigh[b]) == 0
+                                && fits(bLow[b], bHigh[b], blockedLow, blockedHigh, openLow, openHigh)
+                                && (openLow & ~(aLow[a] | bLow[b]) | openHigh & ~(aHigh[a] | bHigh[b])) == 0) {
+                            count = search.add(count, a, aLow[a], aHigh[a], b, bLow[b], bHigh[b]);
+                            if (count > maxConfigurations) {
+                                return null;
+                            }
+                        }
+                    }
+                }
+            }
+            return count == 0 ? null : new Search(search, count);
+        }
+
+        /**
+         * Get the number of distinct placements of a length: a ship of one cell is the
+         * same horizontal and vertical
+         */
+        private static int placements(int length) {
+            return length == 1 ? TargetBoard.horizontalPlacements(1) : TargetBoard.placementsLow(length).length;
+        }
+
+        /**
+         * Whether a placement avoids the blocked cells and is not hit on every cell
+         */
+        private static boolean fits(long low, long high, long blockedLow, long blockedHigh, long openLow, long openHigh) {
+            return (low & blockedLow | high & blockedHigh) == 0 && (low & ~openLow | high & ~openHigh) != 0;
+        }
+
+        private int add(int at, int a, long aLow, long aHigh, int b, long bLow, long bHigh) {
+            this.aPlacement[at] = a;
+            this.aLow[at] = aLow;
+            this.aHigh[at] = aHigh;
+            this.bPlacement[at] = b;
+            this.bLow[at] = bLow;
+            this.bHigh[at] = bHigh;
+            ids[at] = mix(mix(mix(mix(aLow) ^ aHigh) ^ bLow) ^ bHigh);
+            return at + 1;
+        }
+
+        /**
+         * Ship cells of a configuration not hit yet
+         */
+        int unhit(int configuration, long hitLow, long hitHigh) {
+            return Long.bitCount((aLow[configuration] | bLow[configuration]) & ~hitLow)
+                    + Long.bitCount((aHigh[configuration] | bHigh[configuration]) & ~hitHigh);
+        }
+
+        /**
+         * Count the configurations covering each cell
+         * @return The key of the configurations
+         */
+        long cover(int[] configurations, int[] cover) {
+            long key = 0;
+            for (int c : configurations) {
+                addCells(cover, aLow[c] | bLow[c], aHigh[c] | bHigh[c]);
+                key ^= ids[c];
+            }
+            return key;
+        }
+
+        private static void addCells(int[] cover, long low, long high) {
+            while (low != 0) {
+                cover[Long.numberOfTrailingZeros(low)]++;
+                low &= low - 1;
+            }
+            while (high != 0) {
+                cover[64 + Long.numberOfTrailingZeros(high)]++;
+                high &= high - 1;
+            }
+        }
+
+        /**
+         * The cells worth shooting, most covered first: a cell every configuration
+         * covers if there is one, else every covered cell not hit yet
+         */
+        int[] candidates(int[] cover, int configurations, long hitLow, long hitHigh) {
+            int count = 0;
+            long[] cells = new long[Fleet.CELLS];
+            for (int cell = 0; cell < Fleet.CELLS; cell++) {
+                if (cover[cell] > 0 && !TargetBoard.isSet(hitLow, hitHigh, cell)) {
+                    if (cover[cell] == configurations) {
+                        return new int[]{cell};
+                    }
+                    // Most covered first, ties in the order of the cells
+                    cells[count++] = (long) (configurations - cover[cell]) << 8 | cell;
+                }
+            }
+            Arrays.sort(cells, 0, count);
+            int[] candidates = new int[count];
+            for (int i = 0; i < count; i++) {
+                candidates[i] = (int) (cells[i] & 0xFF);
+            }
+            return candidates;
+        }
+
+        /**
+         * Get the value of a state
+         */
+        double value(int[] configurations, long hitLow, long hitHigh) {
+            if (configurations.length == 1) {
+                return unhit(configurations[0], hitLow, hitHigh);
+            }
+            int[] cover = new int[Fleet.CELLS];
+            long key = cover(configurations, cover);
+            long unionLow = 0, unionHigh = 0;
+            for (int cell = 0; cell < Fleet.CELLS; cell++) {
+                if (cover[cell] > 0 && TargetBoard.isSet(hitLow, hitHigh, cell)) {
+                    if (cell < 64) {
+                        unionLow |= 1L << cell;
+                    } else {
+                        unionHigh |= 1L << (cell - 64);
+                    }
+                }
+            }
+            key ^= mix(mix(unionLow) ^ unionHigh);
+            Double known = VALUES.get(key);
+            if (known != null) {
+                return known;
+            }
+            states.increment();
+            if (System.nanoTime() > deadline) {
+                throw OUT_OF_TIME;
+            }
+            int lowerBound = unhit(configurations[0], hitLow, hitHigh);
+            int[] candidates = candidates(cover, configurations.length, hitLow, hitHigh);
+            int[] covers = covers(cover, candidates);
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < candidates.length; i++) {
+                if (bound(configurations.length, covers, i, lowerBound) < best) {
+                    best = Math.min(best, shot(configurations, hitLow, hitHigh, candidates[i], lowerBound, covers, i, best, false));
+                }
+            }
+            VALUES.put(key, best);
+            return best;
+        }
+
+        /**
+         * Get the value of a state after shooting a cell
+         * @param lowerBound Ship cells left to hit before the shot
+         * @param covers Configurations on each candidate before the shot, most first
+         * @param candidate Index of the cell among the candidates
+         * @param cutoff Stop once the value is bound to reach this
+         * @param strict Only stop once it is bound to exceed it
+         * @return The value, or infinity if stopped
+         */
+        double shot(int[] configurations, long hitLow, long hitHigh, int cell, int lowerBound, int[] covers,
+                    int candidate, double cutoff, boolean strict) {
+            long shotLow = cell < 64 ? hitLow | 1L << cell : hitLow;
+            long shotHigh = cell < 64 ? hitHigh : hitHigh | 1L << (cell - 64);
+
+            // Answer of each configuration in the high half, the configuration in the low
+            // half: -2 miss, -1 hit, else the placement sunk. Sorted, each answer is a run.
+            long[] answers = new long[configurations.length];
+            int misses = 0;
+            for (int i = 0; i < configurations.length; i++) {
+                int c = configurations[i];
+                long answer;
+                if (TargetBoard.isSet(aLow[c], aHigh[c], cell)) {
+                    answer = (aLow[c] & ~shotLow | aHigh[c] & ~shotHigh) == 0 ? sunkCode(aLength, aPlacement[c]) : -1;
+                } else if (TargetBoard.isSet(bLow[c], bHigh[c], cell)) {
+                    answer = (bLow[c] & ~shotLow | bHigh[c] & ~shotHigh) == 0 ? sunkCode(bLength, bPlacement[c]) : -1;
+                } else {
+                    answer = -2;
+                    misses++;
+                }
+                answers[i] = answer << 32 | c;
+            }
+            Arrays.sort(answers);
+
+            double total = configurations.length;
+            // Start from the bound and add what each answer costs above its own bound
+            double value = bound(answers.length, covers, candidate, lowerBound);
+            double missBound = lowerBound + misses(misses, covers, candidate);
+            for (int from = 0; from < answers.length; ) {
+                int code = (int) (answers[from] >> 32);
+                int to = from + 1;
+                while (to < answers.length && (int) (answers[to] >> 32) == code) {
+                    to++;
+                }
+                int[] next = new int[to - from];
+                for (int i = from; i < to; i++) {
+                    next[i - from] = (int) answers[i];
+                }
+                double after = code == -2
+                        ? value(next, hitLow, hitHigh) - missBound
+                        : value(next, shotLow, shotHigh) - (lowerBound - 1);
+                value += next.length / total * after;
+                if (strict ? value > cutoff : value >= cutoff) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                from = to;
+            }
+            return value;
+        }
+
+        /**
+         * Get the number of configurations on each candidate
+         */
+        static int[] covers(int[] cover, int[] candidates) {
+            int[] covers = new int[candidates.length];
+            for (int i = 0; i < candidates.length; i++) {
+                covers[i] = cover[candidates[i]];
+            }
+            return covers;
+        }
+
+        /**
+         * Get a lower bound of the value of a state after shooting a candidate
+         * @param configurations Configurations before the shot
+         * @param covers Configurations on each candidate, most first
+         * @param candidate Index of the cell shot
+         * @param lowerBound Ship cells left to hit before the shot
+         */
+        static double bound(int configurations, int[] covers, int candidate, int lowerBound) {
+            int covered = covers[candidate], missed = configurations - covered;
+            return 1 + lowerBound - (double) covered / configurations
+                    + (double) missed / configurations * misses(missed, covers, candidate);
+        }
+
+        /**
+         * Get a lower bound of the misses before the next hit, once a candidate missed:
+         * the configurations on the other cells can only have gone down
+         * @param configurations The configurations left after the miss
+         * @param covers Configurations on each candidate before the miss, most first
+         * @param candidate Index of the cell that missed
+         */
+        static double misses(int configurations, int[] covers, int candidate) {
+            double misses = 0;
+            int covered = 0;
+            for (int i = 0; i < covers.length && configurations > 1; i++) {
+                if (i == candidate) {
+                    continue;
+                }
+                covered += covers[i];
+                if (covered >= configurations) {
+                    break;
+                }
+                misses += 1 - (double) covered / configurations;
+            }
+            return misses;
+        }
+
+        private static long sunkCode(int length, int placement) {
+            return (long) length << 16 | placement;
+        }
+
+        /**
+         * Finalizer of SplitMix64: every input bit affects every output bit
+         */
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
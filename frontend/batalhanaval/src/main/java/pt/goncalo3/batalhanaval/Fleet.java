@@ -0,0 +1,38 @@
+package pt.goncalo3.batalhanaval;
+
+import java.util.List;
+
+/**
+ * The board and the ships every player places on it
+ */
+public final class Fleet {
+    public static final int BOARD_SIZE = 10;
+    public static final int CELLS = BOARD_SIZE * BOARD_SIZE;
+
+    /**
+     * A kind of ship
+     * @param name Name used by the placement screen
+     * @param length Number of cells it covers
+     */
+    public record Type(String name, int length) {
+    }
+
+    public static final List<Type> TYPES = List.of(
+            new Type("carrier", 5),
+            new Type("battleship", 4),
+            new Type("cruiser", 3),
+            new Type("submarine", 3),
+            new Type("destroyer", 2)
+    );
+
+    private Fleet() {
+    }
+
+    /**
+     * Get the length of every ship of the fleet
+     * @return The lengths, largest first
+     */
+    public static int[] lengths() {
+        return TYPES.stream().mapToInt(Type::length).toArray();
+    }
+}
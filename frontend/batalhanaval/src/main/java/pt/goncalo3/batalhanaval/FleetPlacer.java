@@ -0,0 +1,299 @@
+package pt.goncalo3.batalhanaval;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Places a whole fleet of {@link Fleet#TYPES} automatically.
+ *
+ * A layout is the placement index of each ship in the {@link TargetBoard} placement
+ * tables, so checking a ship against the others is two ANDs on bitboards.
+ * {@link #randomLayout} draws every layout with the same probability: each ship is
+ * drawn from all of its placements and a collision starts the fleet over (retrying
+ * only the ship that collided would favour cramped layouts). About 4 in 10 fleets fit,
+ * so a layout costs around ten draws; millions per second on one core.
+ *
+ * {@link #adversarial} searches for a layout a targeting model finds late: the score of
+ * a layout is the number of hits the model scores in its first {@link #HORIZON} shots,
+ * averaged over the 8 rotations and mirrors of the layout so that the search does not
+ * overfit one fixed shot order. One worker per core of the common pool runs a local
+ * search (move one ship, keep the move unless it scores worse, start over from a random
+ * layout when stuck) until the time budget is spent, and the best layout found wins.
+ */
+public final class FleetPlacer {
+    /**
+     * Shots of the targeting model counted by the adversarial score
+     */
+    public static final int HORIZON = 40;
+    // Moves without improvement before a search starts over
+    private static final int PATIENCE = 60;
+
+    private static final int[] LENGTHS = Fleet.lengths();
+
+    /**
+     * Outcome of an adversarial search
+     * @param ships The best layout
+     * @param expectedHits Average hits of the model on it over its first {@link #HORIZON} shots
+     * @param evaluations Layouts scored
+     */
+    public record Result(List<Ship> ships, double expectedHits, long evaluations) {
+    }
+
+    private FleetPlacer() {
+    }
+
+    // ---- Uniform random ----
+
+    /**
+     * Draw a layout, all legal layouts equally likely
+     * @param random Random source
+     * @param layout Receives the placement index of each ship of {@link Fleet#TYPES}
+     */
+    public static void randomLayout(SplittableRandom random, int[] layout) {
+        fleet:
+        while (true) {
+            long usedLow = 0, usedHigh = 0;
+            for (int ship = 0; ship < LENGTHS.length; ship++) {
+                long[] low = TargetBoard.placementsLow(LENGTHS[ship]);
+                long[] high = TargetBoard.placementsHigh(LENGTHS[ship]);
+                int p = random.nextInt(low.length);
+                if ((low[p] & usedLow | high[p] & usedHigh) != 0) {
+                    continue fleet;
+                }
+                usedLow |= low[p];
+                usedHigh |= high[p];
+                layout[ship] = p;
+            }
+            return;
+        }
+    }
+
+    /**
+     * Place the fleet at random, all legal layouts equally likely
+     * @param random Random source
+     * @return The ships, in the order of {@link Fleet#TYPES}
+     */
+    public static List<Ship> random(SplittableRandom random) {
+        int[] layout = new int[LENGTHS.length];
+        randomLayout(random, layout);
+        return toShips(layout);
+    }
+
+    /**
+     * Turn a layout into ships, numbered from 1 in the order of {@link Fleet#TYPES}
+     */
+    public static List<Ship> toShips(int[] layout) {
+        List<Ship> ships = new ArrayList<>(layout.length);
+        for (int ship = 0; ship < layout.length; ship++) {
+            ships.add(toShip(ship + 1, LENGTHS[ship], layout[ship]));
+        }
+        return ships;
+    }
+
+    private static Ship toShip(int id, int length, int placement) {
+        int start = TargetBoard.placementStarts(length)[placement];
+        return new Ship(id, start % Fleet.BOARD_SIZE, start / Fleet.BOARD_SIZE, length,
+                placement < TargetBoard.horizontalPlacements(length));
+    }
+
+    // ---- Adversarial ----
+
+    /**
+     * Search for the layout the density model hits least, on every core.
+     * Blocks the calling thread for the budget; call it off the FX thread.
+     * @param seed Seed of the random generators
+     * @param budget Time to spend searching
+     */
+    public static Result adversarial(long seed, Duration budget) {
+        return adversarial(() -> new ShotStrategy.Density(null), seed, budget,
+                ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Search for the layout a targeting model hits least
+     * @param model Creates the model, once per worker
+     * @param seed Seed of the random generators
+     * @param budget Time to spend searching
+     * @param workers Number of searches run in parallel
+     */
+    public static Result adversarial(Supplier<ShotStrategy> model, long seed,
+                                     Duration budget, int workers) {
+        long deadline = System.nanoTime() + budget.toNanos();
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Callable<Search>> tasks = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            SplittableRandom workerRandom = random.split();
+            ShotStrategy workerModel = model.get();
+            tasks.add(() -> new Search(workerModel, workerRandom).run(deadline, Long.MAX_VALUE));
+        }
+        Search best = null;
+        long evaluations = 0;
+        for (Future<Search> result : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            Search search = result.resultNow();
+            evaluations += search.evaluations;
+            if (best == null || search.bestScore < best.bestScore) {
+                best = search;
+            }
+        }
+        return new Result(toShips(best.best), best.bestScore, evaluations);
+    }
+
+    /**
+     * Search on the calling thread for a fixed number of scored layouts instead of a
+     * time budget, so that the same random source always gives the same layout
+     * @param model The targeting model
+     * @param random Random source
+     * @param evaluations Layouts to score
+     * @return The best layout found
+     */
+    static int[] searchLayout(ShotStrategy model, SplittableRandom random, long evaluations) {
+        return new Search(model, random).run(Long.MAX_VALUE, evaluations).best;
+    }
+
+    /**
+     * One worker's local search, with its own model and random source
+     */
+    private static final class Search {
+        final ShotStrategy model;
+        final SplittableRandom random;
+        final int[] best = new int[LENGTHS.length];
+        double bestScore = Double.MAX_VALUE;
+        long evaluations;
+
+        Search(ShotStrategy model, SplittableRandom random) {
+            this.model = model;
+            this.random = random;
+        }
+
+        Search run(long deadline, long maxEvaluations) {
+            int[] current = new int[LENGTHS.length];
+            int[] candidate = new int[LENGTHS.length];
+            // Always finish at least one layout, however short the budget
+            do {
+                randomLayout(random, current);
+                double score = score(current);
+                keep(current, score);
+                for (int stale = 0; stale < PATIENCE && evaluations < maxEvaluations
+                        && System.nanoTime() < deadline; ) {
+                    System.arraycopy(current, 0, candidate, 0, current.length);
+                    move(candidate);
+                    double moved = score(candidate);
+                    if (moved < score) {
+                        stale = 0;
+                    } else {
+                        stale++;
+                    }
+                    if (moved <= score) {
+                        System.arraycopy(candidate, 0, current, 0, current.length);
+                        score = moved;
+                        keep(current, score);
+                    }
+                }
+            } while (evaluations < maxEvaluations && System.nanoTime() < deadline);
+            return this;
+        }
+
+        void keep(int[] layout, double score) {
+            if (score < bestScore) {
+                bestScore = score;
+                System.arraycopy(layout, 0, best, 0, layout.length);
+            }
+        }
+
+        /**
+         * Move one ship to a random placement that does not touch the others
+         */
+        void move(int[] layout) {
+            int ship = random.nextInt(layout.length);
+            long usedLow = 0, usedHigh = 0;
+            for (int other = 0; other < layout.length; other++) {
+                if (other != ship) {
+                    usedLow |= TargetBoard.placementsLow(LENGTHS[other])[layout[other]];
+                    usedHigh |= TargetBoard.placementsHigh(LENGTHS[other])[layout[other]];
+                }
+            }
+            long[] low = TargetBoard.placementsLow(LENGTHS[ship]);
+            long[] high = TargetBoard.placementsHigh(LENGTHS[ship]);
+            int p;
+            do {
+                p = random.nextInt(low.length);
+            } while ((low[p] & usedLow | high[p] & usedHigh) != 0);
+            layout[ship] = p;
+        }
+
+        /**
+         * Average hits of the model over its first shots, over every symmetry of the layout
+         */
+        double score(int[] layout) {
+            evaluations++;
+            int hits = 0;
+            for (int s = 0; s < TargetBoard.SYMMETRIES; s++) {
+                hits += play(layout, TargetBoard.symmetry(s));
+            }
+            return (double) hits / TargetBoard.SYMMETRIES;
+        }
+
+        /**
+         * Let the model shoot at the layout mapped through a symmetry
+         * @return Hits in its first {@link #HORIZON} shots
+         */
+        int play(int[] layout, int[] symmetry) {
+            int[] shipAt = new int[Fleet.CELLS];
+            int[] afloat = new int[layout.length];
+            List<Ship> ships = new ArrayList<>(layout.length);
+            for (int ship = 0; ship < layout.length; ship++) {
+                Ship mapped = mapShip(toShip(ship, LENGTHS[ship], layout[ship]), symmetry);
+                ships.add(mapped);
+                afloat[ship] = mapped.getLength();
+                for (int k = 0; k < mapped.getLength(); k++) {
+                    int x = mapped.getPosX() + (mapped.isHorizontal() ? k : 0);
+                    int y = mapped.getPosY() + (mapped.isHorizontal() ? 0 : k);
+                    shipAt[TargetBoard.cell(x, y)] = ship + 1;
+                }
+            }
+
+            TargetBoard board = TargetBoard.forFleet();
+            int hits = 0;
+            for (int shot = 0; shot < HORIZON; shot++) {
+                int cell = model.nextShot(board, random, Long.MAX_VALUE);
+                int x = cell % Fleet.BOARD_SIZE, y = cell / Fleet.BOARD_SIZE;
+                int ship = shipAt[cell] - 1;
+                if (ship < 0) {
+                    board.miss(x, y);
+                    continue;
+                }
+                hits++;
+                board.hit(x, y);
+                if (--afloat[ship] == 0) {
+                    board.sunk(ships.get(ship));
+                    if (board.remainingShips() == 0) {
+                        break;
+                    }
+                }
+            }
+            return hits;
+        }
+    }
+
+    /**
+     * Map a ship through a symmetry of the board
+     */
+    private static Ship mapShip(Ship ship, int[] symmetry) {
+        int minX = Fleet.BOARD_SIZE, minY = Fleet.BOARD_SIZE, maxY = -1;
+        for (int k = 0; k < ship.getLength(); k++) {
+            int x = ship.getPosX() + (ship.isHorizontal() ? k : 0);
+            int y = ship.getPosY() + (ship.isHorizontal() ? 0 : k);
+            int cell = symmetry[TargetBoard.cell(x, y)];
+            minX = Math.min(minX, cell % Fleet.BOARD_SIZE);
+            minY = Math.min(minY, cell / Fleet.BOARD_SIZE);
+            maxY = Math.max(maxY, cell / Fleet.BOARD_SIZE);
+        }
+        return new Ship(ship.getId(), minX, minY, ship.getLength(), minY == maxY);
+    }
+}
@@ -0,0 +1,388 @@
+package pt.goncalo3.batalhanaval;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Monte Carlo heatmap: draws whole fleets consistent with a {@link TargetBoard} and
+ * counts how often each cell is covered.
+ *
+ * {@link DensityTargeting} looks at each ship on its own, which is fine while the
+ * board is open but gets the late game wrong, when several open hits and the other
+ * ships constrain each other. Here every sample is a full fleet of the ships afloat:
+ * no overlaps, no misses or sunk cells covered, every open hit covered, and no ship
+ * whose cells are all hit (it would have been reported sunk).
+ *
+ * Each ship is proposed from its legal placements, those through open hits weighted
+ * up so that fleets covering the hits are found quickly, and fleets breaking a rule
+ * are rejected. The proposal is corrected by weighting each fleet by the inverse of
+ * its probability, so the estimate converges to the exact one: the probability of
+ * each cell over all consistent fleets, equally likely. Confidence bounds are Wilson
+ * intervals over the effective number of samples.
+ *
+ * Sampling runs on one worker per core of the common pool, each with its own
+ * {@link SplittableRandom} and no shared state, until the time budget is spent.
+ * Samples are kept between calls: after new shots the ones still consistent are
+ * reused, so the heatmap keeps improving over a game instead of starting over.
+ */
+public class FleetSampler {
+    // Samples kept for reuse; past this the estimate is as precise as it gets
+    private static final int MAX_SAMPLES = 1 << 20;
+    // Attempts between two looks at the clock
+    private static final int CHECK_EVERY = 256;
+    private static final double Z = 1.96; // 95% bounds
+    private static final int SLOT_BITS = 8;  // Placement index of each ship in a sample
+
+    /**
+     * Estimated probability of a ship on each cell, 0 for cells already attacked
+     * @param probability The estimate, indexed by y * 10 + x
+     * @param lower Lower bound of the 95% interval
+     * @param upper Upper bound of the 95% interval
+     * @param samples Fleets the estimate is made of
+     * @param reused Of those, the ones kept from previous calls
+     * @param effectiveSamples Equivalent number of unweighted samples
+     */
+    public record Estimate(double[] probability, double[] lower, double[] upper,
+                           long samples, long reused, double effectiveSamples) {
+        /**
+         * Get the widest half interval over the board
+         */
+        public double maxHalfWidth() {
+            double max = 0;
+            for (int cell = 0; cell < probability.length; cell++) {
+                max = Math.max(max, (upper[cell] - lower[cell]) / 2);
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Samples drawn for the same ships afloat
+     */
+    private static final class Batch {
+        final int[] lengths;  // Length of each ship of a sample
+        long[] slots;         // Placement index per ship, SLOT_BITS each
+        double[] weights;
+        int size;
+
+        Batch(int[] lengths, int capacity) {
+            this.lengths = lengths;
+            this.slots = new long[capacity];
+            this.weights = new double[capacity];
+        }
+
+        void add(long slot, double weight) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(16, size * 2));
+                weights = Arrays.copyOf(weights, slots.length);
+            }
+            slots[size] = slot;
+            weights[size] = weight;
+            size++;
+        }
+    }
+
+    /**
+     * Weighted counts; one per worker, merged at the end
+     */
+    private static final class Counts {
+        final double[] covered = new double[Fleet.CELLS];
+        double weights;
+        double squaredWeights;
+        long samples;
+
+        void add(long low, long high, double weight) {
+            while (low != 0) {
+                covered[Long.numberOfTrailingZeros(low)] += weight;
+                low &= low - 1;
+            }
+            while (high != 0) {
+                covered[64 + Long.numberOfTrailingZeros(high)] += weight;
+                high &= high - 1;
+            }
+            weights += weight;
+            squaredWeights += weight * weight;
+            samples++;
+        }
+
+        void add(Counts other) {
+            for (int cell = 0; cell < Fleet.CELLS; cell++) {
+                covered[cell] += other.covered[cell];
+            }
+            weights += other.weights;
+            squaredWeights += other.squaredWeights;
+            samples += other.samples;
+        }
+    }
+
+    /**
+     * Legal placements of each length afloat with their proposal weights
+     */
+    private static final class Proposal {
+        final int[] lengths;
+        final int[][] placements = new int[Fleet.BOARD_SIZE + 1][];
+        final long[][] cumulative = new long[Fleet.BOARD_SIZE + 1][];
+        final long[] totals = new long[Fleet.BOARD_SIZE + 1];
+        final long hitLow, hitHigh;
+
+        Proposal(TargetBoard board, int[] lengths) {
+            this.lengths = lengths;
+            hitLow = board.hitLow();
+            hitHigh = board.hitHigh();
+            long blockedLow = board.blockedLow();
+            long blockedHigh = board.blockedHigh();
+            for (int length : lengths) {
+                if (placements[length] != null) {
+                    continue;
+                }
+                long[] low = TargetBoard.placementsLow(length);
+                long[] high = TargetBoard.placementsHigh(length);
+                int[] legal = new int[low.length];
+                long[] sums = new long[low.length];
+                int count = 0;
+                long total = 0;
+                for (int p = 0; p < low.length; p++) {
+                    if ((low[p] & blockedLow | high[p] & blockedHigh) != 0 || allHit(low[p], high[p])) {
+                        continue;
+                    }
+                    int covered = Long.bitCount(low[p] & hitLow) + Long.bitCount(high[p] & hitHigh);
+                    total += 1L << DensityTargeting.HIT_WEIGHT_SHIFT * covered;
+                    legal[count] = p;
+                    sums[count] = total;
+                    count++;
+                }
+                placements[length] = Arrays.copyOf(legal, count);
+                cumulative[length] = Arrays.copyOf(sums, count);
+                totals[length] = total;
+            }
+        }
+
+        boolean isPossible() {
+            for (int length : lengths) {
+                if (totals[length] == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean allHit(long low, long high) {
+            return (low & ~hitLow | high & ~hitHigh) == 0;
+        }
+    }
+
+    private final List<Batch> batches = new ArrayList<>();
+    private final SplittableRandom random;
+    private final int workers;
+
+    /**
+     * Create a sampler for one game
+     * @param seed Seed of the random generators
+     */
+    public FleetSampler(long seed) {
+        this(seed, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Create a sampler for one game
+     * @param seed Seed of the random generators
+     * @param workers Number of workers sampling in parallel
+     */
+    public FleetSampler(long seed, int workers) {
+        this.random = new SplittableRandom(seed);
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Estimate the heatmap of a board, reusing the samples still consistent with it.
+     * Blocks the calling thread for up to the budget; call it off the FX thread.
+     * @param board The board; it is only read
+     * @param budget Time to spend sampling
+     * @return The estimate; without samples if no fleet fits the board
+     */
+    public synchronized Estimate sample(TargetBoard board, Duration budget) {
+        long deadline = System.nanoTime() + budget.toNanos();
+        int[] lengths = lengthsAfloat(board);
+        Counts counts = new Counts();
+
+        // Keep the samples that are still consistent, counting them as they are
+        long kept = 0;
+        for (Batch batch : batches) {
+            kept += filter(batch, board, counts);
+        }
+        batches.removeIf(batch -> batch.size == 0);
+        long reused = kept;
+
+        Proposal proposal = new Proposal(board, lengths);
+        int room = (int) Math.max(0, MAX_SAMPLES - kept);
+        if (lengths.length > 0 && proposal.isPossible() && room > 0) {
+            List<Callable<Batch>> tasks = new ArrayList<>(workers);
+            List<Counts> workerCounts = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                Counts own = new Counts();
+                workerCounts.add(own);
+                SplittableRandom workerRandom = random.split();
+                int limit = room / workers;
+                tasks.add(() -> draw(proposal, workerRandom, own, limit, deadline));
+            }
+            for (Future<Batch> result : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                Batch batch = result.resultNow();
+                if (batch.size > 0) {
+                    batches.add(batch);
+                }
+            }
+            for (Counts own : workerCounts) {
+                counts.add(own);
+            }
+        }
+        return estimate(counts, board, reused);
+    }
+
+    /**
+     * Forget every sample, e.g. when a new game starts
+     */
+    public synchronized void clear() {
+        batches.clear();
+    }
+
+    // ---- Sampling ----
+
+    /**
+     * Draw fleets until the deadline or the limit, counting the accepted ones
+     */
+    private static Batch draw(Proposal proposal, SplittableRandom random, Counts counts, int limit, long deadline) {
+        int[] lengths = proposal.lengths;
+        Batch batch = new Batch(lengths, 1024);
+        for (long attempt = 0; batch.size < limit; attempt++) {
+            if ((attempt & (CHECK_EVERY - 1)) == 0 && System.nanoTime() >= deadline) {
+                break;
+            }
+            long occupiedLow = 0, occupiedHigh = 0, slots = 0;
+            double weight = 1;
+            boolean overlaps = false;
+            for (int s = 0; s < lengths.length && !overlaps; s++) {
+                int length = lengths[s];
+                long[] cumulative = proposal.cumulative[length];
+                long total = proposal.totals[length];
+                int i = firstAbove(cumulative, random.nextLong(total));
+                int p = proposal.placements[length][i];
+                long low = TargetBoard.placementsLow(length)[p];
+                long high = TargetBoard.placementsHigh(length)[p];
+                overlaps = (low & occupiedLow | high & occupiedHigh) != 0;
+                occupiedLow |= low;
+                occupiedHigh |= high;
+                slots |= (long) p << s * SLOT_BITS;
+                // Inverse of the probability of proposing this placement
+                weight *= (double) total / (cumulative[i] - (i == 0 ? 0 : cumulative[i - 1]));
+            }
+            if (overlaps || (proposal.hitLow & ~occupiedLow | proposal.hitHigh & ~occupiedHigh) != 0) {
+                continue;
+            }
+            batch.add(slots, weight);
+            counts.add(occupiedLow, occupiedHigh, weight);
+        }
+        return batch;
+    }
+
+    /**
+     * Drop the samples of a batch that the board rules out, counting the rest.
+     * A ship of a sample may have been sunk since: it must then be exactly where the
+     * sunk ship is, and only the ships still afloat are counted.
+     * @return The number of samples kept
+     */
+    private static int filter(Batch batch, TargetBoard board, Counts counts) {
+        int[] lengths = batch.lengths;
+        long blockedLow = board.blockedLow();
+        long blockedHigh = board.blockedHigh();
+        long hitLow = board.hitLow();
+        long hitHigh = board.hitHigh();
+        int[] afloat = new int[Fleet.BOARD_SIZE + 1];
+        int kept = 0;
+        for (int i = 0; i < batch.size; i++) {
+            long slots = batch.slots[i];
+            long occupiedLow = 0, occupiedHigh = 0;
+            boolean consistent = true;
+            Arrays.fill(afloat, 0);
+            for (int s = 0; s < lengths.length && consistent; s++) {
+                int length = lengths[s];
+                int p = (int) (slots >>> s * SLOT_BITS & (1 << SLOT_BITS) - 1);
+                long low = TargetBoard.placementsLow(length)[p];
+                long high = TargetBoard.placementsHigh(length)[p];
+                if ((low & blockedLow | high & blockedHigh) != 0) {
+                    consistent = board.isSunkShip(length, low, high);
+                    continue;
+                }
+                consistent = (low & ~hitLow | high & ~hitHigh) != 0;
+                afloat[length]++;
+                occupiedLow |= low;
+                occupiedHigh |= high;
+            }
+            for (int length = 1; length <= Fleet.BOARD_SIZE && consistent; length++) {
+                consistent = afloat[length] == board.remaining(length);
+            }
+            if (!consistent || (hitLow & ~occupiedLow | hitHigh & ~occupiedHigh) != 0) {
+                continue;
+            }
+            batch.slots[kept] = slots;
+            batch.weights[kept] = batch.weights[i];
+            kept++;
+            counts.add(occupiedLow, occupiedHigh, batch.weights[i]);
+        }
+        batch.size = kept;
+        return kept;
+    }
+
+    private static Estimate estimate(Counts counts, TargetBoard board, long reused) {
+        double[] probability = new double[Fleet.CELLS];
+        double[] lower = new double[Fleet.CELLS];
+        double[] upper = new double[Fleet.CELLS];
+        double n = counts.squaredWeights == 0 ? 0 : counts.weights * counts.weights / counts.squaredWeights;
+        for (int cell = 0; cell < Fleet.CELLS; cell++) {
+            if (board.isShot(cell) || n == 0) {
+                continue;
+            }
+            double p = counts.covered[cell] / counts.weights;
+            // Wilson score interval
+            double z2 = Z * Z / n;
+            double center = (p + z2 / 2) / (1 + z2);
+            double half = Z * Math.sqrt(p * (1 - p) / n + z2 / (4 * n)) / (1 + z2);
+            probability[cell] = p;
+            lower[cell] = Math.max(0, center - half);
+            upper[cell] = Math.min(1, center + half);
+        }
+        return new Estimate(probability, lower, upper, counts.samples, reused, n);
+    }
+
+    private static int[] lengthsAfloat(TargetBoard board) {
+        int[] lengths = new int[board.remainingShips()];
+        int i = 0;
+        for (int length = Fleet.BOARD_SIZE; length >= 1; length--) {
+            for (int k = 0; k < board.remaining(length); k++) {
+                lengths[i++] = length;
+            }
+        }
+        return lengths;
+    }
+
+    /**
+     * Find the first index whose cumulative weight is above a value
+     */
+    private static int firstAbove(long[] cumulative, long value) {
+        int low = 0, high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] > value) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
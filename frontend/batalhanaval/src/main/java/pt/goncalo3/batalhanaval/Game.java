@@ -4,17 +4,16 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import javafx.application.Platform;
 
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionStage;
 
 public class Game {
     private static Game instance;
-    private WebSocket webSocket;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Transport transport;
+    private final ObjectMapper objectMapper = Json.MAPPER;
     private final User user;
 
     // array of ships
@@ -22,6 +21,16 @@ public class Game {
 
     private boolean yourTurn;
 
+    // Saves the match to the local history when it ends
+    private final GameRecorder recorder = new GameRecorder();
+
+    // What the player knows of the opponent's board, for the hints
+    private TargetBoard targetBoard = TargetBoard.forFleet();
+
+    // Time-to-queue measurement, see reportTimeToQueue()
+    private long connectStartedAt;
+    private boolean prewarmed;
+
     // Getter for yourTurn
     public boolean isYourTurn() {
         return yourTurn;
@@ -34,6 +43,14 @@ public class Game {
     public void setShips(List<Ship> ships) {
         this.ships = ships;
     }
+    // Getter for the opponent's board as known so far (FX thread only)
+    public TargetBoard getTargetBoard() {
+        return targetBoard;
+    }
+    // Getter for the match once it ended, or null before (FX thread only)
+    public GameRecord getRecord() {
+        return recorder.record();
+    }
     
     // Listeners for UI updates
     private GameStateListener gameStateListener;
@@ -51,6 +68,14 @@ public class Game {
         this.connect();
 
     }
+
+    /**
+     * A game against the computer: no server, so no login needed
+     */
+    private Game(ShotStrategy.Level level, Duration budget) {
+        user = User.getInstance();
+        transport = new OfflineOpponent(level, budget, new ConnectionHandler());
+    }
     
     public static Game createInstance() {
         if (instance == null) {
@@ -61,6 +86,29 @@ public class Game {
         return instance;
     }
 
+    /**
+     * Create a game against a computer opponent, with the default compute budget per move
+     * @param level How the computer picks its shots
+     * @return The game, ready to join the queue
+     */
+    public static Game createOfflineInstance(ShotStrategy.Level level) {
+        return createOfflineInstance(level, OfflineOpponent.DEFAULT_BUDGET);
+    }
+
+    /**
+     * Create a game against a computer opponent
+     * @param level How the computer picks its shots
+     * @param budget Compute time allowed per move of the computer
+     * @return The game, ready to join the queue
+     */
+    public static Game createOfflineInstance(ShotStrategy.Level level, Duration budget) {
+        if (instance != null) {
+            throw new IllegalStateException("Game instance already exists!");
+        }
+        instance = new Game(level, budget);
+        return instance;
+    }
+
     public static Game getInstance() {
         if (instance == null) {
             throw new IllegalStateException("No game instance available.");
@@ -85,25 +133,52 @@ public class Game {
         void onOpponentAttackResult(int x, int y, String result);
         void onShipDestroyed(Ship ship, boolean onPlayerGrid); // New
     }
+
+    /**
+     * Where the messages of the game go: the game server, or a local opponent
+     */
+    public interface Transport {
+        boolean isOpen();
+        void send(String message);
+        void close(String reason);
+    }
+
+    /**
+     * The adopted connection to the game server
+     */
+    private record WebSocketTransport(WebSocket webSocket) implements Transport {
+        @Override
+        public boolean isOpen() {
+            return !webSocket.isInputClosed() && !webSocket.isOutputClosed();
+        }
+
+        @Override
+        public void send(String message) {
+            webSocket.sendText(message, true);
+        }
+
+        @Override
+        public void close(String reason) {
+            GameConnection.getInstance().close(reason);
+        }
+    }
     
     public void setGameStateListener(GameStateListener listener) {
         this.gameStateListener = listener;
     }
     
     /**
-     * Connect to the WebSocket server with authentication
+     * Connect to the WebSocket server with authentication.
+     * Adopts the connection pre-warmed on the home screen when there is one.
      */
     public CompletableFuture<Void> connect() {
+        GameConnection connection = GameConnection.getInstance();
+        connectStartedAt = System.nanoTime();
+        prewarmed = connection.isOpen();
 
-        String token = User.getInstance().getToken();
-        
-        String wsUrl = ServerConfig.WEBSOCKET_URL + "?token=" + token; // Use ServerConfig
-        
-        return HttpClient.newHttpClient()
-                .newWebSocketBuilder()
-                .buildAsync(URI.create(wsUrl), new WebSocketListener())
+        return connection.acquire(new ConnectionHandler())
                 .thenAccept(ws -> {
-                    this.webSocket = ws;
+                    this.transport = new WebSocketTransport(ws);
                     Platform.runLater(() -> {
                         if (gameStateListener != null) {
                             gameStateListener.onConnected();
@@ -127,10 +202,10 @@ public class Game {
     public void disconnect() {
         System.out.println("=== DISCONNECTING WEBSOCKET ===");
         
-        if (webSocket != null) {
+        if (transport != null) {
             System.out.println("Sending close message to server...");
-            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "Client disconnecting");
-            webSocket = null;
+            transport.close("Client disconnecting");
+            transport = null;
         }
         
         instance = null; // Reset the instance
@@ -150,6 +225,7 @@ public class Game {
             message.put("type", "join_queue");
             String messageStr = objectMapper.writeValueAsString(message);
             sendMessage(messageStr);
+            reportTimeToQueue();
         } catch (Exception e) {
             Platform.runLater(() -> {
                 if (gameStateListener != null) {
@@ -159,6 +235,18 @@ public class Game {
         }
     }
     
+    /**
+     * Log the time from pressing Play (the game is created by that click) to join_queue being sent
+     */
+    private void reportTimeToQueue() {
+        if (connectStartedAt == 0) {
+            return;
+        }
+        double elapsedMs = (System.nanoTime() - connectStartedAt) / 1_000_000.0;
+        connectStartedAt = 0;
+        System.out.printf("Time to queue: %.1f ms (%s)%n", elapsedMs, prewarmed ? "pre-warmed" : "cold");
+    }
+
     /**
      * Leave the matchmaking queue
      */
@@ -188,6 +276,7 @@ public class Game {
         try {
 
             this.ships = ships;
+            recorder.placed(ships);
             // Convert ships to JSON format expected by server
             var shipsData = objectMapper.createObjectNode();
             shipsData.put("type", "ships_data");
@@ -245,7 +334,7 @@ public class Game {
      * Check if the WebSocket connection is still valid
      */
     public boolean isConnectionValid() {
-        return webSocket != null && !webSocket.isInputClosed() && !webSocket.isOutputClosed();
+        return transport != null && transport.isOpen();
     }
     
     
@@ -271,56 +360,29 @@ public class Game {
         System.out.println("=== WEBSOCKET MESSAGE SENDING ===");
         System.out.println("Outgoing message: " + message);
         System.out.println("=================================");
-        webSocket.sendText(message, true);
+        transport.send(message);
     }
     
     /**
-     * WebSocket listener implementation
+     * Receives the traffic of the adopted connection
      */
-    private class WebSocketListener implements WebSocket.Listener {
-        
-        @Override
-        public void onOpen(WebSocket webSocket) {
-            System.out.println("=== WEBSOCKET CONNECTED ===");
-            System.out.println("Connection opened to: " + webSocket.getSubprotocol());
-            System.out.println("============================");
-            
-            // Request to start receiving messages
-            webSocket.request(1);
-        }
-        
+    private class ConnectionHandler implements GameConnection.MessageHandler {
+
         @Override
-        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
-            System.out.println("=== WEBSOCKET MESSAGE RECEIVED ===");
-            System.out.println("Raw message: " + data.toString());
-            System.out.println("Message is last fragment: " + last);
-            System.out.println("================================");
-            Platform.runLater(() -> handleMessage(data.toString()));
-            
-            // Request the next message - this is crucial!
-            webSocket.request(1);
-            return null;
+        public void onMessage(String message) {
+            Platform.runLater(() -> handleMessage(message));
         }
-        
+
         @Override
-        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
-            System.out.println("=== WEBSOCKET DISCONNECTED ===");
-            System.out.println("Status code: " + statusCode);
-            System.out.println("Reason: " + reason);
-            System.out.println("===============================");
+        public void onClosed(int statusCode, String reason) {
             Platform.runLater(() -> {
             instance = null; // Reset the instance
             
             });
-            return null;
         }
-        
+
         @Override
-        public void onError(WebSocket webSocket, Throwable error) {
-            System.out.println("=== WEBSOCKET ERROR ===");
-            System.out.println("Error: " + error.getMessage());
-            error.printStackTrace();
-            System.out.println("========================");
+        public void onError(Throwable error) {
             Platform.runLater(() -> {
                 instance = null; // Reset the instance
                 if (gameStateListener != null) {
@@ -330,6 +392,22 @@ public class Game {
         }
     }
     
+    /**
+     * Read a list of ships sent by the server
+     * @return The ships, or null if the node is missing
+     */
+    private static List<Ship> readShips(JsonNode shipsNode) {
+        if (shipsNode == null || !shipsNode.isArray()) {
+            return null;
+        }
+        List<Ship> result = new ArrayList<>();
+        for (JsonNode shipNode : shipsNode) {
+            result.add(new Ship(result.size(), shipNode.get("posX").asInt(), shipNode.get("posY").asInt(),
+                    shipNode.get("length").asInt(), shipNode.get("isHorizontal").asBoolean()));
+        }
+        return result;
+    }
+
     /**
      * Handle incoming WebSocket messages
      */
@@ -374,6 +452,8 @@ public class Game {
                     break;
                     
                 case "start_game":
+                    recorder.started(jsonNode.hasNonNull("opponent") ? jsonNode.get("opponent").asText() : null);
+                    targetBoard = TargetBoard.forFleet();
                     if (gameStateListener != null) {
                         gameStateListener.onGameStarted();
                     }
@@ -403,6 +483,12 @@ public class Game {
                     int attackX = jsonNode.get("x").asInt();
                     int attackY = jsonNode.get("y").asInt();
                     String attackResult = jsonNode.get("result").asText();
+                    recorder.attack(true, attackX, attackY, "hit".equals(attackResult));
+                    if ("hit".equals(attackResult)) {
+                        targetBoard.hit(attackX, attackY);
+                    } else {
+                        targetBoard.miss(attackX, attackY);
+                    }
                     if (gameStateListener != null) {
                         gameStateListener.onPlayerAttackResult(attackX, attackY, attackResult);
                     }
@@ -412,6 +498,7 @@ public class Game {
                     int opponentAttackX = jsonNode.get("x").asInt();
                     int opponentAttackY = jsonNode.get("y").asInt();
                     String opponentAttackResult = jsonNode.get("result").asText();
+                    recorder.attack(false, opponentAttackX, opponentAttackY, "hit".equals(opponentAttackResult));
                     if (gameStateListener != null) {
                         gameStateListener.onOpponentAttackResult(opponentAttackX, opponentAttackY, opponentAttackResult);
                     }
@@ -428,6 +515,8 @@ public class Game {
 
     
                     Ship destroyedShip = new Ship(id, posX, posY, length, isHorizontal);
+                    recorder.sunk(destroyedShip);
+                    targetBoard.sunk(destroyedShip);
 
                     if (gameStateListener != null) {
                         gameStateListener.onShipDestroyed(destroyedShip, false);
@@ -435,6 +524,7 @@ public class Game {
                     break;
                     
                 case "you_win":
+                    recorder.finished(GameRecord.Outcome.WIN, null);
                     if (gameStateListener != null) {
                         gameStateListener.onGameEnded(true);
                     }
@@ -442,12 +532,15 @@ public class Game {
                     break;
                     
                 case "you_lose":
+                    // The server reveals the winner's fleet to the loser
+                    recorder.finished(GameRecord.Outcome.LOSS, readShips(jsonNode.get("opponentShips")));
                     if (gameStateListener != null) {
                         gameStateListener.onGameEnded(false);
                     }
                     disconnect();
                     break;
                 case "opponent_disconnected":
+                    recorder.finished(GameRecord.Outcome.ABANDONED, null);
                     disconnect();
                     if (gameStateListener != null) {
                         gameStateListener.onDisconnected();
@@ -0,0 +1,374 @@
+package pt.goncalo3.batalhanaval;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fixed-layout archive of the game history for analytics over very many games.
+ *
+ * The {@link GameHistoryStore} is made to append and look up single games; scanning it
+ * means decoding every record onto the heap. The archive holds the same games in
+ * fixed-size records read straight from files mapped as {@link MemorySegment}s:
+ * <ul>
+ *   <li>archive.games: a header, then one {@link #GAME} record per game, with both
+ *       fleets as bitboards (bit y * 10 + x set for every cell a ship covers);</li>
+ *   <li>archive.moves: every move as one {@link #MOVE} short, the moves of each game
+ *       in a run that the game record points to.</li>
+ * </ul>
+ * A scan maps the files in a confined arena, walks the records and unmaps them when it
+ * is done; the loop itself reads primitives from the segments and allocates nothing,
+ * so it costs no GC however large the archive is. Games are added by {@link #sync},
+ * which copies the games the history has and the archive does not yet (the history
+ * calls it after saving each game), or by {@link #addAll}.
+ */
+public class GameArchive {
+    private static final String GAMES_FILE = "archive.games";
+    private static final String MOVES_FILE = "archive.moves";
+    private static final int MAGIC = 0x47415243; // "GARC"
+    private static final int VERSION = 1;
+    private static final int BOARD_SIZE = 10;
+    private static final int CELLS = BOARD_SIZE * BOARD_SIZE;
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Header of archive.games; the counts are written after the data they cover
+     */
+    static final StructLayout HEADER = MemoryLayout.structLayout(
+            INT.withName("magic"),
+            INT.withName("version"),
+            LONG.withName("games"),
+            LONG.withName("moves"),
+            LONG.withName("historyGames")  // Games of the history copied so far
+    );
+
+    /**
+     * One game: 48 bytes
+     */
+    static final StructLayout GAME = MemoryLayout.structLayout(
+            LONG.withName("startedAt"),
+            LONG.withName("fleetLow"),           // Cells 0-63
+            LONG.withName("fleetHigh"),          // Cells 64-99
+            LONG.withName("opponentFleetLow"),
+            LONG.withName("opponentFleetHigh"),
+            INT.withName("firstMove"),           // Index of the game's first move in archive.moves
+            SHORT.withName("moveCount"),
+            ValueLayout.JAVA_BYTE.withName("outcome"),
+            ValueLayout.JAVA_BYTE.withName("firstShot")  // Cell of the player's first attack, or -1
+    );
+
+    /**
+     * One move: [6..0] cell, [7] by the player, [9..8] result
+     */
+    static final ValueLayout.OfShort MOVE = SHORT;
+
+    private static final long HEADER_SIZE = HEADER.byteSize();
+    private static final long GAME_SIZE = GAME.byteSize();
+    private static final long MAGIC_AT = offset(HEADER, "magic");
+    private static final long VERSION_AT = offset(HEADER, "version");
+    private static final long GAMES_AT = offset(HEADER, "games");
+    private static final long MOVES_AT = offset(HEADER, "moves");
+    private static final long HISTORY_GAMES_AT = offset(HEADER, "historyGames");
+    private static final long STARTED_AT = offset(GAME, "startedAt");
+    private static final long FLEET_LOW = offset(GAME, "fleetLow");
+    private static final long FLEET_HIGH = offset(GAME, "fleetHigh");
+    private static final long OPPONENT_FLEET_LOW = offset(GAME, "opponentFleetLow");
+    private static final long OPPONENT_FLEET_HIGH = offset(GAME, "opponentFleetHigh");
+    private static final long FIRST_MOVE = offset(GAME, "firstMove");
+    private static final long MOVE_COUNT = offset(GAME, "moveCount");
+    private static final long OUTCOME = offset(GAME, "outcome");
+    private static final long FIRST_SHOT = offset(GAME, "firstShot");
+
+    private static final int PLAYER_BIT = 1 << 7;
+    private static final int RESULT_SHIFT = 8;
+
+    /**
+     * Games and wins counted per cell of the board
+     * @param games Games per cell, indexed by y * 10 + x
+     * @param wins Games won per cell
+     */
+    public record CellStats(long[] games, long[] wins) {
+        public double winRate(int cell) {
+            return games[cell] == 0 ? Double.NaN : (double) wins[cell] / games[cell];
+        }
+    }
+
+    /**
+     * Shots and hits counted per turn of the player (0 = first attack)
+     * @param shots Shots per turn
+     * @param hits Hits per turn
+     */
+    public record TurnStats(long[] shots, long[] hits) {
+        public double hitRate(int turn) {
+            return shots[turn] == 0 ? Double.NaN : (double) hits[turn] / shots[turn];
+        }
+    }
+
+    private static GameArchive instance;
+
+    private GameArchive() {
+    }
+
+    // Get singleton instance
+    public static synchronized GameArchive getInstance() {
+        if (instance == null) {
+            instance = new GameArchive();
+        }
+        return instance;
+    }
+
+    private static long offset(StructLayout layout, String name) {
+        return layout.byteOffset(PathElement.groupElement(name));
+    }
+
+    /**
+     * Copy the games of the history that are not in the archive yet
+     * @param history The history to copy from
+     * @return The number of games copied
+     * @throws IOException If either store cannot be read or written
+     */
+    public synchronized int sync(GameHistoryStore history) throws IOException {
+        int total = history.size();
+        return (int) append((from, id) -> history.read((int) (from + id)), total, true);
+    }
+
+    /**
+     * Add games that are not part of the history, e.g. generated ones
+     * @param records The games to add
+     * @throws IOException If the archive cannot be written
+     */
+    public synchronized void addAll(List<GameRecord> records) throws IOException {
+        append((from, id) -> records.get((int) id), records.size(), false);
+    }
+
+    private interface Source {
+        GameRecord read(long historyGames, long index) throws IOException;
+    }
+
+    /**
+     * Append games to both files, then update the header
+     * @param source Gets the games to append
+     * @param count With fromHistory, the size of the history; otherwise the number of games
+     * @param fromHistory Whether the games come from the history (and only the new ones are copied)
+     * @return The number of games appended
+     */
+    private static long append(Source source, long count, boolean fromHistory) throws IOException {
+        try (Arena arena = Arena.ofConfined();
+             FileChannel games = open(GAMES_FILE);
+             FileChannel moves = open(MOVES_FILE)) {
+            MemorySegment header = readHeader(games, arena);
+            long gameCount = header.get(LONG, GAMES_AT);
+            long moveCount = header.get(LONG, MOVES_AT);
+            long historyGames = header.get(LONG, HISTORY_GAMES_AT);
+            long from = fromHistory ? historyGames : 0;
+            long added = count - from;
+            if (added <= 0) {
+                return 0;
+            }
+
+            MemorySegment game = arena.allocate(GAME);
+            // Room for every cell attacked once by each player
+            MemorySegment gameMoves = arena.allocate(MOVE.byteSize() * 2 * CELLS, MOVE.byteAlignment());
+            for (long i = 0; i < added; i++) {
+                GameRecord record = source.read(from, i);
+                int[] packed = GameRecord.packMoves(record.moves());
+                if (packed.length > 2 * CELLS) {
+                    packed = Arrays.copyOf(packed, 2 * CELLS);
+                }
+                fill(game, record, packed, moveCount);
+                write(games, game, HEADER_SIZE + gameCount * GAME_SIZE);
+                for (int m = 0; m < packed.length; m++) {
+                    gameMoves.setAtIndex(MOVE, m, packMove(packed[m]));
+                }
+                write(moves, gameMoves.asSlice(0, packed.length * MOVE.byteSize()), moveCount * MOVE.byteSize());
+                gameCount++;
+                moveCount += packed.length;
+            }
+            // The data is on disk before the header counts it
+            games.force(false);
+            moves.force(false);
+            header.set(LONG, GAMES_AT, gameCount);
+            header.set(LONG, MOVES_AT, moveCount);
+            if (fromHistory) {
+                header.set(LONG, HISTORY_GAMES_AT, count);
+            }
+            write(games, header, 0);
+            games.force(false);
+            return added;
+        }
+    }
+
+    /**
+     * Get the number of games in the archive
+     * @return The number of games
+     * @throws IOException If the archive cannot be read
+     */
+    public synchronized long size() throws IOException {
+        try (Arena arena = Arena.ofConfined(); FileChannel games = open(GAMES_FILE)) {
+            return readHeader(games, arena).get(LONG, GAMES_AT);
+        }
+    }
+
+    /**
+     * Count wins by the cell of the player's first attack, over every won or lost game
+     * @return The games and wins per cell
+     * @throws IOException If the archive cannot be read
+     */
+    public synchronized CellStats winRateByFirstShot() throws IOException {
+        long[] games = new long[CELLS];
+        long[] wins = new long[CELLS];
+        try (Arena arena = Arena.ofConfined(); FileChannel channel = open(GAMES_FILE)) {
+            long count = readHeader(channel, arena).get(LONG, GAMES_AT);
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + count * GAME_SIZE, arena);
+            for (long at = HEADER_SIZE, end = segment.byteSize(); at < end; at += GAME_SIZE) {
+                int cell = segment.get(ValueLayout.JAVA_BYTE, at + FIRST_SHOT);
+                byte outcome = segment.get(ValueLayout.JAVA_BYTE, at + OUTCOME);
+                if (cell < 0 || outcome == GameRecord.Outcome.ABANDONED.ordinal()) {
+                    continue;
+                }
+                games[cell]++;
+                if (outcome == GameRecord.Outcome.WIN.ordinal()) {
+                    wins[cell]++;
+                }
+            }
+        }
+        return new CellStats(games, wins);
+    }
+
+    /**
+     * Count the player's hits by turn over every game
+     * @return The shots and hits per turn
+     * @throws IOException If the archive cannot be read
+     */
+    public synchronized TurnStats hitRateByTurn() throws IOException {
+        long[] shots = new long[CELLS];
+        long[] hits = new long[CELLS];
+        try (Arena arena = Arena.ofConfined();
+             FileChannel gamesChannel = open(GAMES_FILE);
+             FileChannel movesChannel = open(MOVES_FILE)) {
+            MemorySegment header = readHeader(gamesChannel, arena);
+            long gameCount = header.get(LONG, GAMES_AT);
+            long moveCount = header.get(LONG, MOVES_AT);
+            MemorySegment games = gamesChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + gameCount * GAME_SIZE, arena);
+            MemorySegment moves = movesChannel.map(FileChannel.MapMode.READ_ONLY, 0, moveCount * MOVE.byteSize(), arena);
+            for (long at = HEADER_SIZE, end = games.byteSize(); at < end; at += GAME_SIZE) {
+                long first = games.get(INT, at + FIRST_MOVE);
+                int count = games.get(SHORT, at + MOVE_COUNT);
+                int turn = 0;
+                for (long i = first; i < first + count && turn < CELLS; i++) {
+                    short move = moves.getAtIndex(MOVE, i);
+                    if ((move & PLAYER_BIT) == 0) {
+                        continue;
+                    }
+                    shots[turn]++;
+                    if ((move >>> RESULT_SHIFT & 0x3) != GameRecord.Result.MISS.ordinal()) {
+                        hits[turn]++;
+                    }
+                    turn++;
+                }
+            }
+        }
+        return new TurnStats(shots, hits);
+    }
+
+    // ---- Records ----
+
+    private static void fill(MemorySegment game, GameRecord record, int[] packedMoves, long firstMove) {
+        long fleetLow = 0, fleetHigh = 0, opponentLow = 0, opponentHigh = 0;
+        for (Ship ship : record.fleet()) {
+            long[] board = bitboard(ship);
+            fleetLow |= board[0];
+            fleetHigh |= board[1];
+        }
+        for (Ship ship : record.opponentFleet()) {
+            long[] board = bitboard(ship);
+            opponentLow |= board[0];
+            opponentHigh |= board[1];
+        }
+        int firstShot = -1;
+        for (int move : packedMoves) {
+            if (GameRecord.isPlayerMove(move)) {
+                firstShot = GameRecord.moveY(move) * BOARD_SIZE + GameRecord.moveX(move);
+                break;
+            }
+        }
+        game.set(LONG, STARTED_AT, record.startedAt());
+        game.set(LONG, FLEET_LOW, fleetLow);
+        game.set(LONG, FLEET_HIGH, fleetHigh);
+        game.set(LONG, OPPONENT_FLEET_LOW, opponentLow);
+        game.set(LONG, OPPONENT_FLEET_HIGH, opponentHigh);
+        game.set(INT, FIRST_MOVE, (int) firstMove);
+        game.set(SHORT, MOVE_COUNT, (short) packedMoves.length);
+        game.set(ValueLayout.JAVA_BYTE, OUTCOME, (byte) record.outcome().ordinal());
+        game.set(ValueLayout.JAVA_BYTE, FIRST_SHOT, (byte) firstShot);
+    }
+
+    /**
+     * Get the cells a ship covers as a 100-bit board: {low 64 bits, high 36 bits}
+     */
+    private static long[] bitboard(Ship ship) {
+        long[] board = new long[2];
+        for (int i = 0; i < ship.getLength(); i++) {
+            int x = ship.getPosX() + (ship.isHorizontal() ? i : 0);
+            int y = ship.getPosY() + (ship.isHorizontal() ? 0 : i);
+            if (x < BOARD_SIZE && y < BOARD_SIZE) {
+                int cell = y * BOARD_SIZE + x;
+                board[cell >>> 6] |= 1L << (cell & 63);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Convert a move packed by {@link GameRecord#packMoves} to the archive's 16-bit layout
+     */
+    private static short packMove(int packed) {
+        int cell = GameRecord.moveY(packed) * BOARD_SIZE + GameRecord.moveX(packed);
+        int result = (packed >>> 29) & 0x3;
+        return (short) (cell | (GameRecord.isPlayerMove(packed) ? PLAYER_BIT : 0) | result << RESULT_SHIFT);
+    }
+
+    // ---- Files ----
+
+    private static FileChannel open(String name) throws IOException {
+        return FileChannel.open(AppData.file(name),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Read the header, writing an empty one if the archive is new
+     */
+    private static MemorySegment readHeader(FileChannel channel, Arena arena) throws IOException {
+        MemorySegment header = arena.allocate(HEADER);
+        if (channel.size() < HEADER_SIZE) {
+            header.set(INT, MAGIC_AT, MAGIC);
+            header.set(INT, VERSION_AT, VERSION);
+            write(channel, header, 0);
+            return header;
+        }
+        channel.read(header.asByteBuffer(), 0);
+        if (header.get(INT, MAGIC_AT) != MAGIC || header.get(INT, VERSION_AT) != VERSION) {
+            throw new IOException("not a game archive");
+        }
+        return header;
+    }
+
+    private static void write(FileChannel channel, MemorySegment data, long position) throws IOException {
+        var buffer = data.asByteBuffer();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package pt.goncalo3.batalhanaval;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.net.URI;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owner of the authenticated WebSocket to the game server.
+ *
+ * While a logged-in user is on the home screen the socket is opened in the background
+ * ({@link #prewarm()}), so DNS, TCP and the WebSocket upgrade are already done when the
+ * user presses Play. A {@link Game} then adopts the open socket with {@link #acquire}
+ * instead of connecting itself. An idle warm socket is kept alive with periodic pings.
+ * The server accepts only one socket per user, so there is never more than one.
+ */
+public class GameConnection {
+    private static final Duration PING_INTERVAL = Duration.ofSeconds(20);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+    // Set to false to disable pre-warming, e.g. to compare time-to-queue with a cold start
+    private static final String PREWARM_PROPERTY = "batalhanaval.prewarm";
+
+    /**
+     * Receiver of server events that are not tied to a game (e.g. leaderboard updates).
+     * Called on a WebSocket thread, whether or not a game adopted the socket.
+     */
+    public interface EventListener {
+        void onEvent(String type, JsonNode message);
+    }
+
+    /**
+     * Receiver of the traffic of an adopted socket
+     */
+    public interface MessageHandler {
+        void onMessage(String message);
+        void onClosed(int statusCode, String reason);
+        void onError(Throwable error);
+    }
+
+    private static GameConnection instance;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ws-keepalive");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this
+    private CompletableFuture<WebSocket> socket;
+    private String socketToken;
+    private ScheduledFuture<?> pingTask;
+    private boolean retryScheduled;
+    // Null while the socket is only being kept warm
+    private volatile MessageHandler handler;
+    private final List<EventListener> eventListeners = new CopyOnWriteArrayList<>();
+    // Whether every socket should ask the server for leaderboard_delta messages
+    private volatile boolean leaderboardSubscribed;
+
+    private GameConnection() {
+    }
+
+    // Get singleton instance
+    public static synchronized GameConnection getInstance() {
+        if (instance == null) {
+            instance = new GameConnection();
+        }
+        return instance;
+    }
+
+    /**
+     * Open the socket in the background if the user is logged in and none is open or opening.
+     * Returns immediately; the HTTP stack is set up on the keep-alive thread, not the caller's.
+     * Does nothing if pre-warming is disabled with -Dbatalhanaval.prewarm=false.
+     */
+    public void prewarm() {
+        if (!Boolean.parseBoolean(System.getProperty(PREWARM_PROPERTY, "true"))) {
+            return;
+        }
+        scheduler.execute(this::prewarmNow);
+    }
+
+    private synchronized void prewarmNow() {
+        User user = User.getInstance();
+        if (!user.isAuthenticated()) {
+            return;
+        }
+        if (isUsable(user.getToken())) {
+            return;
+        }
+        System.out.println("=== PRE-WARMING GAME CONNECTION ===");
+        open(user.getToken());
+    }
+
+    /**
+     * Check if a socket for the current user is open and idle, ready to be adopted
+     * @return true if {@link #acquire} would not need to connect
+     */
+    public synchronized boolean isOpen() {
+        return handler == null && isUsable(User.getInstance().getToken())
+                && socket.isDone() && !socket.isCompletedExceptionally();
+    }
+
+    /**
+     * Adopt the warm socket, or connect now if there is none
+     * @param handler Receives every message from now on
+     * @return Completes with the open socket
+     */
+    public synchronized CompletableFuture<WebSocket> acquire(MessageHandler handler) {
+        String token = User.getInstance().getToken();
+        if (this.handler != null || !isUsable(token)) {
+            open(token);
+        }
+        this.handler = handler;
+        return socket;
+    }
+
+    /**
+     * Close the socket, e.g. when a game is over or the user logs out
+     * @param reason Reason sent to the server
+     */
+    public synchronized void close(String reason) {
+        handler = null;
+        stopPing();
+        if (socket != null) {
+            socket.thenAccept(ws -> ws.sendClose(WebSocket.NORMAL_CLOSURE, reason));
+            socket = null;
+            socketToken = null;
+        }
+    }
+
+    public void addEventListener(EventListener listener) {
+        eventListeners.add(listener);
+    }
+
+    public void removeEventListener(EventListener listener) {
+        eventListeners.remove(listener);
+    }
+
+    /**
+     * Ask the server to push leaderboard updates, or to stop. The subscription is
+     * remembered and renewed on every new socket, e.g. after a game closed the old one.
+     * @param subscribed true to receive leaderboard_delta events
+     */
+    public void setLeaderboardSubscribed(boolean subscribed) {
+        if (leaderboardSubscribed == subscribed) {
+            return;
+        }
+        leaderboardSubscribed = subscribed;
+        sendSubscription(subscribed);
+        if (subscribed) {
+            prewarm();
+        }
+    }
+
+    private synchronized void sendSubscription(boolean subscribed) {
+        if (socket == null || socket.isCompletedExceptionally()) {
+            return; // Sent when the next socket opens
+        }
+        String type = subscribed ? "subscribe_leaderboard" : "unsubscribe_leaderboard";
+        socket.thenAccept(ws -> {
+            if (!ws.isOutputClosed()) {
+                ws.sendText("{\"type\":\"" + type + "\"}", true);
+            }
+        });
+    }
+
+    /**
+     * Close the socket and stop the keep-alive thread when the application exits
+     */
+    public void shutdown() {
+        close("Client exiting");
+        scheduler.shutdownNow();
+    }
+
+    private boolean isUsable(String token) {
+        if (socket == null || token == null || !token.equals(socketToken) || socket.isCompletedExceptionally()) {
+            return false;
+        }
+        if (!socket.isDone()) {
+            return true; // Still connecting
+        }
+        WebSocket ws = socket.join();
+        return !ws.isInputClosed() && !ws.isOutputClosed();
+    }
+
+    private void open(String token) {
+        close("Replaced by a new connection");
+        long start = System.nanoTime();
+        String wsUrl = ServerConfig.WEBSOCKET_URL + "?token=" + token;
+        CompletableFuture<WebSocket> opening = ApiClient.getInstance().getHttpClient()
+                .newWebSocketBuilder()
+                .buildAsync(URI.create(wsUrl), new Listener());
+        socket = opening;
+        socketToken = token;
+        opening.whenComplete((ws, error) -> {
+            if (error != null) {
+                System.out.println("Game connection failed: " + error.getMessage());
+                return;
+            }
+            System.out.printf("Game connection open in %.1f ms%n", (System.nanoTime() - start) / 1_000_000.0);
+            startPing(opening);
+            if (leaderboardSubscribed) {
+                sendSubscription(true);
+            }
+        });
+    }
+
+    private synchronized void startPing(CompletableFuture<WebSocket> opened) {
+        if (socket != opened) {
+            return; // Closed or replaced while connecting
+        }
+        stopPing();
+        WebSocket ws = opened.join();
+        long interval = PING_INTERVAL.toMillis();
+        pingTask = scheduler.scheduleAtFixedRate(() -> {
+            if (!ws.isOutputClosed()) {
+                ws.sendPing(ByteBuffer.allocate(0));
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopPing() {
+        if (pingTask != null) {
+            pingTask.cancel(false);
+            pingTask = null;
+        }
+    }
+
+    /**
+     * Forget the given socket if it is still the current one
+     * @return true if it was the current socket
+     */
+    private synchronized boolean drop(WebSocket ws) {
+        if (socket == null || !socket.isDone() || socket.isCompletedExceptionally() || socket.join() != ws) {
+            return false;
+        }
+        stopPing();
+        socket = null;
+        socketToken = null;
+        return true;
+    }
+
+    /**
+     * The server refused a warm socket, most likely because the previous one is still
+     * being torn down on its side. Try once more a moment later.
+     */
+    private synchronized void scheduleRetry() {
+        if (retryScheduled) {
+            return;
+        }
+        retryScheduled = true;
+        scheduler.schedule(() -> {
+            synchronized (this) {
+                retryScheduled = false;
+            }
+            prewarmNow();
+        }, RETRY_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private class Listener implements WebSocket.Listener {
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            System.out.println("=== WEBSOCKET CONNECTED ===");
+            System.out.println("Connection opened to: " + webSocket.getSubprotocol());
+            System.out.println("============================");
+
+            // Request to start receiving messages
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            System.out.println("=== WEBSOCKET MESSAGE RECEIVED ===");
+            System.out.println("Raw message: " + data.toString());
+            System.out.println("Message is last fragment: " + last);
+            System.out.println("================================");
+
+            MessageHandler current = handler;
+            if (current != null) {
+                current.onMessage(data.toString());
+            } else {
+                onIdleMessage(webSocket, data.toString());
+            }
+            if (!eventListeners.isEmpty()) {
+                dispatchEvent(data.toString());
+            }
+
+            // Request the next message - this is crucial!
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            System.out.println("=== WEBSOCKET DISCONNECTED ===");
+            System.out.println("Status code: " + statusCode);
+            System.out.println("Reason: " + reason);
+            System.out.println("===============================");
+
+            MessageHandler current = handler;
+            if (drop(webSocket) && current != null) {
+                current.onClosed(statusCode, reason);
+            }
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            System.out.println("=== WEBSOCKET ERROR ===");
+            System.out.println("Error: " + error.getMessage());
+            error.printStackTrace();
+            System.out.println("========================");
+
+            MessageHandler current = handler;
+            if (drop(webSocket) && current != null) {
+                current.onError(error);
+            }
+        }
+
+        private void dispatchEvent(String message) {
+            try {
+                JsonNode jsonNode = Json.MAPPER.readTree(message);
+                String type = jsonNode.path("type").asText();
+                for (EventListener listener : eventListeners) {
+                    listener.onEvent(type, jsonNode);
+                }
+            } catch (Exception e) {
+                System.out.println("Failed to dispatch event: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Messages received while nobody adopted the socket (connection_success, queue counts)
+         * are stale by the time a game starts and are dropped, except a refused connection.
+         */
+        private void onIdleMessage(WebSocket webSocket, String message) {
+            try {
+                JsonNode jsonNode = Json.MAPPER.readTree(message);
+                if ("connection_error".equals(jsonNode.path("type").asText())) {
+                    System.out.println("Warm connection refused: " + jsonNode.path("error").asText());
+                    if (drop(webSocket)) {
+                        scheduleRetry();
+                    }
+                }
+            } catch (Exception e) {
+                System.out.println("Ignoring unreadable message on idle connection: " + e.getMessage());
+            }
+        }
+    }
+}
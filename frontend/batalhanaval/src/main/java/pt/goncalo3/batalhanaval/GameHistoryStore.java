@@ -0,0 +1,444 @@
+package pt.goncalo3.batalhanaval;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Local history of every match played, kept in two files in the data directory.
+ *
+ * <ul>
+ *   <li>history.log is append-only: one record per game, with both fleets packed two bytes
+ *       per ship and the moves four bytes each (see {@link GameRecord}), followed by a CRC32.
+ *       Records are never rewritten.</li>
+ *   <li>history.idx is a memory-mapped array of fixed-size entries, one per game, holding
+ *       where the record is and what is searched on: start time, a hash of the opponent's
+ *       name and the outcome. Games are appended in the order they started, so lookups by
+ *       date are binary searches; lookups by opponent or outcome scan the entries only.</li>
+ * </ul>
+ * Nothing is read until the history is first used, so it does not slow down startup
+ * however many games it holds; opening it maps the index and checks the end of the log.
+ * A record cut short by a crash is dropped; a record written without its index entry
+ * is indexed again.
+ */
+public class GameHistoryStore {
+    private static final String LOG_FILE = "history.log";
+    private static final String INDEX_FILE = "history.idx";
+    private static final int RECORD_MAGIC = 0x47524543; // "GREC"
+    private static final int INDEX_MAGIC = 0x47494458;  // "GIDX"
+    private static final int INDEX_VERSION = 1;
+
+    // Record: magic, payload length, payload, CRC32 of the payload
+    private static final int RECORD_HEADER = 8;
+    private static final int RECORD_TRAILER = 4;
+    // The opponent's name follows the start time, end time and outcome in the payload
+    private static final int PAYLOAD_OPPONENT_AT = 17;
+
+    // Index header: magic, version, entry count
+    private static final int INDEX_HEADER = 16;
+    // Index entry: log offset, start time, opponent hash, record length, move count, outcome (+ padding)
+    private static final int ENTRY_SIZE = 32;
+    private static final int OFFSET_AT = 0;
+    private static final int STARTED_AT = 8;
+    private static final int OPPONENT_AT = 16;
+    private static final int LENGTH_AT = 20;
+    private static final int MOVES_AT = 24;
+    private static final int OUTCOME_AT = 28;
+    // The index file grows by this many entries at a time
+    private static final int GROWTH = 4096;
+
+    private static GameHistoryStore instance;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "history-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this; opened on first use
+    private FileChannel log;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int count;
+
+    // Package-private for tests, which use one store per data directory
+    GameHistoryStore() {
+    }
+
+    // Get singleton instance
+    public static synchronized GameHistoryStore getInstance() {
+        if (instance == null) {
+            instance = new GameHistoryStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Append a finished game, in the background, then copy it to the {@link GameArchive}
+     * @param game The game
+     * @return Completes with the id of the game in the history
+     */
+    public CompletableFuture<Integer> append(GameRecord game) {
+        return CompletableFuture.supplyAsync(() -> {
+            int id;
+            try {
+                id = appendNow(game);
+            } catch (IOException e) {
+                System.err.println("Failed to save game history: " + e.getMessage());
+                throw new RuntimeException(e);
+            }
+            // The archive is only a copy for analytics: the game is saved either way,
+            // and the next sync copies whatever this one missed
+            try {
+                GameArchive.getInstance().sync(this);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Failed to update game archive: " + e.getMessage());
+            }
+            return id;
+        }, writer);
+    }
+
+    /**
+     * Get the number of games in the history
+     * @return The number of games
+     * @throws IOException If the history cannot be opened
+     */
+    public synchronized int size() throws IOException {
+        open();
+        return count;
+    }
+
+    /**
+     * Find the games started in a time range
+     * @param from Start of the range (epoch ms, inclusive)
+     * @param to End of the range (epoch ms, exclusive)
+     * @return The ids of the games, oldest first
+     * @throws IOException If the history cannot be opened
+     */
+    public synchronized int[] findBetween(long from, long to) throws IOException {
+        open();
+        int first = firstStartedAtOrAfter(from);
+        int end = firstStartedAtOrAfter(to);
+        int[] ids = new int[Math.max(0, end - first)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = first + i;
+        }
+        return ids;
+    }
+
+    /**
+     * Find the games against an opponent
+     * @param opponent The opponent's username (case-insensitive)
+     * @return The ids of the games, oldest first
+     * @throws IOException If the history cannot be read
+     */
+    public synchronized int[] findByOpponent(String opponent) throws IOException {
+        open();
+        int hash = opponentHash(opponent);
+        int[] ids = new int[16];
+        int found = 0;
+        for (int id = 0; id < count; id++) {
+            // The hash narrows the scan down; the name in the record settles collisions
+            if (index.getInt(entryAt(id) + OPPONENT_AT) == hash
+                    && opponent.equalsIgnoreCase(readOpponent(id))) {
+                if (found == ids.length) {
+                    ids = Arrays.copyOf(ids, found * 2);
+                }
+                ids[found++] = id;
+            }
+        }
+        return Arrays.copyOf(ids, found);
+    }
+
+    /**
+     * Find the games with an outcome
+     * @param outcome The outcome
+     * @return The ids of the games, oldest first
+     * @throws IOException If the history cannot be opened
+     */
+    public synchronized int[] findByOutcome(GameRecord.Outcome outcome) throws IOException {
+        open();
+        int[] ids = new int[16];
+        int found = 0;
+        for (int id = 0; id < count; id++) {
+            if (index.get(entryAt(id) + OUTCOME_AT) == outcome.ordinal()) {
+                if (found == ids.length) {
+                    ids = Arrays.copyOf(ids, found * 2);
+                }
+                ids[found++] = id;
+            }
+        }
+        return Arrays.copyOf(ids, found);
+    }
+
+    /**
+     * Read a game
+     * @param id Id returned by {@link #append} or one of the find methods
+     * @return The game
+     * @throws IOException If the record cannot be read or is damaged
+     */
+    public synchronized GameRecord read(int id) throws IOException {
+        open();
+        if (id < 0 || id >= count) {
+            throw new IndexOutOfBoundsException(id);
+        }
+        int at = entryAt(id);
+        ByteBuffer payload = readPayload(index.getLong(at + OFFSET_AT), index.getInt(at + LENGTH_AT));
+        if (payload == null) {
+            throw new IOException("damaged history record " + id);
+        }
+        return decode(payload);
+    }
+
+    private synchronized int appendNow(GameRecord game) throws IOException {
+        open();
+        byte[] payload = encode(game);
+        long offset = log.size();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + payload.length + RECORD_TRAILER);
+        record.putInt(RECORD_MAGIC).putInt(payload.length).put(payload).putInt(crc(payload, 0, payload.length));
+        record.flip();
+        while (record.hasRemaining()) {
+            log.write(record, offset + record.position());
+        }
+        // The record is on disk before the index points to it
+        log.force(false);
+        int id = addEntry(offset, payload.length, game.startedAt(), game.opponent(), game.outcome(), game.moves().size());
+        index.force();
+        return id;
+    }
+
+    // ---- Opening and recovery ----
+
+    /**
+     * Close the files; the next use opens them again and checks them as on startup
+     * @throws IOException If the files cannot be closed
+     */
+    synchronized void close() throws IOException {
+        if (log == null) {
+            return;
+        }
+        log.close();
+        indexChannel.close();
+        log = null;
+        indexChannel = null;
+        index = null;
+    }
+
+    private void open() throws IOException {
+        if (log != null) {
+            return;
+        }
+        long start = System.nanoTime();
+        log = FileChannel.open(AppData.file(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Path indexFile = AppData.file(INDEX_FILE);
+        indexChannel = FileChannel.open(indexFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (indexChannel.size() < INDEX_HEADER) {
+            map(GROWTH);
+            index.putInt(0, INDEX_MAGIC).putInt(4, INDEX_VERSION).putLong(8, 0);
+        } else {
+            int capacity = (int) ((indexChannel.size() - INDEX_HEADER) / ENTRY_SIZE);
+            map(capacity);
+            long stored = index.getLong(8);
+            if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != INDEX_VERSION
+                    || stored < 0 || stored > capacity) {
+                // The header is rewritten too, so the index is only rebuilt once
+                System.err.println("Rebuilding unreadable game history index");
+                index.putInt(0, INDEX_MAGIC).putInt(4, INDEX_VERSION).putLong(8, 0);
+            }
+        }
+        count = (int) index.getLong(8);
+        recover();
+        System.out.printf("Game history opened: %d games in %.1f ms%n", count, (System.nanoTime() - start) / 1_000_000.0);
+    }
+
+    /**
+     * Make the index and the log agree: drop entries past the end of the log, index the
+     * complete records after the last entry, and cut off a record left incomplete
+     */
+    private void recover() throws IOException {
+        long logSize = log.size();
+        while (count > 0 && endOf(count - 1) > logSize) {
+            count--;
+        }
+        long offset = count > 0 ? endOf(count - 1) : 0;
+        while (offset < logSize) {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            if (log.read(header, offset) < RECORD_HEADER || header.getInt(0) != RECORD_MAGIC) {
+                break;
+            }
+            int length = header.getInt(4);
+            ByteBuffer payload = length >= 0 && offset + RECORD_HEADER + length + RECORD_TRAILER <= logSize
+                    ? readPayload(offset, length) : null;
+            if (payload == null) {
+                break;
+            }
+            GameRecord game = decode(payload);
+            addEntry(offset, length, game.startedAt(), game.opponent(), game.outcome(), game.moves().size());
+            System.out.println("Indexed game history record at " + offset);
+            offset += RECORD_HEADER + length + RECORD_TRAILER;
+        }
+        if (offset < logSize) {
+            System.err.println("Dropping incomplete game history record at " + offset);
+            log.truncate(offset);
+        }
+        index.putLong(8, count);
+    }
+
+    private long endOf(int id) {
+        int at = entryAt(id);
+        return index.getLong(at + OFFSET_AT) + RECORD_HEADER + index.getInt(at + LENGTH_AT) + RECORD_TRAILER;
+    }
+
+    // ---- Index ----
+
+    private void map(int capacity) throws IOException {
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + (long) capacity * ENTRY_SIZE);
+    }
+
+    private static int entryAt(int id) {
+        return INDEX_HEADER + id * ENTRY_SIZE;
+    }
+
+    private int addEntry(long offset, int length, long startedAt, String opponent,
+                         GameRecord.Outcome outcome, int moves) throws IOException {
+        if (entryAt(count + 1) > index.capacity()) {
+            map(count + GROWTH);
+        }
+        int at = entryAt(count);
+        index.putLong(at + OFFSET_AT, offset);
+        index.putLong(at + STARTED_AT, startedAt);
+        index.putInt(at + OPPONENT_AT, opponentHash(opponent));
+        index.putInt(at + LENGTH_AT, length);
+        index.putInt(at + MOVES_AT, moves);
+        index.put(at + OUTCOME_AT, (byte) outcome.ordinal());
+        // The count is written last, so a crash before it leaves the entry unused
+        index.putLong(8, ++count);
+        return count - 1;
+    }
+
+    private int firstStartedAtOrAfter(long time) {
+        int low = 0, high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (index.getLong(entryAt(middle) + STARTED_AT) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int opponentHash(String opponent) {
+        return opponent != null ? opponent.toLowerCase().hashCode() : 0;
+    }
+
+    // ---- Records ----
+
+    /**
+     * Read a record's payload and check it against its CRC
+     * @return The payload, or null if it is damaged
+     */
+    private ByteBuffer readPayload(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + length + RECORD_TRAILER);
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, offset + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        byte[] bytes = buffer.array();
+        if (buffer.getInt(0) != RECORD_MAGIC || buffer.getInt(4) != length
+                || buffer.getInt(RECORD_HEADER + length) != crc(bytes, RECORD_HEADER, length)) {
+            return null;
+        }
+        return ByteBuffer.wrap(bytes, RECORD_HEADER, length).slice();
+    }
+
+    /**
+     * Read only the opponent's name of a record
+     */
+    private String readOpponent(int id) throws IOException {
+        long at = index.getLong(entryAt(id) + OFFSET_AT) + RECORD_HEADER + PAYLOAD_OPPONENT_AT;
+        ByteBuffer buffer = ByteBuffer.allocate(2 + 64);
+        log.read(buffer, at);
+        int length = buffer.getShort(0) & 0xFFFF;
+        if (length > buffer.capacity() - 2) {
+            buffer = ByteBuffer.allocate(2 + length);
+            log.read(buffer, at);
+        }
+        return new String(buffer.array(), 2, Math.min(length, buffer.position() - 2), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(GameRecord game) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + game.moves().size() * 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(game.startedAt());
+        out.writeLong(game.endedAt());
+        out.writeByte(game.outcome().ordinal());
+        byte[] opponent = (game.opponent() != null ? game.opponent() : "").getBytes(StandardCharsets.UTF_8);
+        out.writeShort(opponent.length);
+        out.write(opponent);
+        writeFleet(out, game.fleet());
+        writeFleet(out, game.opponentFleet());
+        int[] moves = GameRecord.packMoves(game.moves());
+        out.writeInt(moves.length);
+        for (int move : moves) {
+            out.writeInt(move);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeFleet(DataOutputStream out, List<Ship> fleet) throws IOException {
+        out.writeByte(fleet.size());
+        for (Ship ship : fleet) {
+            out.writeShort(GameRecord.packShip(ship));
+        }
+    }
+
+    private static GameRecord decode(ByteBuffer in) {
+        long startedAt = in.getLong();
+        long endedAt = in.getLong();
+        GameRecord.Outcome outcome = GameRecord.Outcome.values()[in.get()];
+        byte[] name = new byte[in.getShort() & 0xFFFF];
+        in.get(name);
+        String opponent = new String(name, StandardCharsets.UTF_8);
+        List<Ship> fleet = readFleet(in);
+        List<Ship> opponentFleet = readFleet(in);
+        int[] moves = new int[in.getInt()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = in.getInt();
+        }
+        return new GameRecord(startedAt, endedAt, opponent.isEmpty() ? null : opponent, outcome,
+                fleet, opponentFleet, GameRecord.unpackMoves(moves));
+    }
+
+    private static List<Ship> readFleet(ByteBuffer in) {
+        int size = in.get() & 0xFF;
+        List<Ship> fleet = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            fleet.add(GameRecord.unpackShip(i, in.getShort()));
+        }
+        return fleet;
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,135 @@
+package pt.goncalo3.batalhanaval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything that happened in one finished match: both fleets, every attack and the outcome.
+ *
+ * Ships and moves have a compact encoding for {@link GameHistoryStore}: a ship packs
+ * into a short and a move into an int, see {@link #packShip} and {@link #packMoves}.
+ *
+ * @param startedAt When the match started (epoch ms)
+ * @param endedAt When the match ended (epoch ms)
+ * @param opponent Username of the opponent, or null if the server did not send it
+ * @param outcome The outcome for the player
+ * @param fleet The player's ships
+ * @param opponentFleet The opponent's ships, as far as they are known (sunk ones, or all of them after a loss)
+ * @param moves Every attack of both players, in order
+ */
+public record GameRecord(long startedAt, long endedAt, String opponent, Outcome outcome,
+                         List<Ship> fleet, List<Ship> opponentFleet, List<Move> moves) {
+
+    public enum Outcome {
+        WIN, LOSS, ABANDONED
+    }
+
+    public enum Result {
+        MISS, HIT, SUNK
+    }
+
+    /**
+     * One attack
+     * @param byPlayer true for the player's attacks, false for the opponent's
+     * @param x Column of the attacked cell (0-15)
+     * @param y Row of the attacked cell (0-15)
+     * @param result What the attack hit
+     * @param atMs Time of the attack since the start of the match
+     */
+    public record Move(boolean byPlayer, int x, int y, Result result, long atMs) {
+    }
+
+    // Move layout: [31] by opponent, [30..29] result, [28..25] x, [24..21] y,
+    // [20..0] time since the previous move in units of 10 ms (capped at about 5.8 hours)
+    private static final int TIME_BITS = 21;
+    private static final int MAX_TIME_UNITS = (1 << TIME_BITS) - 1;
+    private static final int TIME_UNIT_MS = 10;
+
+    /**
+     * Pack the moves into one int each
+     * @param moves The moves, in order
+     * @return The packed moves
+     */
+    public static int[] packMoves(List<Move> moves) {
+        int[] packed = new int[moves.size()];
+        long previousUnits = 0;
+        for (int i = 0; i < packed.length; i++) {
+            Move move = moves.get(i);
+            long units = move.atMs() / TIME_UNIT_MS;
+            int delta = (int) Math.min(Math.max(units - previousUnits, 0), MAX_TIME_UNITS);
+            previousUnits += delta;
+            packed[i] = (move.byPlayer() ? 0 : 1 << 31)
+                    | move.result().ordinal() << 29
+                    | (move.x() & 0xF) << 25
+                    | (move.y() & 0xF) << TIME_BITS
+                    | delta;
+        }
+        return packed;
+    }
+
+    /**
+     * Unpack moves packed by {@link #packMoves}
+     * @param packed The packed moves
+     * @return The moves, with times rounded down to 10 ms
+     */
+    public static List<Move> unpackMoves(int[] packed) {
+        List<Move> moves = new ArrayList<>(packed.length);
+        long units = 0;
+        for (int value : packed) {
+            units += value & MAX_TIME_UNITS;
+            moves.add(new Move(value >= 0, moveX(value), moveY(value),
+                    Result.values()[(value >>> 29) & 0x3], units * TIME_UNIT_MS));
+        }
+        return moves;
+    }
+
+    /**
+     * Get the column of a packed move, without unpacking it
+     */
+    public static int moveX(int packed) {
+        return (packed >>> 25) & 0xF;
+    }
+
+    /**
+     * Get the row of a packed move, without unpacking it
+     */
+    public static int moveY(int packed) {
+        return (packed >>> TIME_BITS) & 0xF;
+    }
+
+    /**
+     * Check if a packed move is the player's, without unpacking it
+     */
+    public static boolean isPlayerMove(int packed) {
+        return packed >= 0;
+    }
+
+    /**
+     * Check if a packed move hit a ship (including the hit that sank it)
+     */
+    public static boolean isHit(int packed) {
+        return ((packed >>> 29) & 0x3) != Result.MISS.ordinal();
+    }
+
+    /**
+     * Pack a ship into a short: [12] horizontal, [11..8] length, [7..4] x, [3..0] y
+     * @param ship The ship
+     * @return The packed ship
+     */
+    public static short packShip(Ship ship) {
+        return (short) ((ship.isHorizontal() ? 1 << 12 : 0)
+                | (ship.getLength() & 0xF) << 8
+                | (ship.getPosX() & 0xF) << 4
+                | (ship.getPosY() & 0xF));
+    }
+
+    /**
+     * Unpack a ship packed by {@link #packShip}
+     * @param id Id given to the ship
+     * @param packed The packed ship
+     * @return The ship
+     */
+    public static Ship unpackShip(int id, short packed) {
+        return new Ship(id, (packed >>> 4) & 0xF, packed & 0xF, (packed >>> 8) & 0xF, (packed & 1 << 12) != 0);
+    }
+}
@@ -0,0 +1,86 @@
+package pt.goncalo3.batalhanaval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the events of the match being played and saves it to the
+ * {@link GameHistoryStore} when it ends. Used by {@link Game} on the FX thread.
+ */
+class GameRecorder {
+    private long startedAt;
+    private String opponent;
+    private List<Ship> fleet = List.of();
+    private final List<Ship> opponentFleet = new ArrayList<>();
+    private final List<GameRecord.Move> moves = new ArrayList<>();
+    private boolean finished;
+    private GameRecord record;
+
+    /**
+     * The match started; the ships are placed afterwards
+     * @param opponent The opponent's username, or null if unknown
+     */
+    void started(String opponent) {
+        this.startedAt = System.currentTimeMillis();
+        this.opponent = opponent;
+    }
+
+    /**
+     * The player's ships were sent to the server
+     */
+    void placed(List<Ship> fleet) {
+        this.fleet = List.copyOf(fleet);
+    }
+
+    /**
+     * An attack was answered
+     * @param byPlayer true for the player's attack, false for the opponent's
+     */
+    void attack(boolean byPlayer, int x, int y, boolean hit) {
+        if (startedAt == 0) {
+            return;
+        }
+        moves.add(new GameRecord.Move(byPlayer, x, y, hit ? GameRecord.Result.HIT : GameRecord.Result.MISS,
+                System.currentTimeMillis() - startedAt));
+    }
+
+    /**
+     * The player's last attack sank an opponent ship
+     */
+    void sunk(Ship ship) {
+        opponentFleet.add(ship);
+        for (int i = moves.size() - 1; i >= 0; i--) {
+            GameRecord.Move move = moves.get(i);
+            if (move.byPlayer()) {
+                moves.set(i, new GameRecord.Move(true, move.x(), move.y(), GameRecord.Result.SUNK, move.atMs()));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the match once it ended
+     * @return The match, or null if it has not ended
+     */
+    GameRecord record() {
+        return record;
+    }
+
+    /**
+     * The match ended: save it, unless it never started or was already saved
+     * @param outcome The outcome for the player
+     * @param revealedFleet The opponent's whole fleet if the server sent it, or null
+     */
+    void finished(GameRecord.Outcome outcome, List<Ship> revealedFleet) {
+        if (startedAt == 0 || finished) {
+            return;
+        }
+        finished = true;
+        GameRecord game = record = new GameRecord(startedAt, System.currentTimeMillis(), opponent, outcome, fleet,
+                revealedFleet != null ? List.copyOf(revealedFleet) : List.copyOf(opponentFleet),
+                List.copyOf(moves));
+        GameHistoryStore.getInstance().append(game)
+                .thenAccept(id -> System.out.println("Game saved to history as #" + id + " (" + outcome + ", "
+                        + game.moves().size() + " moves)"));
+    }
+}
@@ -0,0 +1,96 @@
+package pt.goncalo3.batalhanaval;
+
+/**
+ * The inner loop of a heatmap: add the weight of every placement of a ship to the
+ * count of each cell it covers.
+ *
+ * Going placement by placement touches a handful of scattered cells each time, which
+ * no vector unit helps with. Instead, the placements of one length and orientation are
+ * given as an array of weights indexed by their first cell (0 where the ship does not
+ * fit), and a ship of length L covers its first cell and the L - 1 cells after it. So
+ * the counts are that array added to itself shifted by 0 to L - 1 cells (horizontal)
+ * or rows (vertical): a few dense additions over the whole board.
+ *
+ * {@link #get()} picks the Vector API kernel when the JVM has the jdk.incubator.vector
+ * module (run with --add-modules jdk.incubator.vector) and the scalar one otherwise;
+ * both give exactly the same counts. -Dbatalhanaval.scalarKernel=true forces the
+ * scalar kernel.
+ */
+public abstract class HeatmapKernel {
+    private static final HeatmapKernel SCALAR = new Scalar();
+    private static final HeatmapKernel BEST = select();
+
+    /**
+     * Get the fastest kernel available
+     */
+    public static HeatmapKernel get() {
+        return BEST;
+    }
+
+    /**
+     * Get the scalar kernel, available everywhere
+     */
+    public static HeatmapKernel scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * Get the name of the kernel, for logs and benchmarks
+     */
+    public abstract String name();
+
+    /**
+     * Add each weight to the count of the cell a fixed number of cells further:
+     * counts[i + shift] += starts[i] for every i below count
+     * @param counts Counts per cell
+     * @param starts Weights per cell
+     * @param shift Distance between a weight and the count it is added to
+     * @param count Number of weights to add
+     */
+    public abstract void spread(int[] counts, int[] starts, int shift, int count);
+
+    /**
+     * Add the weights of every placement of a ship to the cells they cover
+     * @param counts Counts per cell of a square board, indexed by y * size + x
+     * @param horizontal Weight of each horizontal placement, by its leftmost cell
+     * @param vertical Weight of each vertical placement, by its top cell
+     * @param length Length of the ship
+     * @param size Width of the board
+     */
+    public final void placements(int[] counts, int[] horizontal, int[] vertical, int length, int size) {
+        int cells = size * size;
+        for (int k = 0; k < length; k++) {
+            spread(counts, horizontal, k, cells - k);
+            spread(counts, vertical, k * size, cells - k * size);
+        }
+    }
+
+    private static HeatmapKernel select() {
+        if (Boolean.getBoolean("batalhanaval.scalarKernel")
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            HeatmapKernel kernel = new VectorHeatmapKernel();
+            System.out.println("Heatmap kernel: " + kernel.name());
+            return kernel;
+        } catch (LinkageError e) {
+            System.out.println("Vector heatmap kernel unavailable: " + e);
+            return SCALAR;
+        }
+    }
+
+    private static final class Scalar extends HeatmapKernel {
+        @Override
+        public String name() {
+            return "scalar";
+        }
+
+        @Override
+        public void spread(int[] counts, int[] starts, int shift, int count) {
+            for (int i = 0; i < count; i++) {
+                counts[i + shift] += starts[i];
+            }
+        }
+    }
+}
@@ -1,37 +1,78 @@
 package pt.goncalo3.batalhanaval;
 
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
-import javafx.stage.Stage;
 
-import java.io.IOException;
 import java.net.URL;
 import java.util.ResourceBundle;
 
 /**
  * Controller for the home page of the Battleship game.
  */
-public class HomeController implements Initializable {
+public class HomeController implements Initializable, Navigator.Lifecycle {
 
     @FXML private Button loginButton;
     @FXML private Button registerButton;
     @FXML private Button playButton;
+    @FXML private Button offlineButton;
+    @FXML private ChoiceBox<ShotStrategy.Level> difficultyChoice;
     @FXML private Button leaderboardButton;
     @FXML private Button logoutButton;
     @FXML private Label usernameLabel;
 
+    private static final String DIFFICULTY_KEY = "offlineDifficulty";
+
     private final User user = User.getInstance();
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
+        difficultyChoice.getItems().setAll(ShotStrategy.Level.values());
+        difficultyChoice.setValue(savedDifficulty());
+        difficultyChoice.valueProperty().addListener((obs, old, level) ->
+                SettingsStore.getInstance().put(DIFFICULTY_KEY, level.name()));
+        updateButtonVisibility();
+    }
+
+    /**
+     * Get the difficulty picked last time, medium the first time
+     */
+    private static ShotStrategy.Level savedDifficulty() {
+        String saved = SettingsStore.getInstance().get(DIFFICULTY_KEY);
+        try {
+            return saved != null ? ShotStrategy.Level.valueOf(saved) : ShotStrategy.Level.HUNT_TARGET;
+        } catch (IllegalArgumentException e) {
+            return ShotStrategy.Level.HUNT_TARGET;
+        }
+    }
+
+    /**
+     * The cached home view is shown again: the authentication state may have changed.
+     * The stored session is checked with the server (once per run); the buttons are
+     * updated when the answer arrives. A logged-in user will most likely press Play next,
+     * so connect to the game server as soon as the session is known to be valid.
+     */
+    @Override
+    public void onShow() {
         updateButtonVisibility();
+        SessionRestore.getInstance().start().thenAccept(result -> Platform.runLater(() -> {
+            updateButtonVisibility();
+            if (user.isAuthenticated()) {
+                GameConnection.getInstance().prewarm();
+            }
+        }));
+    }
+
+    /**
+     * Stop checking the session if the user leaves before it is done
+     */
+    @Override
+    public void onHide() {
+        SessionRestore.getInstance().cancel();
     }
 
     /**
@@ -68,120 +109,51 @@ public class HomeController implements Initializable {
 
     /**
      * Called when the user clicks “LOGIN” on the Home screen.
-     * Loads login-view.fxml (login mode).
+     * Shows the login view in login mode.
      */
     @FXML
-    public void onLoginButtonClick(ActionEvent event) throws IOException {
-        // 1) Locate login-view.fxml via its absolute classpath location
-        URL fxmlUrl = getClass().getResource("/pt/goncalo3/batalhanaval/fxml/login-view.fxml");
-        if (fxmlUrl == null) {
-            throw new RuntimeException(
-                    "Cannot find login-view.fxml at '/pt/goncalo3/batalhanaval/fxml/login-view.fxml'"
-            );
-        }
-
-        // 2) Load it
-        FXMLLoader loader = new FXMLLoader(fxmlUrl);
-        Parent loginRoot = loader.load();
-
-        // 3) Make sure the controller is in login mode
-        LoginController loginController = loader.getController();
-        loginController.setRegistrationMode(false);
-
-        // 4) Swap the scene on the same stage
-        Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-        Scene scene = new Scene(loginRoot, 400, 600);
-
-
-        stage.setTitle("Battleship – Login");
-        stage.setScene(scene);
-        stage.show();
+    public void onLoginButtonClick(ActionEvent event) {
+        Navigator.getInstance().show(Navigator.View.LOGIN,
+                (LoginController loginController) -> loginController.setRegistrationMode(false));
     }
 
     /**
      * Called when the user clicks “REGISTER” on the Home screen.
-     * Loads login-view.fxml (registration mode).
+     * Shows the login view in registration mode.
      */
     @FXML
-    public void onRegisterButtonClick(ActionEvent event) throws IOException {
-        // 1) Locate login-view.fxml
-        URL fxmlUrl = getClass().getResource("/pt/goncalo3/batalhanaval/fxml/login-view.fxml");
-        if (fxmlUrl == null) {
-            throw new RuntimeException(
-                    "Cannot find login-view.fxml at '/pt/goncalo3/batalhanaval/fxml/login-view.fxml'"
-            );
-        }
-
-        // 2) Load it
-        FXMLLoader loader = new FXMLLoader(fxmlUrl);
-        Parent registerRoot = loader.load();
-
-        // 3) Tell the controller to switch into registration mode
-        LoginController loginController = loader.getController();
-        loginController.setRegistrationMode(true);
-
-        // 4) Swap the scene
-        Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-        Scene scene = new Scene(registerRoot, 400, 600);
-
-        stage.setTitle("Battleship – Register");
-        stage.setScene(scene);
-        stage.show();
+    public void onRegisterButtonClick(ActionEvent event) {
+        Navigator.getInstance().show(Navigator.View.LOGIN,
+                (LoginController loginController) -> loginController.setRegistrationMode(true));
     }
 
     /**
      * Called when the user clicks “PLAY” (only visible if authenticated).
-     * Loads ship-placement-view.fxml.
+     * Shows the matchmaking view.
      */
     @FXML
-    public void onPlayButtonClick(ActionEvent event) throws IOException {
-        // 1) Locate waiting-view.fxml
-        URL fxmlUrl = getClass().getResource("/pt/goncalo3/batalhanaval/fxml/waiting-view.fxml");
-        if (fxmlUrl == null) {
-            throw new RuntimeException(
-                    "Cannot find waiting-view.fxml at '/pt/goncalo3/batalhanaval/fxml/waiting-view.fxml'"
-            );
-        }
-
-        // 2) Load it
-        FXMLLoader loader = new FXMLLoader(fxmlUrl);
-        Parent waitingRoot = loader.load();
-
-        // 3) Swap the scene
-        Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-        Scene scene = new Scene(waitingRoot, 400, 300);
+    public void onPlayButtonClick(ActionEvent event) {
+        Navigator.getInstance().show(Navigator.View.WAITING);
+    }
 
-        stage.setTitle("Battleship – Finding Match");
-        stage.setScene(scene);
-        stage.show();
+    /**
+     * Called when the user clicks “PLAY VS COMPUTER.” Always available, no login needed.
+     * The computer places its fleet right away, so go straight to ship placement.
+     */
+    @FXML
+    public void onOfflineButtonClick(ActionEvent event) {
+        Game game = Game.createOfflineInstance(difficultyChoice.getValue());
+        game.joinQueue();
+        Navigator.getInstance().show(Navigator.View.SHIP_PLACEMENT);
     }
 
     /**
      * Called when the user clicks “LEADERBOARD.” Always available.
-     * Loads leaderboard-view.fxml.
+     * Shows the leaderboard view.
      */
     @FXML
-    public void onLeaderboardButtonClick(ActionEvent event) throws IOException {
-        // 1) Locate leaderboard-view.fxml
-        URL fxmlUrl = getClass().getResource("/pt/goncalo3/batalhanaval/fxml/leaderboard-view.fxml");
-        if (fxmlUrl == null) {
-            throw new RuntimeException(
-                    "Cannot find leaderboard-view.fxml at '/pt/goncalo3/batalhanaval/fxml/leaderboard-view.fxml'"
-            );
-        }
-
-        // 2) Load it
-        FXMLLoader loader = new FXMLLoader(fxmlUrl);
-        Parent leaderboardRoot = loader.load();
-
-        // 3) Swap the scene
-        Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-        Scene scene = new Scene(leaderboardRoot, 900, 650);
-
-
-        stage.setTitle("Battleship – Leaderboard");
-        stage.setScene(scene);
-        stage.show();
+    public void onLeaderboardButtonClick(ActionEvent event) {
+        Navigator.getInstance().show(Navigator.View.LEADERBOARD);
     }
 
     /**
@@ -189,6 +161,7 @@ public class HomeController implements Initializable {
      */
     @FXML
     public void onLogoutButtonClick(ActionEvent event) {
+        GameConnection.getInstance().close("User logged out");
         user.logout();
         updateButtonVisibility();
     }
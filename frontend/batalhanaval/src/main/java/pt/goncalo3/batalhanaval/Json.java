@@ -0,0 +1,32 @@
+package pt.goncalo3.batalhanaval;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Holder for the ObjectMapper shared by the whole client.
+ * ObjectMapper is thread-safe once configured and expensive to create,
+ * so one instance is built and warmed up for everyone.
+ */
+public final class Json {
+    // Server responses carry more fields than the client records declare
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private Json() {
+    }
+
+    /**
+     * Run a representative read and write so Jackson builds its serializers
+     * and deserializers before the first real message arrives.
+     */
+    public static void warmUp() {
+        try {
+            var node = MAPPER.readTree("{\"type\":\"attack_result\",\"x\":1,\"y\":2,\"result\":\"hit\"," +
+                    "\"ship\":{\"id\":0,\"posX\":1,\"posY\":2,\"length\":3,\"isHorizontal\":true}}");
+            MAPPER.writeValueAsString(node);
+        } catch (Exception e) {
+            System.err.println("JSON warm-up failed: " + e.getMessage());
+        }
+    }
+}
@@ -1,27 +1,67 @@
 package pt.goncalo3.batalhanaval;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.util.List;
 import java.util.ArrayList;
-import org.json.JSONObject;
-import org.json.JSONArray;
 
 /**
  * Leaderboard class to handle leaderboard-related operations
  */
 public class Leaderboard {
-    private static final String LEADERBOARD_ENDPOINT = ServerConfig.API_BASE_URL + "/leaderboard"; // Use ServerConfig and ensure /api path if needed
+    private static final String LEADERBOARD_PATH = "/leaderboard"; // Relative to ServerConfig.API_BASE_URL
+
+    private final ApiClient api = ApiClient.getInstance();
+
+    // Response body of GET /leaderboard; total is missing on servers without paging
+    record LeaderboardResponse(List<Row> leaderboard, int offset, Integer total) {
+    }
+
+    /**
+     * A slice of the leaderboard
+     * @param offset Index of the first row in the whole leaderboard
+     * @param rows The rows of the slice, sorted by rank
+     * @param total Number of players in the whole leaderboard
+     */
+    public record Page(int offset, List<Row> rows, int total) {
+    }
+
+    /**
+     * One player of the leaderboard as sent by the server. Immutable, so it can be shared between threads.
+     */
+    public record Row(String username,
+                      int wins,
+                      int losses,
+                      @JsonProperty("total_games") int totalGames,
+                      @JsonProperty("win_percentage") double winPercentage) {
+    }
 
-    private final HttpClient httpClient;
+    /**
+     * Rows of the leaderboard changed by finished games, pushed over the game WebSocket.
+     * Remove every changed player at its previous rank, then insert them at their new
+     * rank in ascending order to get the new leaderboard.
+     * @param total Number of players in the new leaderboard
+     * @param changes The changed players
+     */
+    public record Delta(int total, List<Change> changes) {
+    }
 
-    public Leaderboard() {
-        httpClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_1_1)
-                .build();
+    /**
+     * A player whose stats or rank changed
+     * @param rank New 1-based rank
+     * @param previousRank Rank before the change, or null if the player was not ranked
+     */
+    public record Change(String username,
+                         int wins,
+                         int losses,
+                         @JsonProperty("total_games") int totalGames,
+                         @JsonProperty("win_percentage") double winPercentage,
+                         int rank,
+                         @JsonProperty("previous_rank") Integer previousRank) {
+        public Row row() {
+            return new Row(username, wins, losses, totalGames, winPercentage);
+        }
     }
 
     /**
@@ -33,49 +73,9 @@ public class Leaderboard {
      */
     public List<LeaderboardEntry> getLeaderboard(int limit) 
             throws IOException, InterruptedException {
-        String url = LEADERBOARD_ENDPOINT + "?limit=" + limit;
-        
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("Content-Type", "application/json")
-                .header("Accept", "application/json")
-                .timeout(java.time.Duration.ofSeconds(30))
-                .GET()
-                .build();
-
-        System.out.println("Making leaderboard request to: " + url);
-
-        HttpResponse<String> response = httpClient.send(request,
-                HttpResponse.BodyHandlers.ofString());
-
-        System.out.println("Leaderboard response status: " + response.statusCode());
-        System.out.println("Leaderboard response body: " + response.body());
-
-        if (response.statusCode() == 200) {
-            JSONObject responseBody = new JSONObject(response.body());
-            JSONArray leaderboardArray = responseBody.getJSONArray("leaderboard");
-            
-            List<LeaderboardEntry> leaderboard = new ArrayList<>();
-            
-            for (int i = 0; i < leaderboardArray.length(); i++) {
-                JSONObject entry = leaderboardArray.getJSONObject(i);
-                
-                String username = entry.getString("username");
-                int wins = entry.optInt("wins", 0);
-                int losses = entry.optInt("losses", 0);
-                int totalGames = entry.optInt("total_games", 0);
-                double winPercentage = entry.optDouble("win_percentage", 0.0);
-                
-                LeaderboardEntry leaderboardEntry = new LeaderboardEntry(
-                    username, wins, losses, totalGames, winPercentage
-                );
-                leaderboard.add(leaderboardEntry);
-            }
-            
-            return leaderboard;
-        } else {
-            throw new IOException("Failed to fetch leaderboard: HTTP " + response.statusCode() + " - " + response.body());
-        }
+        List<LeaderboardEntry> leaderboard = toEntries(getPage(0, limit).rows(), 0);
+        System.out.println("Leaderboard entries received: " + leaderboard.size());
+        return leaderboard;
     }
 
     /**
@@ -87,4 +87,60 @@ public class Leaderboard {
     public List<LeaderboardEntry> getLeaderboard() throws IOException, InterruptedException {
         return getLeaderboard(10);
     }
+
+    /**
+     * Get one page of the leaderboard
+     * @param offset Index of the first player to retrieve
+     * @param limit Maximum number of players to retrieve
+     * @return The page
+     * @throws IOException If network issues occur
+     * @throws InterruptedException If request is interrupted
+     */
+    public Page getPage(int offset, int limit) throws IOException, InterruptedException {
+        return fetchPage(offset, limit, null, null).body();
+    }
+
+    /**
+     * Get one page of the leaderboard, unless the copy identified by the validators is still current
+     * @param offset Index of the first player to retrieve
+     * @param limit Maximum number of players to retrieve
+     * @param etag ETag of the copy already held, or null
+     * @param lastModified Last-Modified of the copy already held, or null
+     * @return The page and its validators, or no page if the held copy is still current
+     * @throws IOException If network issues occur
+     * @throws InterruptedException If request is interrupted
+     */
+    public ApiClient.Conditional<Page> fetchPage(int offset, int limit, String etag, String lastModified)
+            throws IOException, InterruptedException {
+        String path = LEADERBOARD_PATH + "?offset=" + offset + "&limit=" + limit;
+
+        System.out.println("Making leaderboard request to: " + path);
+
+        ApiClient.Conditional<LeaderboardResponse> response =
+                api.getConditional(path, LeaderboardResponse.class, null, etag, lastModified);
+        if (response.isNotModified()) {
+            return new ApiClient.Conditional<>(null, response.etag(), response.lastModified());
+        }
+        LeaderboardResponse body = response.body();
+        List<Row> rows = List.copyOf(body.leaderboard());
+        int total = body.total() != null ? body.total() : offset + rows.size();
+        return new ApiClient.Conditional<>(new Page(offset, rows, total), response.etag(), response.lastModified());
+    }
+
+    /**
+     * Create the table entries of the given rows
+     * @param rows Rows sorted by rank
+     * @param offset Index of the first row in the whole leaderboard
+     * @return One entry per row, ranked from offset + 1
+     */
+    public static List<LeaderboardEntry> toEntries(List<Row> rows, int offset) {
+        List<LeaderboardEntry> entries = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            entries.add(new LeaderboardEntry(
+                offset + i + 1, row.username(), row.wins(), row.losses(), row.totalGames(), row.winPercentage()
+            ));
+        }
+        return entries;
+    }
 }
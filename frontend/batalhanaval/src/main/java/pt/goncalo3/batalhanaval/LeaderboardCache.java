@@ -0,0 +1,206 @@
+package pt.goncalo3.batalhanaval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stale-while-revalidate cache of the first page of the leaderboard.
+ *
+ * {@link #peek()} returns whatever copy is held, however old, so the table can be shown
+ * at once; {@link #refresh()} revalidates it with a conditional request, so an unchanged
+ * leaderboard costs a 304 instead of a download. Concurrent refreshes share one request.
+ * Every new copy is saved to a small binary snapshot, read back on the next cold start.
+ */
+public class LeaderboardCache {
+    public static final int SIZE = LeaderboardPages.PAGE_SIZE;
+    // A copy younger than this is shown without revalidating it
+    private static final Duration TTL = Duration.ofSeconds(30);
+
+    private static final String SNAPSHOT_FILE = "leaderboard.bin";
+    private static final int SNAPSHOT_MAGIC = 0x4C424332; // "LBC2"
+
+    /**
+     * A copy of the first page of the leaderboard and the validators to revalidate it with
+     * @param page The first page, with the size of the whole leaderboard
+     * @param etag ETag sent by the server, or null
+     * @param lastModified Last-Modified sent by the server, or null
+     * @param fetchedAt When the copy was last confirmed by the server (epoch ms)
+     */
+    public record Snapshot(Leaderboard.Page page, String etag, String lastModified, long fetchedAt) {
+        public boolean isFresh() {
+            return System.currentTimeMillis() - fetchedAt < TTL.toMillis();
+        }
+    }
+
+    private static LeaderboardCache instance;
+
+    private final Leaderboard leaderboard = new Leaderboard();
+    private final AtomicReference<CompletableFuture<Snapshot>> inFlight = new AtomicReference<>();
+    private volatile Snapshot snapshot;
+    private volatile boolean diskLoaded;
+
+    private LeaderboardCache() {
+    }
+
+    // Get singleton instance
+    public static synchronized LeaderboardCache getInstance() {
+        if (instance == null) {
+            instance = new LeaderboardCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the copy held in memory, reading the snapshot from disk the first time
+     * @return The cached leaderboard, possibly stale, or null if there is none yet
+     */
+    public Snapshot peek() {
+        loadSnapshot();
+        return snapshot;
+    }
+
+    /**
+     * Revalidate the cached copy with the server. If a refresh is already running,
+     * its result is shared instead of sending a second request.
+     * @return Completes with the current copy, on a background thread
+     */
+    public CompletableFuture<Snapshot> refresh() {
+        while (true) {
+            CompletableFuture<Snapshot> running = inFlight.get();
+            if (running != null) {
+                return running;
+            }
+            CompletableFuture<Snapshot> mine = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, mine)) {
+                ApiClient.getInstance().getExecutor().execute(() -> {
+                    try {
+                        mine.complete(revalidate());
+                    } catch (Throwable e) {
+                        mine.completeExceptionally(e);
+                    } finally {
+                        inFlight.compareAndSet(mine, null);
+                    }
+                });
+                return mine;
+            }
+        }
+    }
+
+    /**
+     * Mark the held copy as out of date, e.g. after a live update changed the leaderboard.
+     * It is still returned by {@link #peek()} but revalidated the next time it is shown.
+     */
+    public void invalidate() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            snapshot = new Snapshot(current.page(), current.etag(), current.lastModified(), 0);
+        }
+    }
+
+    /**
+     * Read the on-disk snapshot if it has not been read yet. Called during warm-up,
+     * so the first visit to the leaderboard does not touch the disk on the FX thread.
+     */
+    public void loadSnapshot() {
+        if (diskLoaded) {
+            return;
+        }
+        synchronized (this) {
+            if (diskLoaded) {
+                return;
+            }
+            try {
+                Snapshot loaded = readSnapshot(AppData.file(SNAPSHOT_FILE));
+                if (snapshot == null) {
+                    snapshot = loaded;
+                }
+            } catch (NoSuchFileException e) {
+                // First run, nothing cached yet
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable leaderboard snapshot: " + e.getMessage());
+            }
+            diskLoaded = true;
+        }
+    }
+
+    private Snapshot revalidate() throws IOException, InterruptedException {
+        Snapshot current = peek();
+        ApiClient.Conditional<Leaderboard.Page> response = current == null
+                ? leaderboard.fetchPage(0, SIZE, null, null)
+                : leaderboard.fetchPage(0, SIZE, current.etag(), current.lastModified());
+
+        long now = System.currentTimeMillis();
+        Snapshot updated;
+        if (response.isNotModified()) {
+            System.out.println("Leaderboard not modified, keeping cached copy");
+            updated = new Snapshot(current.page(), current.etag(), current.lastModified(), now);
+            snapshot = updated;
+        } else {
+            updated = new Snapshot(response.body(), response.etag(), response.lastModified(), now);
+            snapshot = updated;
+            saveSnapshot(updated);
+        }
+        return updated;
+    }
+
+    private static void saveSnapshot(Snapshot snapshot) {
+        try {
+            AppData.writeAtomically(AppData.file(SNAPSHOT_FILE), stream -> {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeLong(snapshot.fetchedAt());
+                out.writeUTF(snapshot.etag() != null ? snapshot.etag() : "");
+                out.writeUTF(snapshot.lastModified() != null ? snapshot.lastModified() : "");
+                out.writeInt(snapshot.page().total());
+                out.writeInt(snapshot.page().rows().size());
+                for (Leaderboard.Row row : snapshot.page().rows()) {
+                    out.writeUTF(row.username());
+                    out.writeInt(row.wins());
+                    out.writeInt(row.losses());
+                    out.writeInt(row.totalGames());
+                    out.writeDouble(row.winPercentage());
+                }
+                out.flush();
+            });
+        } catch (IOException e) {
+            System.err.println("Failed to save leaderboard snapshot: " + e.getMessage());
+        }
+    }
+
+    private static Snapshot readSnapshot(Path file) throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("not a leaderboard snapshot");
+            }
+            long fetchedAt = in.readLong();
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+            int total = in.readInt();
+            int count = in.readInt();
+            if (count < 0 || count > SIZE) {
+                throw new IOException("bad entry count " + count);
+            }
+            List<Leaderboard.Row> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                rows.add(new Leaderboard.Row(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readDouble()));
+            }
+            return new Snapshot(new Leaderboard.Page(0, List.copyOf(rows), total),
+                    etag.isEmpty() ? null : etag,
+                    lastModified.isEmpty() ? null : lastModified,
+                    fetchedAt);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package pt.goncalo3.batalhanaval;
+
+import java.util.List;
+
+/**
+ * A page of the leaderboard stored column by column in primitive arrays.
+ *
+ * Holding a page costs one array per column instead of one object per row;
+ * {@link LeaderboardEntry} objects are only created for the rows asked for.
+ * Rows can be overwritten in place when live updates shift the leaderboard;
+ * a row whose data is not known any more has a null username.
+ */
+final class LeaderboardColumns {
+    private final int offset;
+    private int size;
+    private final String[] usernames;
+    private final int[] wins;
+    private final int[] losses;
+    private final int[] totalGames;
+    // Shown with one decimal, float is plenty
+    private final float[] winPercentages;
+
+    private LeaderboardColumns(int capacity, int offset) {
+        this.offset = offset;
+        usernames = new String[capacity];
+        wins = new int[capacity];
+        losses = new int[capacity];
+        totalGames = new int[capacity];
+        winPercentages = new float[capacity];
+    }
+
+    /**
+     * Copy the rows of a page into columns
+     * @param rows Rows sorted by rank
+     * @param offset Index of the first row in the whole leaderboard
+     * @return The page in columns
+     */
+    static LeaderboardColumns of(List<Leaderboard.Row> rows, int offset) {
+        return of(rows, offset, rows.size());
+    }
+
+    /**
+     * Copy the rows of a page into columns with room for more rows
+     * @param rows Rows sorted by rank
+     * @param offset Index of the first row in the whole leaderboard
+     * @param capacity Number of rows the page can hold
+     * @return The page in columns
+     */
+    static LeaderboardColumns of(List<Leaderboard.Row> rows, int offset, int capacity) {
+        LeaderboardColumns columns = new LeaderboardColumns(Math.max(capacity, rows.size()), offset);
+        for (int i = 0; i < rows.size(); i++) {
+            columns.set(i, rows.get(i));
+        }
+        return columns;
+    }
+
+    /**
+     * Get the number of rows, known or not
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the data of one row
+     * @param index Index of the row in the page
+     * @return The row, or null if it is past the end of the page or not known
+     */
+    Leaderboard.Row row(int index) {
+        if (index >= size || usernames[index] == null) {
+            return null;
+        }
+        return new Leaderboard.Row(usernames[index], wins[index], losses[index], totalGames[index], winPercentages[index]);
+    }
+
+    /**
+     * Overwrite one row, growing the page if needed
+     * @param index Index of the row in the page, below the capacity
+     * @param row The new data, or null if it is not known
+     */
+    void set(int index, Leaderboard.Row row) {
+        if (row == null) {
+            usernames[index] = null;
+        } else {
+            usernames[index] = row.username();
+            wins[index] = row.wins();
+            losses[index] = row.losses();
+            totalGames[index] = row.totalGames();
+            winPercentages[index] = (float) row.winPercentage();
+        }
+        size = Math.max(size, index + 1);
+    }
+
+    int capacity() {
+        return usernames.length;
+    }
+
+    boolean isKnown(int index) {
+        return index < size && usernames[index] != null;
+    }
+
+    /**
+     * Create the entry of one row
+     * @param index Index of the row in the page
+     * @return The entry, ranked by its position in the whole leaderboard
+     */
+    LeaderboardEntry entry(int index) {
+        return new LeaderboardEntry(offset + index + 1, usernames[index],
+                wins[index], losses[index], totalGames[index], winPercentages[index]);
+    }
+}
@@ -1,32 +1,32 @@
 package pt.goncalo3.batalhanaval;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
-import javafx.scene.Node;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TableColumn;
-import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleButton;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.stage.Stage;
 
-import java.io.IOException;
 import java.net.URL;
+import java.util.AbstractList;
 import java.util.ResourceBundle;
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller for the leaderboard page
  */
-public class LeaderboardController implements Initializable {
+public class LeaderboardController implements Initializable, Navigator.Lifecycle {
+    // Logs every query and live update with -Dbatalhanaval.debugLeaderboard=true
+    private static final boolean DEBUG = Boolean.getBoolean("batalhanaval.debugLeaderboard");
 
     @FXML private TableView<LeaderboardEntry> leaderboardTable;
     @FXML private TableColumn<LeaderboardEntry, Integer> rankColumn;
@@ -38,80 +38,264 @@ public class LeaderboardController implements Initializable {
     @FXML private Button backButton;
     @FXML private Label loadingLabel;
     @FXML private Label errorLabel;
+    @FXML private ToggleButton liveToggle;
+    @FXML private TextField searchField;
 
-    private final Leaderboard leaderboard = new Leaderboard();
-    private final ObservableList<LeaderboardEntry> leaderboardData = FXCollections.observableArrayList();
+    private final LeaderboardCache cache = LeaderboardCache.getInstance();
+    // The first page the table currently shows, to skip rebuilding it when a refresh changed nothing
+    private Leaderboard.Page shownPage;
+    // The whole leaderboard, paged from the server, shown when not searching or sorting
+    private ObservableList<LeaderboardEntry> pagedItems = FXCollections.observableArrayList();
+    // Every row seen so far, for searching and sorting without the server
+    private final LeaderboardIndex index = new LeaderboardIndex();
+    // Set while the table's items are being replaced, as that makes the table sort again
+    private boolean updatingItems;
+    private final GameConnection.EventListener deltaListener = this::onServerEvent;
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
         setupTableColumns();
+        leaderboardTable.setSortPolicy(table -> {
+            if (!updatingItems) {
+                updateItems();
+            }
+            return true;
+        });
+        searchField.textProperty().addListener((observable, oldText, newText) -> updateItems());
+    }
+
+    /**
+     * Show the cached copy at once every time the view is shown,
+     * and revalidate it in the background once it is older than the TTL
+     */
+    @Override
+    public void onShow() {
+        errorLabel.setVisible(false);
+        // Live updates come over the game connection, which needs a logged-in user
+        boolean canGoLive = User.getInstance().isAuthenticated();
+        liveToggle.setDisable(!canGoLive);
+        if (!canGoLive) {
+            liveToggle.setSelected(false);
+        }
+        setLive(liveToggle.isSelected());
+
+        LeaderboardCache.Snapshot cached = cache.peek();
+        if (cached != null) {
+            showPage(cached.page());
+            if (cached.isFresh()) {
+                loadingLabel.setVisible(false);
+                return;
+            }
+        }
         loadLeaderboard();
     }
 
     /**
-     * Setup table columns
+     * Stop live updates while the view is not shown
+     */
+    @Override
+    public void onHide() {
+        setLive(false);
+    }
+
+    /**
+     * Setup table columns. The observable wrappers are created by the cell value
+     * factories, so only for the rows on screen; placeholder rows show their rank only.
      */
     private void setupTableColumns() {
-        rankColumn.setCellValueFactory(new PropertyValueFactory<>("rank"));
-        usernameColumn.setCellValueFactory(new PropertyValueFactory<>("username"));
-        winsColumn.setCellValueFactory(new PropertyValueFactory<>("wins"));
-        lossesColumn.setCellValueFactory(new PropertyValueFactory<>("losses"));
-        totalGamesColumn.setCellValueFactory(new PropertyValueFactory<>("totalGames"));
-        winPercentageColumn.setCellValueFactory(new PropertyValueFactory<>("winPercentage"));
+        rankColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getRank()));
+        usernameColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getUsername()));
+        winsColumn.setCellValueFactory(cell -> statValue(cell.getValue(), cell.getValue().getWins()));
+        lossesColumn.setCellValueFactory(cell -> statValue(cell.getValue(), cell.getValue().getLosses()));
+        totalGamesColumn.setCellValueFactory(cell -> statValue(cell.getValue(), cell.getValue().getTotalGames()));
+        winPercentageColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getWinPercentageText()));
+        // Sorting is done by the index, which does not order by name
+        usernameColumn.setSortable(false);
+    }
 
-        leaderboardTable.setItems(leaderboardData);
+    private static ObservableValue<Integer> statValue(LeaderboardEntry entry, int value) {
+        return new ReadOnlyObjectWrapper<>(entry.isPlaceholder() ? null : value);
     }
 
     /**
-     * Load leaderboard data from the server
+     * Revalidate the leaderboard with the server, keeping the current rows on screen meanwhile
      */
     private void loadLeaderboard() {
         loadingLabel.setVisible(true);
         errorLabel.setVisible(false);
         
-        CompletableFuture.supplyAsync(() -> {
-            try {
-                return leaderboard.getLeaderboard(20); // Get top 20 players
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        }).thenAccept(leaderboardData -> {
+        cache.refresh().thenAccept(snapshot -> {
             Platform.runLater(() -> {
                 loadingLabel.setVisible(false);
-                if (leaderboardData != null && !leaderboardData.isEmpty()) {
-                    this.leaderboardData.clear();
-                    for (int i = 0; i < leaderboardData.size(); i++) {
-                        LeaderboardEntry entry = leaderboardData.get(i);
-                        entry.setRank(i + 1);
-                        this.leaderboardData.add(entry);
-                    }
-                } else {
-                    errorLabel.setText("No leaderboard data available");
-                    errorLabel.setVisible(true);
-                }
+                showPage(snapshot.page());
             });
         }).exceptionally(throwable -> {
+            Throwable cause = throwable.getCause() != null ? throwable.getCause() : throwable;
             Platform.runLater(() -> {
                 loadingLabel.setVisible(false);
-                errorLabel.setText("Failed to load leaderboard: " + throwable.getMessage());
+                errorLabel.setText("Failed to load leaderboard: " + cause.getMessage());
                 errorLabel.setVisible(true);
             });
             return null;
         });
     }
 
+    /**
+     * Show the whole leaderboard from its first page; the other pages are fetched as the user scrolls
+     */
+    private void showPage(Leaderboard.Page firstPage) {
+        if (firstPage.rows().isEmpty()) {
+            shownPage = firstPage;
+            pagedItems = FXCollections.observableArrayList();
+            updateItems();
+            errorLabel.setText("No leaderboard data available");
+            errorLabel.setVisible(true);
+            return;
+        }
+        errorLabel.setVisible(false);
+        if (firstPage == shownPage) {
+            return;
+        }
+        shownPage = firstPage;
+        index.addRows(firstPage.offset(), firstPage.rows());
+        LeaderboardPages pages = new LeaderboardPages(firstPage, error -> {
+            errorLabel.setText("Failed to load leaderboard: " + error.getMessage());
+            errorLabel.setVisible(true);
+        });
+        pages.setOnPageLoaded(page -> {
+            index.addRows(page.offset(), page.rows());
+            if (isIndexShown()) {
+                updateItems();
+            }
+        });
+        pagedItems = pages;
+        updateItems();
+    }
+
+    /**
+     * Check if the table shows the result of a search or sort instead of the paged leaderboard
+     */
+    private boolean isIndexShown() {
+        if (!searchField.getText().isBlank()) {
+            return true;
+        }
+        return !leaderboardTable.getSortOrder().isEmpty()
+                && !(leaderboardTable.getSortOrder().get(0) == rankColumn
+                        && rankColumn.getSortType() == TableColumn.SortType.ASCENDING);
+    }
+
+    /**
+     * Show the paged leaderboard, or the loaded rows matching the search in the chosen order
+     */
+    private void updateItems() {
+        ObservableList<LeaderboardEntry> items;
+        if (isIndexShown()) {
+            TableColumn<LeaderboardEntry, ?> column = leaderboardTable.getSortOrder().isEmpty()
+                    ? rankColumn : leaderboardTable.getSortOrder().get(0);
+            boolean descending = column.getSortType() == TableColumn.SortType.DESCENDING;
+            long start = System.nanoTime();
+            int[] slots = index.query(searchField.getText().strip(), sortKey(column), descending);
+            if (DEBUG) {
+                System.out.printf("Leaderboard query: %d of %d players in %.2f ms%n",
+                        slots.length, index.size(), (System.nanoTime() - start) / 1_000_000.0);
+            }
+            items = FXCollections.observableList(new AbstractList<>() {
+                @Override
+                public LeaderboardEntry get(int i) {
+                    return index.entry(slots[i]);
+                }
+
+                @Override
+                public int size() {
+                    return slots.length;
+                }
+            });
+        } else {
+            items = pagedItems;
+        }
+        if (leaderboardTable.getItems() != items) {
+            updatingItems = true;
+            try {
+                leaderboardTable.setItems(items);
+            } finally {
+                updatingItems = false;
+            }
+        }
+    }
+
+    private LeaderboardIndex.SortKey sortKey(TableColumn<LeaderboardEntry, ?> column) {
+        if (column == winsColumn) {
+            return LeaderboardIndex.SortKey.WINS;
+        } else if (column == lossesColumn) {
+            return LeaderboardIndex.SortKey.LOSSES;
+        } else if (column == totalGamesColumn) {
+            return LeaderboardIndex.SortKey.TOTAL_GAMES;
+        } else if (column == winPercentageColumn) {
+            return LeaderboardIndex.SortKey.WIN_PERCENTAGE;
+        }
+        return LeaderboardIndex.SortKey.RANK;
+    }
+
     /**
      * Go back to home page
      */
     @FXML
-    public void onBackButtonClick(ActionEvent event) throws IOException {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("fxml/home-view.fxml"));
-        Parent homeView = loader.load();
-
-        Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-        Scene scene = new Scene(homeView);
-        stage.setScene(scene);
-        stage.show();
+    public void onBackButtonClick(ActionEvent event) {
+        Navigator.getInstance().show(Navigator.View.HOME);
+    }
+
+    /**
+     * Turn live updates on or off
+     */
+    @FXML
+    public void onLiveToggle(ActionEvent event) {
+        setLive(liveToggle.isSelected());
+        if (liveToggle.isSelected()) {
+            // Catch up with what changed while live updates were off
+            loadLeaderboard();
+        }
+    }
+
+    private void setLive(boolean live) {
+        GameConnection connection = GameConnection.getInstance();
+        connection.removeEventListener(deltaListener);
+        if (live) {
+            connection.addEventListener(deltaListener);
+        }
+        connection.setLeaderboardSubscribed(live);
+    }
+
+    /**
+     * Called on a WebSocket thread for every server event
+     */
+    private void onServerEvent(String type, JsonNode message) {
+        if (!"leaderboard_delta".equals(type)) {
+            return;
+        }
+        try {
+            Leaderboard.Delta delta = Json.MAPPER.treeToValue(message, Leaderboard.Delta.class);
+            Platform.runLater(() -> applyDelta(delta));
+        } catch (JsonProcessingException e) {
+            System.err.println("Ignoring malformed leaderboard delta: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Apply a live update to the rows in place, or reload if it does not fit what is shown
+     */
+    private void applyDelta(Leaderboard.Delta delta) {
+        if (DEBUG) {
+            System.out.println("Leaderboard delta: " + delta.changes().size() + " changed, " + delta.total() + " players");
+        }
+        cache.invalidate();
+        index.applyDelta(delta);
+        if (pagedItems instanceof LeaderboardPages pages && pages.applyDelta(delta)) {
+            if (isIndexShown()) {
+                updateItems();
+            }
+            return;
+        }
+        loadLeaderboard();
     }
 
     /**
@@ -1,107 +1,86 @@
 package pt.goncalo3.batalhanaval;
 
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.StringProperty;
-
 /**
- * Represents a leaderboard entry with player statistics
+ * Represents a leaderboard entry with player statistics.
+ *
+ * Entries are immutable and hold plain values only: the table wraps the few
+ * values it displays in observable wrappers itself, and the win percentage is
+ * only formatted when a cell shows it.
  */
-public class LeaderboardEntry {
-    private final IntegerProperty rank = new SimpleIntegerProperty();
-    private final StringProperty username = new SimpleStringProperty();
-    private final IntegerProperty wins = new SimpleIntegerProperty();
-    private final IntegerProperty losses = new SimpleIntegerProperty();
-    private final IntegerProperty totalGames = new SimpleIntegerProperty();
-    private final StringProperty winPercentage = new SimpleStringProperty();
-
-    public LeaderboardEntry() {
-    }
+public final class LeaderboardEntry {
+    private static final String PLACEHOLDER_USERNAME = "Loading...";
 
-    public LeaderboardEntry(String username, int wins, int losses, int totalGames, double winPercentage) {
-        setUsername(username);
-        setWins(wins);
-        setLosses(losses);
-        setTotalGames(totalGames);
-        setWinPercentage(String.format("%.1f%%", winPercentage));
-    }
+    private final int rank;
+    private final String username;
+    private final int wins;
+    private final int losses;
+    private final int totalGames;
+    private final double winPercentage;
 
-    // Rank property
-    public IntegerProperty rankProperty() {
-        return rank;
+    public LeaderboardEntry(int rank, String username, int wins, int losses, int totalGames, double winPercentage) {
+        this.rank = rank;
+        this.username = username;
+        this.wins = wins;
+        this.losses = losses;
+        this.totalGames = totalGames;
+        this.winPercentage = winPercentage;
     }
 
-    public int getRank() {
-        return rank.get();
+    /**
+     * Create the entry shown for a row whose data is still being loaded
+     * @param rank Rank of the row
+     * @return An entry with the rank only
+     */
+    public static LeaderboardEntry placeholder(int rank) {
+        return new LeaderboardEntry(rank, PLACEHOLDER_USERNAME, 0, 0, 0, Double.NaN);
     }
 
-    public void setRank(int rank) {
-        this.rank.set(rank);
+    public boolean isPlaceholder() {
+        return Double.isNaN(winPercentage);
     }
 
-    // Username property
-    public StringProperty usernameProperty() {
-        return username;
+    public int getRank() {
+        return rank;
     }
 
     public String getUsername() {
-        return username.get();
-    }
-
-    public void setUsername(String username) {
-        this.username.set(username);
-    }
-
-    // Wins property
-    public IntegerProperty winsProperty() {
-        return wins;
+        return username;
     }
 
     public int getWins() {
-        return wins.get();
-    }
-
-    public void setWins(int wins) {
-        this.wins.set(wins);
-    }
-
-    // Losses property
-    public IntegerProperty lossesProperty() {
-        return losses;
+        return wins;
     }
 
     public int getLosses() {
-        return losses.get();
-    }
-
-    public void setLosses(int losses) {
-        this.losses.set(losses);
-    }
-
-    // Total games property
-    public IntegerProperty totalGamesProperty() {
-        return totalGames;
+        return losses;
     }
 
     public int getTotalGames() {
-        return totalGames.get();
-    }
-
-    public void setTotalGames(int totalGames) {
-        this.totalGames.set(totalGames);
+        return totalGames;
     }
 
-    // Win percentage property
-    public StringProperty winPercentageProperty() {
+    public double getWinPercentage() {
         return winPercentage;
     }
 
-    public String getWinPercentage() {
-        return winPercentage.get();
-    }
-
-    public void setWinPercentage(String winPercentage) {
-        this.winPercentage.set(winPercentage);
+    /**
+     * Format the win percentage for display, e.g. "66.7%"
+     * @return The formatted percentage, or an empty string for a placeholder
+     */
+    public String getWinPercentageText() {
+        return formatPercentage(winPercentage);
+    }
+
+    /**
+     * Format a percentage with one decimal, without the cost of String.format
+     * @param percentage The percentage (0-100)
+     * @return The formatted percentage, or an empty string if it is NaN
+     */
+    static String formatPercentage(double percentage) {
+        if (Double.isNaN(percentage)) {
+            return "";
+        }
+        long tenths = Math.round(percentage * 10);
+        return (tenths / 10) + "." + Math.abs(tenths % 10) + "%";
     }
 }
@@ -0,0 +1,517 @@
+package pt.goncalo3.batalhanaval;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Client-side index over every leaderboard row the client has seen, for search-as-you-type
+ * and sorting without asking the server.
+ *
+ * Rows are kept in columns, one slot per player, in the order they were first seen:
+ * <ul>
+ *   <li>usernames are indexed by a burst trie: a node keeps the slots of its usernames in
+ *       a small list and only splits into children (one per next character, case-insensitive)
+ *       once the list grows past {@link #BURST_LIMIT}, so the trie stays shallow and small
+ *       even when many names share a long prefix;</li>
+ *   <li>for each {@link SortKey}, the slots are kept sorted by that key, together with the
+ *       position of every slot in that order. Rows that arrive are only marked as pending;
+ *       before the next query they are sorted on their own and merged into the orders,
+ *       so a query never sorts the whole index.</li>
+ * </ul>
+ * A query puts the matching slots in order either by sorting them on their positions,
+ * when there are few of them, or by one scan over the order when there are many.
+ * Live updates shift ranks in place; the relative order of the rows that did not change
+ * is kept, so the sorted orders stay valid.
+ *
+ * Must only be used on the FX thread.
+ */
+public class LeaderboardIndex {
+    // Upper bound on the rows kept, so the index cannot grow without limit
+    public static final int MAX_ROWS = 500_000;
+    private static final int BURST_LIMIT = 64;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Orders the rows can be sorted in
+     */
+    public enum SortKey {
+        RANK, WINS, LOSSES, TOTAL_GAMES, WIN_PERCENTAGE
+    }
+
+    private int count;
+    private String[] usernames = new String[INITIAL_CAPACITY];
+    private int[] ranks = new int[INITIAL_CAPACITY];
+    private int[] wins = new int[INITIAL_CAPACITY];
+    private int[] losses = new int[INITIAL_CAPACITY];
+    private int[] totalGames = new int[INITIAL_CAPACITY];
+    // Raw bits of the float percentage: for values >= 0 they sort like the floats
+    private int[] winPercentageBits = new int[INITIAL_CAPACITY];
+
+    private final Node root = new Node(0);
+    // Slots sorted by each key, largest first, ties broken by rank (indexed by SortKey.ordinal())
+    private final int[][] orders = new int[SortKey.values().length][];
+    private final int[] orderSizes = new int[SortKey.values().length];
+    // Position of every slot in each order (indexed by SortKey.ordinal(), then slot)
+    private final int[][] positions = new int[SortKey.values().length][];
+    // Scratch for large queries: stamps[position] == stamp marks a matching slot
+    private int[] stamps = new int[0];
+    private int stamp;
+    // Slots added or changed since the orders were last merged
+    private final BitSet pending = new BitSet();
+    private boolean full;
+
+    public LeaderboardIndex() {
+        for (SortKey key : SortKey.values()) {
+            orders[key.ordinal()] = new int[0];
+            positions[key.ordinal()] = new int[0];
+        }
+    }
+
+    /**
+     * Get the number of indexed players
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Add or update the rows of a page
+     * @param offset Index of the first row in the whole leaderboard
+     * @param rows The rows, sorted by rank
+     */
+    public void addRows(int offset, List<Leaderboard.Row> rows) {
+        for (int i = 0; i < rows.size(); i++) {
+            put(rows.get(i), offset + i + 1);
+        }
+    }
+
+    /**
+     * Apply a live update: shift the ranks of the other players and update the changed ones
+     * @param delta The update pushed by the server
+     */
+    public void applyDelta(Leaderboard.Delta delta) {
+        int[] changedSlots = new int[delta.changes().size()];
+        for (int c = 0; c < changedSlots.length; c++) {
+            changedSlots[c] = find(delta.changes().get(c).username());
+        }
+        // Same order as LeaderboardPages.applyDelta: removals by descending previous rank,
+        // then insertions by ascending new rank
+        List<Leaderboard.Change> removals = delta.changes().stream()
+                .filter(change -> change.previousRank() != null)
+                .sorted((a, b) -> Integer.compare(b.previousRank(), a.previousRank()))
+                .toList();
+        for (Leaderboard.Change change : removals) {
+            int removedRank = change.previousRank();
+            for (int slot = 0; slot < count; slot++) {
+                if (ranks[slot] > removedRank) {
+                    ranks[slot]--;
+                }
+            }
+        }
+        List<Leaderboard.Change> insertions = delta.changes().stream()
+                .sorted((a, b) -> Integer.compare(a.rank(), b.rank()))
+                .toList();
+        for (Leaderboard.Change change : insertions) {
+            for (int slot = 0; slot < count; slot++) {
+                if (ranks[slot] >= change.rank()) {
+                    ranks[slot]++;
+                }
+            }
+        }
+        for (int c = 0; c < changedSlots.length; c++) {
+            Leaderboard.Change change = delta.changes().get(c);
+            if (changedSlots[c] >= 0) {
+                set(changedSlots[c], change.row(), change.rank());
+            } else {
+                put(change.row(), change.rank());
+            }
+        }
+    }
+
+    /**
+     * Find the players whose username starts with the prefix, sorted by a key
+     * @param prefix Case-insensitive username prefix; empty matches everyone
+     * @param key The key to sort by
+     * @param descending true for the largest values first
+     * @return The matching slots, in order; read them with {@link #entry(int)}
+     */
+    public int[] query(String prefix, SortKey key, boolean descending) {
+        mergePending();
+        int[] order = orders[key.ordinal()];
+        int size = orderSizes[key.ordinal()];
+        int[] result;
+        if (prefix.isEmpty()) {
+            result = Arrays.copyOf(order, size);
+        } else {
+            int[] matches = matchSlots(prefix);
+            result = matches.length < size / 16
+                    ? sortByPosition(matches, positions[key.ordinal()])
+                    : filterOrder(matches, order, size, positions[key.ordinal()]);
+        }
+        // Orders hold the largest values first, except rank which holds the best (lowest) first
+        if (key == SortKey.RANK ? descending : !descending) {
+            reverse(result);
+        }
+        return result;
+    }
+
+    /**
+     * Put a few slots in order by sorting them on their position in the order
+     */
+    private static int[] sortByPosition(int[] slots, int[] position) {
+        long[] packed = new long[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            packed[i] = ((long) position[slots[i]] << 32) | slots[i];
+        }
+        Arrays.sort(packed);
+        int[] result = new int[slots.length];
+        for (int i = 0; i < packed.length; i++) {
+            result[i] = (int) packed[i];
+        }
+        return result;
+    }
+
+    /**
+     * Put many slots in order by marking their positions and scanning the order once
+     */
+    private int[] filterOrder(int[] slots, int[] order, int size, int[] position) {
+        if (stamps.length < size) {
+            stamps = new int[order.length];
+            stamp = 0;
+        }
+        stamp++;
+        for (int slot : slots) {
+            stamps[position[slot]] = stamp;
+        }
+        int[] result = new int[slots.length];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (stamps[i] == stamp) {
+                result[n++] = order[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Create the table entry of a slot
+     * @param slot A slot returned by {@link #query}
+     * @return The entry
+     */
+    public LeaderboardEntry entry(int slot) {
+        return new LeaderboardEntry(ranks[slot], usernames[slot], wins[slot], losses[slot],
+                totalGames[slot], Float.intBitsToFloat(winPercentageBits[slot]));
+    }
+
+    private void put(Leaderboard.Row row, int rank) {
+        int slot = find(row.username());
+        if (slot >= 0) {
+            set(slot, row, rank);
+            return;
+        }
+        if (count == MAX_ROWS) {
+            if (!full) {
+                full = true;
+                System.out.println("Leaderboard index full, not indexing more than " + MAX_ROWS + " players");
+            }
+            return;
+        }
+        ensureCapacity(count + 1);
+        slot = count++;
+        usernames[slot] = row.username();
+        set(slot, row, rank);
+        insert(root, slot);
+    }
+
+    private void set(int slot, Leaderboard.Row row, int rank) {
+        ranks[slot] = rank;
+        wins[slot] = row.wins();
+        losses[slot] = row.losses();
+        totalGames[slot] = row.totalGames();
+        winPercentageBits[slot] = Float.floatToIntBits((float) Math.max(0, row.winPercentage()));
+        pending.set(slot);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= usernames.length) {
+            return;
+        }
+        int capacity = Math.min(Math.max(usernames.length * 2, needed), MAX_ROWS);
+        usernames = Arrays.copyOf(usernames, capacity);
+        ranks = Arrays.copyOf(ranks, capacity);
+        wins = Arrays.copyOf(wins, capacity);
+        losses = Arrays.copyOf(losses, capacity);
+        totalGames = Arrays.copyOf(totalGames, capacity);
+        winPercentageBits = Arrays.copyOf(winPercentageBits, capacity);
+    }
+
+    // ---- Sorted orders ----
+
+    /**
+     * Merge the slots added or changed since the last merge into every sorted order
+     */
+    private void mergePending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int[] changed = pending.stream().toArray();
+        for (SortKey key : SortKey.values()) {
+            int[] values = column(key);
+            int[] order = orders[key.ordinal()];
+            int[] position = positions[key.ordinal()];
+            int size = orderSizes[key.ordinal()];
+            int[] added = sortSlots(changed, values);
+
+            // Drop the changed slots from the current order, moving the runs between them
+            int[] removed = new int[changed.length];
+            int removedCount = 0;
+            for (int slot : changed) {
+                if (slot < size) {
+                    removed[removedCount++] = position[slot];
+                }
+            }
+            Arrays.sort(removed, 0, removedCount);
+            int kept = removedCount > 0 ? removed[0] : size;
+            for (int r = 0; r < removedCount; r++) {
+                int runEnd = r + 1 < removedCount ? removed[r + 1] : size;
+                System.arraycopy(order, removed[r] + 1, order, kept, runEnd - removed[r] - 1);
+                kept += runEnd - removed[r] - 1;
+            }
+
+            // Merge them back sorted, from the end: each one is placed by a binary search and
+            // the run after it moved at once, so the order is neither reallocated nor compared
+            // element by element
+            int total = kept + added.length;
+            if (total > order.length) {
+                order = Arrays.copyOf(order, Math.max(total, order.length * 2));
+            }
+            int end = kept;
+            for (int j = added.length - 1; j >= 0; j--) {
+                int insertAt = firstAfter(order, end, added[j], values);
+                System.arraycopy(order, insertAt, order, insertAt + j + 1, end - insertAt);
+                order[insertAt + j] = added[j];
+                end = insertAt;
+            }
+            // Only the positions from the first changed slot on moved
+            int from = Math.min(end, removedCount > 0 ? removed[0] : size);
+            orders[key.ordinal()] = order;
+            orderSizes[key.ordinal()] = total;
+
+            if (position.length < usernames.length) {
+                position = Arrays.copyOf(position, usernames.length);
+                positions[key.ordinal()] = position;
+            }
+            for (int p = from; p < total; p++) {
+                position[order[p]] = p;
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Find the first position before the end whose slot sorts after the given slot
+     * @param end The order is sorted, without changed slots, before this position
+     * @return The position, or end if every slot before it sorts first
+     */
+    private int firstAfter(int[] order, int end, int slot, int[] values) {
+        int low = 0, high = end;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(order[middle], slot, values) > 0) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the column a key sorts on
+     * @return The values, or null for {@link SortKey#RANK}
+     */
+    private int[] column(SortKey key) {
+        return switch (key) {
+            case RANK -> null;
+            case WINS -> wins;
+            case LOSSES -> losses;
+            case TOTAL_GAMES -> totalGames;
+            case WIN_PERCENTAGE -> winPercentageBits;
+        };
+    }
+
+    /**
+     * Compare two slots: larger values first, then lower rank
+     * @param values The column to sort on, or null to sort by rank only
+     */
+    private int compare(int a, int b, int[] values) {
+        if (values != null && values[a] != values[b]) {
+            return values[a] > values[b] ? -1 : 1;
+        }
+        return Integer.compare(ranks[a], ranks[b]);
+    }
+
+    /**
+     * Sort the few slots added or changed since the last merge
+     */
+    private int[] sortSlots(int[] slots, int[] values) {
+        return Arrays.stream(slots).boxed()
+                .sorted((a, b) -> compare(a, b, values))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static void reverse(int[] values) {
+        for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    // ---- Burst trie ----
+
+    /**
+     * A trie node. Until it splits it is a container holding the slots of every username
+     * below it; once split it only holds the usernames that end exactly at its depth.
+     */
+    private static final class Node {
+        final int depth;
+        int[] slots = new int[4];
+        int slotCount;
+        boolean split;
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+
+        Node(int depth) {
+            this.depth = depth;
+        }
+
+        void add(int slot) {
+            if (slotCount == slots.length) {
+                slots = Arrays.copyOf(slots, slotCount * 2);
+            }
+            slots[slotCount++] = slot;
+        }
+
+        Node child(char key, boolean create) {
+            int position = Arrays.binarySearch(keys, key);
+            if (position >= 0) {
+                return children[position];
+            }
+            if (!create) {
+                return null;
+            }
+            position = -position - 1;
+            Node node = new Node(depth + 1);
+            keys = insertAt(keys, position, key);
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, position);
+            grown[position] = node;
+            System.arraycopy(children, position, grown, position + 1, children.length - position);
+            children = grown;
+            return node;
+        }
+
+        private static char[] insertAt(char[] array, int position, char value) {
+            char[] grown = new char[array.length + 1];
+            System.arraycopy(array, 0, grown, 0, position);
+            grown[position] = value;
+            System.arraycopy(array, position, grown, position + 1, array.length - position);
+            return grown;
+        }
+    }
+
+    private void insert(Node node, int slot) {
+        String name = usernames[slot];
+        while (node.split && node.depth < name.length()) {
+            node = node.child(Character.toLowerCase(name.charAt(node.depth)), true);
+        }
+        node.add(slot);
+        if (!node.split && node.slotCount > BURST_LIMIT) {
+            burst(node);
+        }
+    }
+
+    /**
+     * Split a container that grew too large into one child per next character
+     */
+    private void burst(Node node) {
+        int[] slots = Arrays.copyOf(node.slots, node.slotCount);
+        node.split = true;
+        node.slots = new int[4];
+        node.slotCount = 0;
+        for (int slot : slots) {
+            insert(node, slot);
+        }
+    }
+
+    /**
+     * Find the slot of a username
+     * @return The slot, or -1 if the player is not indexed
+     */
+    private int find(String username) {
+        Node node = root;
+        while (node.split && node.depth < username.length()) {
+            node = node.child(Character.toLowerCase(username.charAt(node.depth)), false);
+            if (node == null) {
+                return -1;
+            }
+        }
+        for (int i = 0; i < node.slotCount; i++) {
+            if (usernames[node.slots[i]].equals(username)) {
+                return node.slots[i];
+            }
+        }
+        return -1;
+    }
+
+    private int[] matchSlots(String prefix) {
+        Node node = root;
+        while (node.split && node.depth < prefix.length()) {
+            node = node.child(Character.toLowerCase(prefix.charAt(node.depth)), false);
+            if (node == null) {
+                return new int[0];
+            }
+        }
+        IntCollector matches = new IntCollector();
+        if (node.split) {
+            // Every username below a split node at the prefix depth matches
+            collect(node, matches);
+        } else {
+            for (int i = 0; i < node.slotCount; i++) {
+                int slot = node.slots[i];
+                if (usernames[slot].regionMatches(true, 0, prefix, 0, prefix.length())) {
+                    matches.add(slot);
+                }
+            }
+        }
+        return matches.toArray();
+    }
+
+    private static void collect(Node node, IntCollector matches) {
+        for (int i = 0; i < node.slotCount; i++) {
+            matches.add(node.slots[i]);
+        }
+        for (Node child : node.children) {
+            collect(child, matches);
+        }
+    }
+
+    private static final class IntCollector {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
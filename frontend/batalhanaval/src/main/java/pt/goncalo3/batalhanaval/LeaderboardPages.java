@@ -0,0 +1,287 @@
+package pt.goncalo3.batalhanaval;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Virtual list of the whole leaderboard for the TableView.
+ *
+ * The list reports the size of the whole leaderboard, but only holds the pages the
+ * table has asked for, at most {@link #MAX_PAGES} of them (least recently used pages
+ * are dropped). A row whose page is not loaded yet is shown as a placeholder while
+ * the page is fetched in the background; the rows are replaced once it arrives.
+ * Pages are held in columns ({@link LeaderboardColumns}) and entries are only
+ * created for the rows the table asks for, so memory use does not depend on the
+ * number of players.
+ *
+ * Must only be used on the FX thread.
+ */
+public class LeaderboardPages extends ObservableListBase<LeaderboardEntry> {
+    public static final int PAGE_SIZE = 50;
+    public static final int MAX_PAGES = 20;
+    // Do not ask for more pages for a while after a failure, the table asks again on every layout
+    private static final long RETRY_DELAY_MS = 5_000;
+
+    private final Leaderboard leaderboard = new Leaderboard();
+    private final Consumer<Throwable> onError;
+    private Consumer<Leaderboard.Page> onPageLoaded;
+    private int size;
+    // Bumped by every live update, so pages requested before it are fetched again
+    private int version;
+    private final Map<Integer, LeaderboardColumns> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, LeaderboardColumns> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final Set<Integer> loading = new HashSet<>();
+    private long retryAt;
+
+    /**
+     * Create the list from the first page of the leaderboard
+     * @param firstPage The first page, with the size of the whole leaderboard
+     * @param onError Called on the FX thread when a page cannot be loaded
+     */
+    public LeaderboardPages(Leaderboard.Page firstPage, Consumer<Throwable> onError) {
+        this.onError = onError;
+        this.size = Math.max(firstPage.total(), firstPage.rows().size());
+        pages.put(0, LeaderboardColumns.of(firstPage.rows(), 0, PAGE_SIZE));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public LeaderboardEntry get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int pageIndex = index / PAGE_SIZE;
+        LeaderboardColumns page = pages.get(pageIndex);
+        if (page == null) {
+            requestPage(pageIndex);
+            return LeaderboardEntry.placeholder(index + 1);
+        }
+        int offset = index % PAGE_SIZE;
+        if (offset >= page.size()) {
+            // The leaderboard shrank since the page was loaded
+            return LeaderboardEntry.placeholder(index + 1);
+        }
+        if (!page.isKnown(offset)) {
+            // Shifted in from a page that was not loaded by a live update
+            requestPage(pageIndex);
+            return LeaderboardEntry.placeholder(index + 1);
+        }
+        return page.entry(offset);
+    }
+
+    /**
+     * Set a callback for every page that arrives, e.g. to index its rows.
+     * Not called for the first page, which the creator of the list already has.
+     * @param onPageLoaded Called on the FX thread with the page, or null
+     */
+    public void setOnPageLoaded(Consumer<Leaderboard.Page> onPageLoaded) {
+        this.onPageLoaded = onPageLoaded;
+    }
+
+    /**
+     * Get the number of pages currently held
+     * @return At most {@link #MAX_PAGES}
+     */
+    public int getLoadedPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Apply a live update in place: the changed players are removed at their previous
+     * rank and inserted at their new rank, shifting the loaded rows in between.
+     * Rows shifted in from pages that are not loaded become unknown and are fetched again.
+     * @param delta The update pushed by the server
+     * @return false if the update does not fit this list, which should then be reloaded
+     */
+    public boolean applyDelta(Leaderboard.Delta delta) {
+        List<Leaderboard.Change> removals = new ArrayList<>();
+        for (Leaderboard.Change change : delta.changes()) {
+            if (change.previousRank() != null) {
+                removals.add(change);
+            }
+        }
+        removals.sort(Comparator.comparingInt((Leaderboard.Change change) -> change.previousRank()).reversed());
+        List<Leaderboard.Change> insertions = new ArrayList<>(delta.changes());
+        insertions.sort(Comparator.comparingInt(Leaderboard.Change::rank));
+
+        int newSize = size - removals.size() + insertions.size();
+        if (newSize != delta.total()) {
+            return false;
+        }
+        for (Leaderboard.Change change : removals) {
+            if (change.previousRank() < 1 || change.previousRank() > size) {
+                return false;
+            }
+        }
+        for (Leaderboard.Change change : insertions) {
+            if (change.rank() < 1 || change.rank() > newSize) {
+                return false;
+            }
+        }
+
+        int oldSize = size;
+        int firstChanged = Integer.MAX_VALUE;
+        for (Leaderboard.Change change : removals) {
+            int index = change.previousRank() - 1;
+            removeAt(index);
+            firstChanged = Math.min(firstChanged, index);
+        }
+        for (Leaderboard.Change change : insertions) {
+            int index = change.rank() - 1;
+            insertAt(index, change.row());
+            firstChanged = Math.min(firstChanged, index);
+        }
+        version++;
+
+        // Tell the table which of the rows it may show changed
+        beginChange();
+        int common = Math.min(oldSize, size);
+        for (int pageIndex : loadedPages()) {
+            int from = Math.max(firstChanged, pageIndex * PAGE_SIZE);
+            int to = Math.min(common, (pageIndex + 1) * PAGE_SIZE);
+            for (int i = from; i < to; i++) {
+                nextSet(i, LeaderboardEntry.placeholder(i + 1));
+            }
+        }
+        if (size > oldSize) {
+            nextAdd(oldSize, size);
+        } else if (size < oldSize) {
+            List<LeaderboardEntry> removed = new ArrayList<>();
+            for (int i = size; i < oldSize; i++) {
+                removed.add(LeaderboardEntry.placeholder(i + 1));
+            }
+            nextRemove(size, removed);
+        }
+        endChange();
+        return true;
+    }
+
+    /**
+     * Remove the row at the index: the rows after it move up by one
+     */
+    private void removeAt(int index) {
+        for (int pageIndex : loadedPages()) {
+            LeaderboardColumns page = pages.get(pageIndex);
+            int start = pageIndex * PAGE_SIZE;
+            int end = Math.min(start + page.capacity(), size);
+            for (int i = Math.max(index, start); i < end; i++) {
+                page.set(i - start, rowAt(i + 1));
+            }
+        }
+        size--;
+    }
+
+    /**
+     * Insert a row at the index: the rows from it move down by one
+     */
+    private void insertAt(int index, Leaderboard.Row row) {
+        size++;
+        List<Integer> descending = loadedPages();
+        Collections.reverse(descending);
+        for (int pageIndex : descending) {
+            LeaderboardColumns page = pages.get(pageIndex);
+            int start = pageIndex * PAGE_SIZE;
+            int end = Math.min(start + page.capacity(), size);
+            for (int i = end - 1; i > index && i >= start; i--) {
+                page.set(i - start, rowAt(i - 1));
+            }
+        }
+        LeaderboardColumns target = pages.get(index / PAGE_SIZE);
+        if (target != null) {
+            target.set(index % PAGE_SIZE, row);
+        }
+    }
+
+    /**
+     * Get the data of a row
+     * @return The row, or null if its page is not loaded or it is not known
+     */
+    Leaderboard.Row rowAt(int index) {
+        if (index >= size) {
+            return null;
+        }
+        LeaderboardColumns page = pages.get(index / PAGE_SIZE);
+        return page != null ? page.row(index % PAGE_SIZE) : null;
+    }
+
+    private List<Integer> loadedPages() {
+        List<Integer> loaded = new ArrayList<>(pages.keySet());
+        Collections.sort(loaded);
+        return loaded;
+    }
+
+    /**
+     * Hold a page as if the table had asked for it and it had just arrived
+     * @param page The page, starting at a multiple of {@link #PAGE_SIZE}
+     */
+    void addPage(Leaderboard.Page page) {
+        int pageIndex = page.offset() / PAGE_SIZE;
+        loading.add(pageIndex);
+        pageLoaded(pageIndex, page, LeaderboardColumns.of(page.rows(), page.offset(), PAGE_SIZE), version);
+    }
+
+    private void requestPage(int pageIndex) {
+        if (loading.contains(pageIndex) || System.currentTimeMillis() < retryAt) {
+            return;
+        }
+        loading.add(pageIndex);
+        int offset = pageIndex * PAGE_SIZE;
+        int requestVersion = version;
+        ApiClient.getInstance().getExecutor().execute(() -> {
+            try {
+                Leaderboard.Page page = leaderboard.getPage(offset, PAGE_SIZE);
+                LeaderboardColumns columns = LeaderboardColumns.of(page.rows(), offset, PAGE_SIZE);
+                Platform.runLater(() -> pageLoaded(pageIndex, page, columns, requestVersion));
+            } catch (Exception e) {
+                Platform.runLater(() -> pageFailed(pageIndex, e));
+            }
+        });
+    }
+
+    private void pageLoaded(int pageIndex, Leaderboard.Page page, LeaderboardColumns columns, int requestVersion) {
+        loading.remove(pageIndex);
+        if (requestVersion == version) {
+            pages.put(pageIndex, columns);
+            if (onPageLoaded != null) {
+                onPageLoaded.accept(page);
+            }
+        }
+        // Otherwise the page is out of date; the placeholders make the table ask for it again
+
+        // Tell the table the placeholders of the page were replaced
+        int from = pageIndex * PAGE_SIZE;
+        int to = Math.min(from + PAGE_SIZE, size);
+        beginChange();
+        for (int i = from; i < to; i++) {
+            nextSet(i, LeaderboardEntry.placeholder(i + 1));
+        }
+        endChange();
+    }
+
+    private void pageFailed(int pageIndex, Exception error) {
+        loading.remove(pageIndex);
+        retryAt = System.currentTimeMillis() + RETRY_DELAY_MS;
+        System.err.println("Failed to load leaderboard page " + pageIndex + ": " + error.getMessage());
+        if (onError != null) {
+            onError.accept(error);
+        }
+    }
+}
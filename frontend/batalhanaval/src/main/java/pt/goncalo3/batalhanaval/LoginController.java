@@ -1,25 +1,25 @@
 package pt.goncalo3.batalhanaval;
 
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Hyperlink;
 import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.VBox;
-import javafx.stage.Stage;
 
-import java.io.IOException;
-import java.net.URL;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Controller for the login/registration page of the Battleship game
  */
-public class LoginController {
+public class LoginController implements Navigator.Lifecycle {
 
     @FXML private Label titleLabel;
     @FXML private TextField usernameField;
@@ -30,9 +30,14 @@ public class LoginController {
     @FXML private Button submitButton;
     @FXML private Label switchModeLabel;
     @FXML private Hyperlink switchModeLink;
+    @FXML private ProgressIndicator progressIndicator;
+
+    // Maximum time a login/registration may take before the form gives up on it
+    private static final Duration AUTH_DEADLINE = Duration.ofSeconds(15);
 
     private boolean isRegistrationMode = false;
     private final User user = User.getInstance();
+    private CompletableFuture<Boolean> pendingRequest;
 
     /**
      * Initialize the controller.
@@ -43,11 +48,37 @@ public class LoginController {
         updateUIForMode();
     }
 
+    /**
+     * The cached view is shown again: start from an empty form.
+     */
+    @Override
+    public void onShow() {
+        cancelPendingRequest();
+        usernameField.clear();
+        emailField.clear();
+        passwordField.clear();
+        hideErrorMessage();
+    }
+
+    /**
+     * Leaving the view aborts any login/registration still in flight.
+     */
+    @Override
+    public void onHide() {
+        cancelPendingRequest();
+    }
+
     /**
      * Handle the submit button click (login or register).
+     * While a request is in flight the same button cancels it.
      */
     @FXML
     public void onSubmitButtonClick(ActionEvent event) {
+        if (pendingRequest != null) {
+            cancelPendingRequest();
+            return;
+        }
+
         hideErrorMessage();
 
         String username = usernameField.getText().trim();
@@ -58,41 +89,95 @@ public class LoginController {
             return;
         }
 
-        try {
-            boolean success;
+        CompletableFuture<Boolean> request;
+        if (isRegistrationMode) {
+            String email = emailField.getText().trim();
+            if (email.isEmpty()) {
+                showErrorMessage("Please enter your email address");
+                return;
+            }
 
-            if (isRegistrationMode) {
-                String email = emailField.getText().trim();
-                if (email.isEmpty()) {
-                    showErrorMessage("Please enter your email address");
-                    return;
-                }
+            // Registration returns a token/user data so no explicit login needed afterward
+            request = user.registerAsync(username, email, password, AUTH_DEADLINE);
+        } else {
+            request = user.loginAsync(username, password, AUTH_DEADLINE);
+        }
 
-                success = user.register(username, email, password);
-                // Registration returns a token/user data so no explicit login needed afterward
-            } else {
-                success = user.login(username, password);
+        pendingRequest = request;
+        setBusy(true);
+        request.whenComplete((success, error) -> Platform.runLater(() -> {
+            // Ignore results of requests that were cancelled or replaced in the meantime
+            if (pendingRequest != request) {
+                return;
             }
+            pendingRequest = null;
+            setBusy(false);
+            onAuthenticationCompleted(Boolean.TRUE.equals(success), error);
+        }));
+    }
 
-            if (success) {
-                System.out.println("Authentication successful, navigating to home page...");
-                navigateToHomePage();
+    /**
+     * Show the outcome of a finished login/registration request (FX thread).
+     */
+    private void onAuthenticationCompleted(boolean success, Throwable error) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+            String errorMessage;
+            if (cause instanceof TimeoutException) {
+                errorMessage = "The server took too long to respond. Please try again.";
             } else {
-                String errorMessage = user.getLastErrorMessage();
+                errorMessage = user.getLastErrorMessage();
                 if (errorMessage == null || errorMessage.isEmpty()) {
-                    errorMessage = isRegistrationMode
-                            ? "Registration failed. Please try again."
-                            : "Login failed. Check your credentials.";
+                    errorMessage = "Connection error: " + cause.getMessage();
                 }
-                showErrorMessage(errorMessage);
             }
-        } catch (IOException | InterruptedException e) {
+            showErrorMessage(errorMessage);
+            cause.printStackTrace();
+            return;
+        }
+
+        if (success) {
+            System.out.println("Authentication successful, navigating to home page...");
+            navigateToHomePage();
+        } else {
             String errorMessage = user.getLastErrorMessage();
             if (errorMessage == null || errorMessage.isEmpty()) {
-                errorMessage = "Connection error: " + e.getMessage();
+                errorMessage = isRegistrationMode
+                        ? "Registration failed. Please try again."
+                        : "Login failed. Check your credentials.";
             }
             showErrorMessage(errorMessage);
-            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Abort the request in flight, if any, and unlock the form.
+     */
+    private void cancelPendingRequest() {
+        if (pendingRequest != null) {
+            CompletableFuture<Boolean> request = pendingRequest;
+            pendingRequest = null;
+            request.cancel(true);
+            setBusy(false);
+        }
+    }
+
+    /**
+     * Lock the form and show the progress indicator while a request is in flight.
+     */
+    private void setBusy(boolean busy) {
+        usernameField.setDisable(busy);
+        emailField.setDisable(busy);
+        passwordField.setDisable(busy);
+        switchModeLink.setDisable(busy);
+        progressIndicator.setVisible(busy);
+        progressIndicator.setManaged(busy);
+        if (busy) {
+            submitButton.setText("Cancel");
+        } else {
+            updateUIForMode();
         }
     }
 
@@ -109,36 +194,8 @@ public class LoginController {
      * Navigate back to the home page (triggered by the "Back to Home" hyperlink).
      */
     @FXML
-    public void onBackToHomeClick(ActionEvent event) throws IOException {
-        // 1) Locate home-view.fxml via its absolute classpath location
-        URL fxmlUrl = getClass().getResource("/pt/goncalo3/batalhanaval/fxml/home-view.fxml");
-        if (fxmlUrl == null) {
-            throw new RuntimeException(
-                    "Cannot find home-view.fxml at '/pt/goncalo3/batalhanaval/fxml/home-view.fxml'"
-            );
-        }
-
-        // 2) Load the Home scene
-        FXMLLoader loader = new FXMLLoader(fxmlUrl);
-        Parent homeRoot = loader.load();
-
-        // 3) Get the HomeController and refresh its UI (so buttons/username update correctly)
-        HomeController homeController = loader.getController();
-        homeController.refreshUI();
-
-        // 4) Replace the current Scene with the Home scene
-        Stage stage = (Stage) submitButton.getScene().getWindow();
-        Scene scene = new Scene(homeRoot, 600, 800);
-
-        // 5) Attach your stylesheet via absolute path
-        URL cssUrl = getClass().getResource("/pt/goncalo3/batalhanaval/styles.css");
-        if (cssUrl != null) {
-            scene.getStylesheets().add(cssUrl.toExternalForm());
-        }
-
-        stage.setTitle("Battleship");
-        stage.setScene(scene);
-        stage.show();
+    public void onBackToHomeClick(ActionEvent event) {
+        Navigator.getInstance().show(Navigator.View.HOME);
     }
 
     /**
@@ -174,31 +231,9 @@ public class LoginController {
     /**
      * After a successful login or registration, navigate to the home page.
      */
-    private void navigateToHomePage() throws IOException {
-        // Exactly the same logic as onBackToHomeClick:
-        URL fxmlUrl = getClass().getResource("/pt/goncalo3/batalhanaval/fxml/home-view.fxml");
-        if (fxmlUrl == null) {
-            throw new RuntimeException(
-                    "Cannot find home-view.fxml at '/pt/goncalo3/batalhanaval/fxml/home-view.fxml'"
-            );
-        }
-        FXMLLoader loader = new FXMLLoader(fxmlUrl);
-        Parent root = loader.load();
-
-        HomeController homeController = loader.getController();
-        homeController.refreshUI();
-
-        Stage stage = (Stage) submitButton.getScene().getWindow();
-        Scene scene = new Scene(root, 600, 800);
-
-        URL cssUrl = getClass().getResource("/pt/goncalo3/batalhanaval/styles.css");
-        if (cssUrl != null) {
-            scene.getStylesheets().add(cssUrl.toExternalForm());
-        }
-
-        stage.setTitle("Battleship");
-        stage.setScene(scene);
-        stage.show();
+    private void navigateToHomePage() {
+        // The home controller refreshes its buttons/username when shown
+        Navigator.getInstance().show(Navigator.View.HOME);
     }
 
     /**
@@ -0,0 +1,262 @@
+package pt.goncalo3.batalhanaval;
+
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Group;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Central navigation for the application window.
+ *
+ * Every view is loaded from FXML at most once and its root is kept in a cache.
+ * Switching views swaps the root of a single {@link Scene} instead of parsing
+ * the FXML again and building a new Scene each time. Controllers that need to
+ * reset their state when shown again implement {@link Lifecycle}.
+ */
+public class Navigator {
+    private static final String FXML_BASE = "/pt/goncalo3/batalhanaval/fxml/";
+
+    /**
+     * All the views of the application with their window title and preferred size
+     */
+    public enum View {
+        HOME("home-view.fxml", "Battleship", 400, 700),
+        LOGIN("login-view.fxml", "Battleship – Login", 400, 600),
+        LEADERBOARD("leaderboard-view.fxml", "Battleship – Leaderboard", 900, 650),
+        WAITING("waiting-view.fxml", "Battleship – Finding Match", 400, 300),
+        SHIP_PLACEMENT("ship-placement-view.fxml", "Battleship – Place Your Ships", 800, 900),
+        PLAYING("playing.fxml", "Battleship – Playing", 800, 900);
+
+        private final String fxml;
+        private final String title;
+        private final double width;
+        private final double height;
+
+        View(String fxml, String title, double width, double height) {
+            this.fxml = fxml;
+            this.title = title;
+            this.width = width;
+            this.height = height;
+        }
+
+        public String getFxml() {
+            return fxml;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    /**
+     * Hooks for controllers whose cached view is shown more than once
+     */
+    public interface Lifecycle {
+        /**
+         * Called right before the view becomes the root of the scene.
+         * Reset any state left over from the previous time the view was shown.
+         */
+        void onShow();
+
+        /**
+         * Called when another view replaces this one.
+         */
+        default void onHide() {
+        }
+    }
+
+    /**
+     * A loaded FXML hierarchy and its controller
+     */
+    private record LoadedView(Parent root, Object controller) {
+    }
+
+    private static Navigator instance;
+
+    private final Map<View, LoadedView> cache = new EnumMap<>(View.class);
+    private Stage stage;
+    private Scene scene;
+    private View currentView;
+
+    private Navigator() {
+    }
+
+    // Get singleton instance
+    public static Navigator getInstance() {
+        if (instance == null) {
+            instance = new Navigator();
+        }
+        return instance;
+    }
+
+    /**
+     * Attach the navigator to the primary stage and show the first view.
+     * @param stage The primary stage of the application
+     * @param firstView The view shown when the window opens
+     */
+    public void init(Stage stage, View firstView) {
+        this.stage = stage;
+        LoadedView loaded = getOrLoad(firstView);
+        scene = new Scene(loaded.root(), firstView.width, firstView.height);
+        currentView = firstView;
+        if (loaded.controller() instanceof Lifecycle lifecycle) {
+            lifecycle.onShow();
+        }
+        stage.setTitle(firstView.getTitle());
+        stage.setScene(scene);
+    }
+
+    /**
+     * Switch to the given view
+     * @param view The view to show
+     * @return The controller of the view
+     */
+    public <C> C show(View view) {
+        return show(view, null);
+    }
+
+    /**
+     * Switch to the given view, letting the caller configure the controller first
+     * @param view The view to show
+     * @param beforeShow Called with the controller before its reset hook runs (may be null)
+     * @return The controller of the view
+     */
+    @SuppressWarnings("unchecked")
+    public <C> C show(View view, Consumer<C> beforeShow) {
+        if (scene == null) {
+            throw new IllegalStateException("Navigator has not been initialized with a stage");
+        }
+
+        long start = System.nanoTime();
+        boolean cached = cache.containsKey(view);
+        LoadedView next = getOrLoad(view);
+
+        if (currentView != null) {
+            LoadedView previous = cache.get(currentView);
+            if (previous != null && previous.controller() instanceof Lifecycle lifecycle) {
+                lifecycle.onHide();
+            }
+        }
+
+        C controller = (C) next.controller();
+        if (beforeShow != null) {
+            beforeShow.accept(controller);
+        }
+        if (controller instanceof Lifecycle lifecycle) {
+            lifecycle.onShow();
+        }
+
+        scene.setRoot(next.root());
+        stage.setTitle(view.getTitle());
+        resizeFor(view);
+        currentView = view;
+
+        double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+        System.out.printf("Navigator: switched to %s in %.2f ms (%s)%n",
+                view, elapsedMs, cached ? "cached" : "loaded");
+        return controller;
+    }
+
+    /**
+     * Load views ahead of time so the first switch to them is a cache hit.
+     * FXML parsing and controller initialization run on the given executor;
+     * the loaded roots are then styled and put in the cache on the FX thread,
+     * one view per pulse so the window stays responsive.
+     * @param executor The executor to parse the FXML on
+     * @param views The views to preload
+     * @return Completes on the FX thread once every view is cached
+     */
+    public CompletableFuture<Void> preload(Executor executor, View... views) {
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[views.length];
+        for (int i = 0; i < views.length; i++) {
+            View view = views[i];
+            tasks[i] = CompletableFuture.supplyAsync(() -> load(view), executor)
+                    .thenAcceptAsync(loaded -> {
+                        // The user may have navigated there while we were loading
+                        if (!cache.containsKey(view)) {
+                            applyStyles(loaded.root());
+                            cache.put(view, loaded);
+                        }
+                    }, Platform::runLater);
+        }
+        return CompletableFuture.allOf(tasks);
+    }
+
+    /**
+     * Get the view currently shown
+     * @return The current view, or null before {@link #init}
+     */
+    public View getCurrentView() {
+        return currentView;
+    }
+
+    /**
+     * Get the primary stage
+     * @return The stage the navigator switches views on
+     */
+    public Stage getStage() {
+        return stage;
+    }
+
+    private LoadedView getOrLoad(View view) {
+        LoadedView loaded = cache.get(view);
+        if (loaded == null) {
+            loaded = load(view);
+            cache.put(view, loaded);
+        }
+        return loaded;
+    }
+
+    private LoadedView load(View view) {
+        URL fxmlUrl = getClass().getResource(FXML_BASE + view.getFxml());
+        if (fxmlUrl == null) {
+            throw new RuntimeException("Cannot find " + view.getFxml() + " at '" + FXML_BASE + view.getFxml() + "'");
+        }
+        try {
+            FXMLLoader loader = new FXMLLoader(fxmlUrl);
+            Parent root = loader.load();
+            return new LoadedView(root, loader.getController());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load " + view.getFxml(), e);
+        }
+    }
+
+    /**
+     * Apply CSS to a root that is not shown yet, so stylesheets are parsed and
+     * control skins are created before the view is first displayed.
+     */
+    private static void applyStyles(Parent root) {
+        Scene offscreen = new Scene(root);
+        root.applyCss();
+        // Release the root so it can become the root of the main scene later
+        offscreen.setRoot(new Group());
+    }
+
+    /**
+     * Resize the window so the scene gets the preferred size of the view,
+     * keeping the size of the window decorations into account.
+     */
+    private void resizeFor(View view) {
+        if (!stage.isShowing() || stage.isMaximized() || stage.isFullScreen()) {
+            return;
+        }
+        double decorationWidth = stage.getWidth() - scene.getWidth();
+        double decorationHeight = stage.getHeight() - scene.getHeight();
+        if (scene.getWidth() != view.width) {
+            stage.setWidth(view.width + decorationWidth);
+        }
+        if (scene.getHeight() != view.height) {
+            stage.setHeight(view.height + decorationHeight);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package pt.goncalo3.batalhanaval;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A computer opponent that stands in for the game server: it takes the messages the
+ * client would send over the WebSocket and answers with the same events the server
+ * sends, in the same order, so {@link Game} and the controllers cannot tell the
+ * difference.
+ *
+ * Everything runs on one daemon thread, "ai-opponent": the messages of the player are
+ * handled there in order, and the computer's moves are computed there, each within the
+ * compute budget, so the FX thread never waits for them. The events go back through
+ * the same {@link GameConnection.MessageHandler} as the server's.
+ */
+public class OfflineOpponent implements Game.Transport {
+    /**
+     * Compute budget per move, -Dbatalhanaval.aiBudgetMs to change it
+     */
+    public static final Duration DEFAULT_BUDGET = Duration.ofMillis(Long.getLong("batalhanaval.aiBudgetMs", 250));
+
+    // Pause before each move of the computer, so the player can follow them
+    private static final long MOVE_DELAY_MILLIS = 500;
+
+    private final ObjectMapper objectMapper = Json.MAPPER;
+    private final ShotStrategy.Level level;
+    private final Duration budget;
+    private final GameConnection.MessageHandler handler;
+    private final ScheduledExecutorService executor;
+    private final SplittableRandom random;
+    private final ShotStrategy strategy;
+
+    // State of the match, only touched on the executor thread
+    private List<Ship> fleet;           // The computer's ships
+    private List<Ship> playerShips;     // Where the player placed theirs
+    private TargetBoard board;          // What the computer knows of the player's board
+    private boolean playerStarts;
+    private boolean playerTurn;
+    private boolean over;
+
+    private volatile boolean open = true;
+
+    /**
+     * Create an opponent
+     * @param level How the computer picks its shots
+     * @param budget Compute time allowed per move
+     * @param handler Receives the events, as the server would send them
+     */
+    public OfflineOpponent(ShotStrategy.Level level, Duration budget, GameConnection.MessageHandler handler) {
+        this.level = level;
+        this.budget = budget;
+        this.handler = handler;
+        this.random = new SplittableRandom();
+        this.strategy = level.create(random.nextLong());
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-opponent");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get the name shown to the player as their opponent
+     */
+    public String getName() {
+        return "Computer (" + level.getLabel() + ")";
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void send(String message) {
+        if (!open) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                receive(objectMapper.readTree(message));
+            } catch (Exception e) {
+                System.out.println("=== OFFLINE OPPONENT ERROR ===");
+                e.printStackTrace();
+                System.out.println("==============================");
+                handler.onError(e);
+            }
+        });
+    }
+
+    @Override
+    public void close(String reason) {
+        if (!open) {
+            return;
+        }
+        open = false;
+        executor.shutdownNow();
+        System.out.println("Offline game closed: " + reason);
+    }
+
+    /**
+     * Handle a message of the player, as the server does
+     */
+    private void receive(JsonNode message) {
+        switch (message.get("type").asText()) {
+            case "join_queue":
+                fleet = FleetPlacer.random(random);
+                board = TargetBoard.forFleet();
+                playerShips = null;
+                playerStarts = random.nextBoolean();
+                over = false;
+                deliver(event("start_game").put("opponent", getName()));
+                break;
+
+            case "ships_data":
+                playerShips = new ArrayList<>();
+                for (JsonNode shipNode : message.get("ships")) {
+                    playerShips.add(new Ship(playerShips.size(), shipNode.get("posX").asInt(),
+                            shipNode.get("posY").asInt(), shipNode.get("length").asInt(),
+                            shipNode.get("isHorizontal").asBoolean()));
+                }
+                deliver(event("ships_accepted"));
+                // The computer's fleet is already placed, so the game starts right away
+                playerTurn = playerStarts;
+                if (playerTurn) {
+                    deliver(event("your_turn"));
+                } else {
+                    deliver(event("opponent_turn"));
+                    scheduleMove();
+                }
+                break;
+
+            case "attack":
+                playerAttack(message.get("x").asInt(), message.get("y").asInt());
+                break;
+
+            case "leave_queue":
+                close("Player left");
+                break;
+
+            default:
+                System.out.println("Offline opponent ignored message: " + message);
+                break;
+        }
+    }
+
+    private void playerAttack(int x, int y) {
+        if (playerShips == null || !playerTurn || over) {
+            return;
+        }
+        Ship hitShip = shipAt(fleet, x, y);
+        boolean sunkBefore = hitShip != null && hitShip.isDestroyed();
+        if (hitShip != null) {
+            hitShip.hit(x, y);
+        }
+        deliver(event("attack_result").put("x", x).put("y", y).put("result", hitShip != null ? "hit" : "miss"));
+
+        if (hitShip != null && !sunkBefore && hitShip.isDestroyed()) {
+            ObjectNode shipNode = objectMapper.createObjectNode();
+            shipNode.put("id", fleet.indexOf(hitShip));
+            shipNode.put("posX", hitShip.getPosX());
+            shipNode.put("posY", hitShip.getPosY());
+            shipNode.put("length", hitShip.getLength());
+            shipNode.put("isHorizontal", hitShip.isHorizontal());
+            ObjectNode destroyed = event("ship_destroyed");
+            destroyed.set("ship", shipNode);
+            deliver(destroyed);
+        }
+
+        if (hitShip != null) {
+            if (allSunk(fleet)) {
+                over = true;
+                deliver(event("you_win"));
+            } else {
+                deliver(event("your_turn"));
+            }
+        } else {
+            playerTurn = false;
+            deliver(event("opponent_turn"));
+            scheduleMove();
+        }
+    }
+
+    private void scheduleMove() {
+        if (open) {
+            executor.schedule(this::computerMove, MOVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Pick a shot within the budget and fire it at the player's fleet
+     */
+    private void computerMove() {
+        if (!open || over || playerTurn) {
+            return;
+        }
+        long start = System.nanoTime();
+        int cell;
+        try {
+            cell = strategy.nextShot(board, random, start + budget.toNanos());
+        } catch (RuntimeException e) {
+            System.out.println("Computer strategy failed, shooting at random: " + e);
+            cell = ShotStrategy.randomShot(board, random, start);
+        }
+        System.out.printf("Computer move (%s): %.1f ms%n", level.getLabel(), (System.nanoTime() - start) / 1_000_000.0);
+
+        int x = cell % Fleet.BOARD_SIZE;
+        int y = cell / Fleet.BOARD_SIZE;
+        Ship hitShip = shipAt(playerShips, x, y);
+        deliver(event("opponent_attack").put("x", x).put("y", y).put("result", hitShip != null ? "hit" : "miss"));
+
+        if (hitShip == null) {
+            board.miss(x, y);
+            playerTurn = true;
+            deliver(event("your_turn"));
+            return;
+        }
+        board.hit(x, y);
+        hitShip.hit(x, y);
+        if (hitShip.isDestroyed()) {
+            // The server tells only the attacker, which is the computer here
+            board.sunk(hitShip);
+        }
+        if (allSunk(playerShips)) {
+            over = true;
+            deliver(loseEvent());
+        } else {
+            deliver(event("opponent_turn"));
+            scheduleMove();
+        }
+    }
+
+    /**
+     * The defeat of the player, with the computer's fleet revealed
+     */
+    private ObjectNode loseEvent() {
+        var shipsArray = objectMapper.createArrayNode();
+        for (Ship ship : fleet) {
+            var shipNode = objectMapper.createObjectNode();
+            shipNode.put("posX", ship.getPosX());
+            shipNode.put("posY", ship.getPosY());
+            shipNode.put("length", ship.getLength());
+            shipNode.put("isHorizontal", ship.isHorizontal());
+            shipsArray.add(shipNode);
+        }
+        ObjectNode lose = event("you_lose");
+        lose.set("opponentShips", shipsArray);
+        return lose;
+    }
+
+    private ObjectNode event(String type) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("type", type);
+        return node;
+    }
+
+    private void deliver(ObjectNode event) {
+        if (!open) {
+            return;
+        }
+        try {
+            handler.onMessage(objectMapper.writeValueAsString(event));
+        } catch (Exception e) {
+            handler.onError(e);
+        }
+    }
+
+    private static Ship shipAt(List<Ship> ships, int x, int y) {
+        for (Ship ship : ships) {
+            if (ship.isAt(x, y)) {
+                return ship;
+            }
+        }
+        return null;
+    }
+
+    private static boolean allSunk(List<Ship> ships) {
+        for (Ship ship : ships) {
+            if (!ship.isDestroyed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,323 @@
+package pt.goncalo3.batalhanaval;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Precomputed heatmaps of the early game, looked up instead of computed.
+ *
+ * The first shots of every match start from the same empty board with the same fleet,
+ * so their heatmaps can be computed once, offline and with far more samples than a
+ * move can afford (see OpeningBookGenerator in the benchmarks). A book 4 shots deep
+ * ships as a resource and is copied on the first run to the data directory, as
+ * opening-book.bin, since a file inside the jar or the jlink image cannot be mapped.
+ * The file is mapped as a {@link MemorySegment} for the whole run: a header, then a table of {@link #ENTRY} slots addressed by the hash of
+ * the board, with linear probing. A lookup hashes the board and reads a slot or two,
+ * whatever the size of the book.
+ *
+ * Boards that are rotations or mirrors of each other have the same heatmap, rotated or
+ * mirrored. The key of a board is the smallest of the hashes of its 8 symmetric
+ * versions, and the entry holds the heatmap of that version, so each opening is stored
+ * once. Densities are stored per cell as a fraction of the highest one, in 1/255ths.
+ * A book file that cannot be used (from another version, or for another fleet) is
+ * replaced by the bundled one; without a usable book every lookup misses.
+ */
+public class OpeningBook {
+    private static final String FILE = "opening-book.bin";
+    private static final int MAGIC = 0x424F4F4B; // "BOOK"
+    private static final int VERSION = 1;
+    private static final int LEVELS = 255;
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfFloat FLOAT = ValueLayout.JAVA_FLOAT.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    static final StructLayout HEADER = MemoryLayout.structLayout(
+            INT.withName("magic"),
+            INT.withName("version"),
+            INT.withName("slots"),      // A power of two
+            INT.withName("depth"),      // Shots deep the book goes
+            LONG.withName("entries"),
+            LONG.withName("fleet")      // See fleetSignature()
+    );
+
+    /**
+     * One board: 112 bytes
+     */
+    static final StructLayout ENTRY = MemoryLayout.structLayout(
+            LONG.withName("key"),       // 0 for an empty slot
+            FLOAT.withName("scale"),    // Highest density of the heatmap
+            MemoryLayout.sequenceLayout(Fleet.CELLS, ValueLayout.JAVA_BYTE).withName("cells")
+    );
+
+    private static final long HEADER_SIZE = HEADER.byteSize();
+    private static final long ENTRY_SIZE = ENTRY.byteSize();
+    private static final long MAGIC_AT = offset(HEADER, "magic");
+    private static final long VERSION_AT = offset(HEADER, "version");
+    private static final long SLOTS_AT = offset(HEADER, "slots");
+    private static final long DEPTH_AT = offset(HEADER, "depth");
+    private static final long ENTRIES_AT = offset(HEADER, "entries");
+    private static final long FLEET_AT = offset(HEADER, "fleet");
+    private static final long KEY = offset(ENTRY, "key");
+    private static final long SCALE = offset(ENTRY, "scale");
+    private static final long CELLS_AT = offset(ENTRY, "cells");
+
+    /**
+     * The key of a board and the symmetry that turns it into the stored version
+     * @param key Canonical hash, never 0
+     * @param symmetry Index for {@link TargetBoard#symmetry(int)}
+     */
+    record Key(long key, int symmetry) {
+    }
+
+    private static OpeningBook instance;
+
+    private final MemorySegment table;  // Empty when there is no usable book
+    private final int slots;
+    private final int depth;
+    private final long entries;
+
+    private OpeningBook(MemorySegment table, int slots, int depth, long entries) {
+        this.table = table;
+        this.slots = slots;
+        this.depth = depth;
+        this.entries = entries;
+    }
+
+    // Get singleton instance
+    public static synchronized OpeningBook getInstance() {
+        if (instance == null) {
+            instance = load();
+        }
+        return instance;
+    }
+
+    private static long offset(StructLayout layout, String name) {
+        return layout.byteOffset(PathElement.groupElement(name));
+    }
+
+    /**
+     * Map the book of the data directory, copying the bundled one there if it is
+     * missing or cannot be used, or make an empty one
+     */
+    private static OpeningBook load() {
+        try {
+            Path path = AppData.file(FILE);
+            if (Files.exists(path)) {
+                try {
+                    return open(path);
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Replacing opening book: " + e.getMessage());
+                }
+            }
+            if (installBundled(path)) {
+                return open(path);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Opening book unavailable: " + e.getMessage());
+        }
+        return new OpeningBook(MemorySegment.NULL, 0, 0, 0);
+    }
+
+    /**
+     * Copy the book shipped with the application to a file
+     * @return false if the application ships no book
+     */
+    private static boolean installBundled(Path path) throws IOException {
+        try (InputStream in = OpeningBook.class.getResourceAsStream(FILE)) {
+            if (in == null) {
+                return false;
+            }
+            AppData.writeAtomically(path, in::transferTo);
+            System.out.println("Installed opening book to " + path);
+            return true;
+        }
+    }
+
+    /**
+     * Map a book file; it stays mapped until the book is garbage collected
+     * @param path The book file
+     * @return The book
+     * @throws IOException If the file cannot be read or is not a book for this fleet
+     */
+    static OpeningBook open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MemorySegment file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
+            if (file.byteSize() < HEADER_SIZE || file.get(INT, MAGIC_AT) != MAGIC || file.get(INT, VERSION_AT) != VERSION) {
+                throw new IOException("Not an opening book: " + path);
+            }
+            if (file.get(LONG, FLEET_AT) != fleetSignature()) {
+                throw new IOException("Opening book made for another fleet: " + path);
+            }
+            int slots = file.get(INT, SLOTS_AT);
+            if (Integer.bitCount(slots) != 1 || file.byteSize() != HEADER_SIZE + slots * ENTRY_SIZE) {
+                throw new IOException("Opening book truncated: " + path);
+            }
+            OpeningBook book = new OpeningBook(file.asSlice(HEADER_SIZE), slots, file.get(INT, DEPTH_AT), file.get(LONG, ENTRIES_AT));
+            System.out.println("Opening book: " + book.entries + " boards, " + book.depth + " shots deep");
+            return book;
+        }
+    }
+
+    /**
+     * Get the number of boards in the book
+     */
+    public long size() {
+        return entries;
+    }
+
+    /**
+     * Get the precomputed heatmap of a board
+     * @param board The board; it is only read
+     * @return The heatmap, or null if the board is not in the book
+     */
+    public DensityTargeting.Heatmap lookup(TargetBoard board) {
+        if (entries == 0 || board.shots() > depth) {
+            return null;
+        }
+        Key key = key(board);
+        long mask = slots - 1;
+        for (long slot = key.key() & mask; ; slot = (slot + 1) & mask) {
+            long at = slot * ENTRY_SIZE;
+            long stored = table.get(LONG, at + KEY);
+            if (stored == 0) {
+                return null;
+            }
+            if (stored == key.key()) {
+                int[] symmetry = TargetBoard.symmetry(key.symmetry());
+                double scale = table.get(FLOAT, at + SCALE) / LEVELS;
+                double[] density = new double[Fleet.CELLS];
+                for (int cell = 0; cell < Fleet.CELLS; cell++) {
+                    int level = Byte.toUnsignedInt(table.get(ValueLayout.JAVA_BYTE, at + CELLS_AT + symmetry[cell]));
+                    density[cell] = level * scale;
+                }
+                return DensityTargeting.heatmapOf(density, board);
+            }
+        }
+    }
+
+    /**
+     * Write a book
+     * @param path The file to replace
+     * @param depth Shots deep the book goes
+     * @param heatmaps Heatmap per canonical key, each in the orientation of its key
+     * @throws IOException If the file cannot be written
+     */
+    static void write(Path path, int depth, Map<Long, double[]> heatmaps) throws IOException {
+        int slots = Integer.highestOneBit(Math.max(1, heatmaps.size()) * 2 - 1) * 2;  // Load factor at most 1/2
+        long mask = slots - 1;
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment file = arena.allocate(HEADER_SIZE + slots * ENTRY_SIZE, Long.BYTES);
+            file.set(INT, MAGIC_AT, MAGIC);
+            file.set(INT, VERSION_AT, VERSION);
+            file.set(INT, SLOTS_AT, slots);
+            file.set(INT, DEPTH_AT, depth);
+            file.set(LONG, ENTRIES_AT, heatmaps.size());
+            file.set(LONG, FLEET_AT, fleetSignature());
+            MemorySegment table = file.asSlice(HEADER_SIZE);
+            for (Map.Entry<Long, double[]> entry : heatmaps.entrySet()) {
+                long slot = entry.getKey() & mask;
+                while (table.get(LONG, slot * ENTRY_SIZE + KEY) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                long at = slot * ENTRY_SIZE;
+                double[] density = entry.getValue();
+                double max = 0;
+                for (double value : density) {
+                    max = Math.max(max, value);
+                }
+                table.set(LONG, at + KEY, entry.getKey());
+                table.set(FLOAT, at + SCALE, (float) max);
+                for (int cell = 0; cell < Fleet.CELLS; cell++) {
+                    int level = max == 0 ? 0 : (int) Math.round(density[cell] / max * LEVELS);
+                    table.set(ValueLayout.JAVA_BYTE, at + CELLS_AT + cell, (byte) level);
+                }
+            }
+            byte[] bytes = file.toArray(ValueLayout.JAVA_BYTE);
+            AppData.writeAtomically(path, out -> out.write(bytes));
+        }
+    }
+
+    /**
+     * Get the canonical key of a board: the smallest hash over its symmetric versions
+     */
+    static Key key(TargetBoard board) {
+        long[] boards = {board.missLow(), board.missHigh(), board.hitLow(), board.hitHigh(), board.sunkLow(), board.sunkHigh()};
+        long ships = 0;
+        for (int length = 1; length <= Fleet.BOARD_SIZE; length++) {
+            ships = ships << 4 | board.remaining(length);
+        }
+        long best = 0;
+        int bestSymmetry = 0;
+        long[] mapped = new long[boards.length];
+        for (int s = 0; s < TargetBoard.SYMMETRIES; s++) {
+            int[] symmetry = TargetBoard.symmetry(s);
+            for (int i = 0; i < boards.length; i += 2) {
+                map(boards[i], boards[i + 1], symmetry, mapped, i);
+            }
+            long hash = ships;
+            for (long value : mapped) {
+                hash = mix(hash ^ value);
+            }
+            hash = hash == 0 ? 1 : hash;
+            if (s == 0 || Long.compareUnsigned(hash, best) < 0) {
+                best = hash;
+                bestSymmetry = s;
+            }
+        }
+        return new Key(best, bestSymmetry);
+    }
+
+    /**
+     * Move every cell of a bitboard through a symmetry
+     */
+    private static void map(long low, long high, int[] symmetry, long[] out, int at) {
+        long mappedLow = 0, mappedHigh = 0;
+        for (int half = 0; half < 2; half++) {
+            long bits = half == 0 ? low : high;
+            while (bits != 0) {
+                int cell = symmetry[half * 64 + Long.numberOfTrailingZeros(bits)];
+                if (cell < 64) {
+                    mappedLow |= 1L << cell;
+                } else {
+                    mappedHigh |= 1L << (cell - 64);
+                }
+                bits &= bits - 1;
+            }
+        }
+        out[at] = mappedLow;
+        out[at + 1] = mappedHigh;
+    }
+
+    /**
+     * Finalizer of SplitMix64: every input bit affects every output bit
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Identify the fleet a book was made for: the lengths of its ships, 4 bits each
+     */
+    private static long fleetSignature() {
+        long signature = 0;
+        for (int length : Fleet.lengths()) {
+            signature = signature << 4 | length;
+        }
+        return signature;
+    }
+}
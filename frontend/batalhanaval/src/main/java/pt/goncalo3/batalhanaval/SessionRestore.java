@@ -0,0 +1,142 @@
+package pt.goncalo3.batalhanaval;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Restores the session saved by the previous run when the application starts.
+ *
+ * The stored token used to be trusted blindly. Now, while the home screen is shown, the
+ * token is checked with the server (which also refreshes the profile) and the first page
+ * of the leaderboard is prefetched at the same time, so both take a single round trip.
+ * The two requests run as subtasks of one restore: they are started together, waited
+ * for with one deadline, and cancelled together if the restore is cancelled.
+ */
+public class SessionRestore {
+    // Give up waiting for the server after this, keeping the stored session
+    private static final Duration DEADLINE = Duration.ofSeconds(5);
+
+    /**
+     * Outcome of a restore
+     */
+    public enum Result {
+        NO_SESSION,  // Nothing stored, the user is logged out
+        VALID,       // The server accepted the token, the profile is up to date
+        REJECTED,    // The token expired or the server refused it, the user is logged out
+        OFFLINE      // The server could not be reached, the stored session is kept for now
+    }
+
+    private static SessionRestore instance;
+
+    // Guarded by this
+    private CompletableFuture<Result> restore;
+
+    private SessionRestore() {
+    }
+
+    // Get singleton instance
+    public static synchronized SessionRestore getInstance() {
+        if (instance == null) {
+            instance = new SessionRestore();
+        }
+        return instance;
+    }
+
+    /**
+     * Start restoring the session, unless it is already running or done
+     * @return Completes with the result on a background thread, or is cancelled by {@link #cancel()}
+     */
+    public synchronized CompletableFuture<Result> start() {
+        if (restore != null) {
+            return restore;
+        }
+        User user = User.getInstance();
+        if (!user.isAuthenticated()) {
+            restore = CompletableFuture.completedFuture(Result.NO_SESSION);
+            return restore;
+        }
+        if (user.isTokenExpired()) {
+            // No need to ask the server
+            System.out.println("Stored session expired, logging out");
+            user.logout();
+            restore = CompletableFuture.completedFuture(Result.REJECTED);
+            return restore;
+        }
+
+        ExecutorService executor = ApiClient.getInstance().getExecutor();
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        Future<?> owner = executor.submit(() -> {
+            try {
+                result.complete(run(executor));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        // Cancelling the result interrupts the owner, which cancels its subtasks
+        result.whenComplete((value, error) -> {
+            if (error instanceof CancellationException) {
+                owner.cancel(true);
+            }
+        });
+        restore = result;
+        return result;
+    }
+
+    /**
+     * Cancel a running restore, e.g. when the user leaves the home screen before it finished.
+     * The stored session is kept as it is, and checked again by the next {@link #start()}.
+     */
+    public synchronized void cancel() {
+        if (restore != null && !restore.isDone()) {
+            restore.cancel(true);
+            restore = null;
+            System.out.println("Session restore cancelled");
+        }
+    }
+
+    /**
+     * Fork the subtasks, wait for both within the deadline, and cancel whatever is left
+     * on the way out, whether the restore succeeded, failed or was interrupted
+     */
+    private static Result run(ExecutorService executor) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + DEADLINE.toNanos();
+        Future<Boolean> session = executor.submit(User.getInstance()::validateSession);
+        Future<LeaderboardCache.Snapshot> leaderboard = executor.submit(
+                () -> LeaderboardCache.getInstance().refresh().get());
+        try {
+            Result result;
+            try {
+                result = session.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                        ? Result.VALID : Result.REJECTED;
+            } catch (ExecutionException | TimeoutException e) {
+                System.out.println("Could not check the stored session: " + rootCause(e));
+                result = Result.OFFLINE;
+            }
+            try {
+                leaderboard.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // Only a prefetch: the leaderboard view loads it again
+                System.out.println("Leaderboard prefetch failed: " + rootCause(e));
+            }
+            System.out.printf("Session restored (%s) in %.1f ms%n", result, (System.nanoTime() - start) / 1_000_000.0);
+            return result;
+        } finally {
+            session.cancel(true);
+            leaderboard.cancel(true);
+        }
+    }
+
+    private static Throwable rootCause(Throwable error) {
+        while (error instanceof ExecutionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
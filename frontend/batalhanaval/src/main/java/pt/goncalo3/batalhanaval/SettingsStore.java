@@ -0,0 +1,224 @@
+package pt.goncalo3.batalhanaval;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+import java.util.zip.CRC32;
+
+/**
+ * Small key-value store for the settings kept between runs (session token, username...).
+ *
+ * The settings are read once into memory, so reads never touch the disk. Writes only
+ * update memory and schedule a flush on a background thread; writes made while a flush
+ * is pending are saved together by it. The file is replaced atomically and ends with a
+ * CRC32 of its content; once it is in place it is copied to a backup, which is read
+ * instead if the file is missing or damaged.
+ */
+public class SettingsStore {
+    private static final String SETTINGS_FILE = "settings.bin";
+    private static final String BACKUP_FILE = "settings.bak";
+    private static final int MAGIC = 0x53455431; // "SET1"
+    // Writes made within this delay of each other are flushed together
+    private static final long FLUSH_DELAY_MS = 200;
+    // How long closing waits for a flush already started or scheduled
+    private static final long CLOSE_TIMEOUT_MS = 2000;
+
+    private static SettingsStore instance;
+
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "settings-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Whether the settings were read from a file, false on the first run
+    private final boolean loaded;
+
+    // Package-private for tests, which use one store per data directory
+    SettingsStore() {
+        loaded = load();
+    }
+
+    // Get singleton instance
+    public static synchronized SettingsStore getInstance() {
+        if (instance == null) {
+            instance = new SettingsStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Get a setting
+     * @param key The key
+     * @return The value, or null if it is not set
+     */
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    /**
+     * Set a setting; it is saved in the background
+     * @param key The key
+     * @param value The value, or null to remove the setting
+     */
+    public void put(String key, String value) {
+        String previous = value != null ? values.put(key, value) : values.remove(key);
+        if (!Objects.equals(previous, value)) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Remove a setting; it is saved in the background
+     * @param key The key
+     */
+    public void remove(String key) {
+        put(key, null);
+    }
+
+    /**
+     * Copy the entries of a Preferences node, where earlier versions kept their settings.
+     * Does nothing once a settings file exists, so the node is only read on the first run.
+     * @param node The node to copy
+     */
+    public void migrateFrom(Preferences node) {
+        if (loaded) {
+            return;
+        }
+        try {
+            String[] keys = node.keys();
+            for (String key : keys) {
+                String value = node.get(key, null);
+                if (value != null) {
+                    values.putIfAbsent(key, value);
+                }
+            }
+            if (keys.length > 0) {
+                System.out.println("Migrated " + keys.length + " settings from preferences");
+                scheduleFlush();
+            }
+        } catch (BackingStoreException e) {
+            System.err.println("Could not read old preferences: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Save any pending writes now and stop the flush thread, when the application exits
+     */
+    public void close() {
+        // Not shutdownNow: interrupting a flush would close its file channel mid-write.
+        // A flush already scheduled still runs, and the JVM must not exit under it
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                System.err.println("Settings flush still running at exit");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flushScheduled.getAndSet(false)) {
+            flush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.schedule(() -> {
+                    // Cleared before writing, so a write made during the flush schedules another one
+                    flushScheduled.set(false);
+                    flush();
+                }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Closing: write it now instead
+                flushScheduled.set(false);
+                flush();
+            }
+        }
+    }
+
+    private synchronized void flush() {
+        try {
+            byte[] content = encode(Map.copyOf(values));
+            // The live file is never moved away, so a crash at any point leaves
+            // at least one complete copy of the settings
+            AppData.writeAtomically(AppData.file(SETTINGS_FILE), out -> out.write(content));
+            AppData.writeAtomically(AppData.file(BACKUP_FILE), out -> out.write(content));
+        } catch (IOException e) {
+            System.err.println("Failed to save settings: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read the settings file, or its backup if the file is missing or damaged
+     * @return true if either was read
+     */
+    private boolean load() {
+        for (String name : new String[]{SETTINGS_FILE, BACKUP_FILE}) {
+            try {
+                values.putAll(decode(Files.readAllBytes(AppData.file(name))));
+                return true;
+            } catch (NoSuchFileException e) {
+                // Not written yet
+            } catch (IOException e) {
+                System.err.println("Ignoring damaged settings file " + name + ": " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    static byte[] encode(Map<String, String> settings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(settings.size());
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    static Map<String, String> decode(byte[] content) throws IOException {
+        if (content.length < 16) {
+            throw new IOException("truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - 8);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+        in.skipNBytes(content.length - 8);
+        if (in.readLong() != crc.getValue()) {
+            throw new IOException("checksum mismatch");
+        }
+        in = new DataInputStream(new ByteArrayInputStream(content, 0, content.length - 8));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a settings file");
+        }
+        int count = in.readInt();
+        Map<String, String> settings = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            settings.put(in.readUTF(), in.readUTF());
+        }
+        return settings;
+    }
+}
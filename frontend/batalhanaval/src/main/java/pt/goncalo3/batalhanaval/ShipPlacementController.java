@@ -1,9 +1,7 @@
 package pt.goncalo3.batalhanaval;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ToggleButton;
@@ -13,20 +11,26 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
-import javafx.stage.Stage;
 
-import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+public class ShipPlacementController implements Navigator.Lifecycle, Game.GameStateListener {
+    // Time the smart placement spends searching
+    private static final Duration SMART_BUDGET = Duration.ofMillis(1500);
 
-public class ShipPlacementController implements Game.GameStateListener {
     @FXML private GridPane placementGrid;
     @FXML private ToggleButton orientationToggle;
     @FXML private Label currentShipLabel;
     @FXML private Button startGameButton;
     @FXML private Button resetButton;
+    @FXML private Button randomButton;
+    @FXML private Button smartButton;
     @FXML private Label opponentDisconnectedLabel; // Added this line
     @FXML private Button backToHomeButton; // Added this line
     @FXML private HBox gameControlsContainer; // Added this line
@@ -48,6 +52,9 @@ public class ShipPlacementController implements Game.GameStateListener {
     private boolean isHorizontal = true;
     private boolean allShipsPlaced = false;
     private boolean waitingForOpponent = false;
+    private boolean searching = false;
+    private int placeRequest;  // Stamps the latest smart placement, to drop stale ones
+    private final SplittableRandom random = new SplittableRandom();
     
     // Grid cells for placement
     private Rectangle[][] gridCells = new Rectangle[10][10];
@@ -59,11 +66,9 @@ public class ShipPlacementController implements Game.GameStateListener {
     @FXML
     public void initialize() {
         // Initialize ship types and their lengths
-        shipTypes.put("carrier", 5);
-        shipTypes.put("battleship", 4);
-        shipTypes.put("cruiser", 3);
-        shipTypes.put("submarine", 3);
-        shipTypes.put("destroyer", 2);
+        for (Fleet.Type type : Fleet.TYPES) {
+            shipTypes.put(type.name(), type.length());
+        }
         
         // Initialize ship boxes mapping
         shipBoxes.put("carrier", carrierBox);
@@ -80,15 +85,30 @@ public class ShipPlacementController implements Game.GameStateListener {
         buildPlacementGrid();
         updateCurrentShipLabel();
         updateUIState();
-        
+    }
+
+    /**
+     * Start from an empty board every time the cached view is shown for a new game
+     */
+    @Override
+    public void onShow() {
+        waitingForOpponent = false;
+        searching = false;
+        placeRequest++;
+        smartButton.setText("SMART");
+        resetShips();
+        startGameButton.setText("START GAME");
+
         // Set up game state listener
         Game.getInstance().setGameStateListener(this);
 
-        // Ensure the new UI elements are initially hidden
+        // Ensure the disconnection UI is hidden and the game controls are back
         opponentDisconnectedLabel.setVisible(false);
         opponentDisconnectedLabel.setManaged(false);
         backToHomeButton.setVisible(false);
         backToHomeButton.setManaged(false);
+        gameControlsContainer.setVisible(true);
+        gameControlsContainer.setManaged(true);
     }
     
     /**
@@ -338,7 +358,9 @@ public class ShipPlacementController implements Game.GameStateListener {
     private void updateUIState() {
         startGameButton.setDisable(!allShipsPlaced || waitingForOpponent);
         orientationToggle.setDisable(allShipsPlaced || waitingForOpponent);
-        resetButton.setDisable(waitingForOpponent);
+        resetButton.setDisable(waitingForOpponent || searching);
+        randomButton.setDisable(waitingForOpponent || searching);
+        smartButton.setDisable(waitingForOpponent || searching);
         
         // Update ship boxes to show they can't be selected if all ships are placed or waiting
         for (VBox box : shipBoxes.values()) {
@@ -354,6 +376,72 @@ public class ShipPlacementController implements Game.GameStateListener {
         resetShips();
     }
     
+    /**
+     * Place the whole fleet at random (FXML event handler)
+     */
+    @FXML
+    public void onRandomPlaceClick() {
+        if (waitingForOpponent || searching) {
+            return;
+        }
+        showFleet(FleetPlacer.random(random));
+    }
+
+    /**
+     * Place the whole fleet where the targeting engine is slowest to find it (FXML event
+     * handler). The search takes a moment and runs in the background.
+     */
+    @FXML
+    public void onSmartPlaceClick() {
+        if (waitingForOpponent || searching) {
+            return;
+        }
+        searching = true;
+        smartButton.setText("Searching...");
+        updateUIState();
+
+        int request = ++placeRequest;
+        long seed = random.nextLong();
+        CompletableFuture.supplyAsync(() -> FleetPlacer.adversarial(seed, SMART_BUDGET))
+                .whenComplete((result, error) -> Platform.runLater(() -> {
+                    if (request != placeRequest) {
+                        return;
+                    }
+                    searching = false;
+                    smartButton.setText("SMART");
+                    if (error != null) {
+                        System.err.println("Smart placement failed: " + error.getMessage());
+                    } else {
+                        System.out.printf("Smart placement: %.2f expected hits in %d shots, %d layouts scored%n",
+                                result.expectedHits(), FleetPlacer.HORIZON, result.evaluations());
+                        System.out.println("Heatmap cache: " + DensityTargeting.cacheStats()[0]);
+                        showFleet(result.ships());
+                    }
+                    updateUIState();
+                }));
+    }
+
+    /**
+     * Replace the ships on the board with a complete fleet, in the order of {@link Fleet#TYPES}
+     */
+    private void showFleet(List<Ship> fleet) {
+        resetShips();
+        for (int i = 0; i < fleet.size(); i++) {
+            Ship ship = fleet.get(i);
+            ships.add(new Ship(nextShipId++, ship.getPosX(), ship.getPosY(), ship.getLength(), ship.isHorizontal()));
+            placedShips.put(Fleet.TYPES.get(i).name(), true);
+            for (int k = 0; k < ship.getLength(); k++) {
+                int shipRow = ship.isHorizontal() ? ship.getPosY() : ship.getPosY() + k;
+                int shipCol = ship.isHorizontal() ? ship.getPosX() + k : ship.getPosX();
+                gridCells[shipRow][shipCol].setFill(Color.DARKGREEN);
+            }
+        }
+        checkAllShipsPlaced();
+        updateCurrentShipLabel();
+        updateShipSelection();
+        updateUIState();
+    }
+
     /**
      * Start the game with placed ships (FXML event handler)
      */
@@ -433,27 +521,13 @@ public class ShipPlacementController implements Game.GameStateListener {
     @Override
     public void onYourTurn() {
         // Transition to game view
-        try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("fxml/playing.fxml"));
-            Parent root = loader.load();
-            Stage stage = (Stage) startGameButton.getScene().getWindow();
-            stage.setScene(new Scene(root));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        Navigator.getInstance().show(Navigator.View.PLAYING);
     }
 
     @Override
     public void onOpponentTurn() {
-       // Transition to game view
-        try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("fxml/playing.fxml"));
-            Parent root = loader.load();
-            Stage stage = (Stage) startGameButton.getScene().getWindow();
-            stage.setScene(new Scene(root));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        // Transition to game view
+        Navigator.getInstance().show(Navigator.View.PLAYING);
     }
 
     @Override
@@ -490,15 +564,7 @@ public class ShipPlacementController implements Game.GameStateListener {
 
     @FXML
     private void goBackToHome() {
-        try {
-            // Assuming "home-view.fxml" is your homepage FXML
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("fxml/home-view.fxml")); 
-            Parent root = loader.load();
-            Stage stage = (Stage) startGameButton.getScene().getWindow(); // Or any other node in the current scene
-            stage.setScene(new Scene(root));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        Navigator.getInstance().show(Navigator.View.HOME);
     }
 
     @Override
@@ -508,7 +574,7 @@ public class ShipPlacementController implements Game.GameStateListener {
 
     @Override
     public void onGameStarted() {
-        throw new UnsupportedOperationException("Unimplemented method 'onGameStarted'");
+        // Against the computer, start_game arrives once this view is already shown
     }
 
     @Override
@@ -0,0 +1,361 @@
+package pt.goncalo3.batalhanaval;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Post-game report on the player's own shots: each one replayed against what was known
+ * when it was fired, and compared with the shot the density strategy would have fired.
+ *
+ * For every shot the board is rebuilt from the moves before it, and a
+ * {@link FleetSampler} estimates the probability of a ship on every cell. The report
+ * holds the probability of the cell fired at, that of the best cell, and the information
+ * the answer gave: -log2 of the probability of a hit or a miss, as it came out. The
+ * shots are cut into one run per core of the common pool, each sampled in order by one
+ * sampler so that the fleets still consistent after a shot carry over to the next; the
+ * time budget is shared so that the whole report takes under a second.
+ *
+ * Reports are cached by game, in memory and in shot-analysis.bin in the data directory,
+ * so analysing a game again, from the history or in a later run, is immediate. The
+ * cache keeps the last {@link #MAX_CACHED} games.
+ */
+public class ShotAnalysis {
+    private static final String FILE = "shot-analysis.bin";
+    private static final int MAGIC = 0x53484F54; // "SHOT"
+    private static final int MAX_CACHED = 256;
+    // Time for sampling the whole game, shared by the cores
+    private static final Duration BUDGET = Duration.ofMillis(700);
+    private static final Duration MAX_SHOT_BUDGET = Duration.ofMillis(100);
+    // A shot this close to the best probability counts as the best
+    private static final double BEST_TOLERANCE = 0.95;
+
+    /**
+     * One shot of the player
+     * @param cell The cell fired at, indexed by y * 10 + x
+     * @param best The cell with the highest probability
+     * @param probability Probability of a ship on the cell fired at
+     * @param bestProbability Probability of a ship on the best cell
+     * @param bits Information the answer gave
+     * @param result What the shot hit
+     */
+    public record Shot(int cell, int best, double probability, double bestProbability, double bits,
+                       GameRecord.Result result) {
+        /**
+         * Check if the shot was as good as the best one
+         */
+        public boolean isBest() {
+            return cell == best || probability >= BEST_TOLERANCE * bestProbability;
+        }
+    }
+
+    /**
+     * The analysis of one game
+     * @param shots The player's shots, in order
+     */
+    public record Report(List<Shot> shots) {
+        /**
+         * Get the hits the player's shots were expected to score
+         */
+        public double expectedHits() {
+            return shots.stream().mapToDouble(Shot::probability).sum();
+        }
+
+        /**
+         * Get the hits the best shots were expected to score from the same boards
+         */
+        public double bestExpectedHits() {
+            return shots.stream().mapToDouble(Shot::bestProbability).sum();
+        }
+
+        /**
+         * Get the information gained by all the shots, in bits
+         */
+        public double bits() {
+            return shots.stream().mapToDouble(Shot::bits).sum();
+        }
+
+        /**
+         * Get the number of shots as good as the best
+         */
+        public long bestShots() {
+            return shots.stream().filter(Shot::isBest).count();
+        }
+
+        /**
+         * Get the expected hits of the player as a fraction of the best, from 0 to 1
+         */
+        public double efficiency() {
+            double best = bestExpectedHits();
+            return best == 0 ? 1 : expectedHits() / best;
+        }
+
+        /**
+         * Describe the report in a few lines
+         */
+        public String summary() {
+            long hits = shots.stream().filter(shot -> shot.result() != GameRecord.Result.MISS).count();
+            return String.format("%d shots, %d hits (%.1f expected, %.1f with the best shots)%n"
+                            + "Shot efficiency: %.0f%%, %d of %d shots as good as the best%n"
+                            + "Information gained: %.1f bits, %.2f per shot",
+                    shots.size(), hits, expectedHits(), bestExpectedHits(),
+                    100 * efficiency(), bestShots(), shots.size(), bits(), shots.isEmpty() ? 0 : bits() / shots.size());
+        }
+
+        /**
+         * Describe every shot, one per line
+         */
+        public String details() {
+            StringBuilder text = new StringBuilder(" #  shot  result  chance  best    chance  bits\n");
+            for (int i = 0; i < shots.size(); i++) {
+                Shot shot = shots.get(i);
+                text.append(String.format("%2d  %-4s  %-6s  %5.1f%%  %-4s  %5.1f%%  %4.2f%s%n", i + 1,
+                        cellName(shot.cell()), shot.result().name().toLowerCase(), 100 * shot.probability(),
+                        cellName(shot.best()), 100 * shot.bestProbability(), shot.bits(), shot.isBest() ? "" : "  *"));
+            }
+            return text.toString();
+        }
+
+        private static String cellName(int cell) {
+            return (char) ('A' + cell % Fleet.BOARD_SIZE) + String.valueOf(cell / Fleet.BOARD_SIZE + 1);
+        }
+    }
+
+    private static ShotAnalysis instance;
+
+    // Runs the analyses one at a time and owns the cache; the sampling runs on the common pool
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shot-analysis");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Most recently used last; only touched on the executor
+    private final Map<Long, Report> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean loaded;
+
+    private ShotAnalysis() {
+    }
+
+    // Get singleton instance
+    public static synchronized ShotAnalysis getInstance() {
+        if (instance == null) {
+            instance = new ShotAnalysis();
+        }
+        return instance;
+    }
+
+    /**
+     * Analyse the player's shots of a game, in the background
+     * @param game The finished game
+     * @return Completes with the report, from the cache if the game was analysed before
+     */
+    public CompletableFuture<Report> analyze(GameRecord game) {
+        return CompletableFuture.supplyAsync(() -> {
+            load();
+            long key = key(game);
+            Report report = cache.get(key);
+            if (report != null) {
+                return report;
+            }
+            long start = System.nanoTime();
+            report = compute(game);
+            System.out.printf("Shot analysis: %d shots in %d ms%n", report.shots().size(),
+                    (System.nanoTime() - start) / 1_000_000);
+            cache.put(key, report);
+            if (cache.size() > MAX_CACHED) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+            save();
+            return report;
+        }, executor);
+    }
+
+    /**
+     * Replay the player's shots and sample the board before each
+     */
+    static Report compute(GameRecord game) {
+        List<GameRecord.Move> moves = game.moves().stream().filter(GameRecord.Move::byPlayer).toList();
+        TargetBoard[] boards = new TargetBoard[moves.size()];
+        TargetBoard board = TargetBoard.forFleet();
+        for (int i = 0; i < moves.size(); i++) {
+            boards[i] = board.copy();
+            GameRecord.Move move = moves.get(i);
+            if (move.result() == GameRecord.Result.MISS) {
+                board.miss(move.x(), move.y());
+                continue;
+            }
+            board.hit(move.x(), move.y());
+            if (move.result() == GameRecord.Result.SUNK) {
+                Ship ship = shipAt(game.opponentFleet(), move.x(), move.y());
+                if (ship != null) {
+                    board.sunk(ship);
+                }
+            }
+        }
+
+        int runs = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), moves.size()));
+        Duration budget = moves.isEmpty() ? Duration.ZERO
+                : BUDGET.multipliedBy(runs).dividedBy(moves.size());
+        Duration shotBudget = budget.compareTo(MAX_SHOT_BUDGET) > 0 ? MAX_SHOT_BUDGET : budget;
+        Shot[] shots = new Shot[moves.size()];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int run = 0; run < runs; run++) {
+            int from = moves.size() * run / runs, to = moves.size() * (run + 1) / runs;
+            long seed = game.startedAt() ^ run;
+            tasks.add(() -> {
+                FleetSampler sampler = new FleetSampler(seed, 1);
+                for (int i = from; i < to; i++) {
+                    shots[i] = analyzeShot(boards[i], moves.get(i), sampler, shotBudget);
+                }
+                return null;
+            });
+        }
+        for (Future<Void> result : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            result.resultNow();
+        }
+        return new Report(List.of(shots));
+    }
+
+    private static Shot analyzeShot(TargetBoard board, GameRecord.Move move, FleetSampler sampler, Duration budget) {
+        FleetSampler.Estimate estimate = sampler.sample(board, budget);
+        double[] probability = estimate.samples() > 0 ? estimate.probability() : quickProbability(board);
+        int best = -1;
+        for (int cell = 0; cell < Fleet.CELLS; cell++) {
+            if (!board.isShot(cell) && (best < 0 || probability[cell] > probability[best])) {
+                best = cell;
+            }
+        }
+        int cell = TargetBoard.cell(move.x(), move.y());
+        double p = Math.min(Math.max(probability[cell], 1e-6), 1 - 1e-6);
+        boolean hit = move.result() != GameRecord.Result.MISS;
+        double bits = -Math.log(hit ? p : 1 - p) / Math.log(2);
+        return new Shot(cell, best < 0 ? cell : best, probability[cell], best < 0 ? 0 : probability[best], bits,
+                move.result());
+    }
+
+    /**
+     * The quick heatmap as probabilities, for a board the sampler found no fleet for
+     */
+    private static double[] quickProbability(TargetBoard board) {
+        double[] density = DensityTargeting.cachedHeatmap(board).density();
+        double[] probability = new double[density.length];
+        for (int cell = 0; cell < density.length; cell++) {
+            probability[cell] = Math.min(1, density[cell]);
+        }
+        return probability;
+    }
+
+    private static Ship shipAt(List<Ship> ships, int x, int y) {
+        for (Ship ship : ships) {
+            for (int k = 0; k < ship.getLength(); k++) {
+                if (ship.getPosX() + (ship.isHorizontal() ? k : 0) == x
+                        && ship.getPosY() + (ship.isHorizontal() ? 0 : k) == y) {
+                    return ship;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Identify a game: its start time and its moves, as the history stores them
+     */
+    static long key(GameRecord game) {
+        return game.startedAt() * 31 + Arrays.hashCode(GameRecord.packMoves(game.moves()));
+    }
+
+    // ---- Cache file ----
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        try {
+            byte[] bytes = Files.readAllBytes(AppData.file(FILE));
+            cache.putAll(decode(bytes));
+        } catch (NoSuchFileException e) {
+            // Nothing analysed yet
+        } catch (IOException e) {
+            System.err.println("Ignoring damaged shot analysis cache: " + e.getMessage());
+        }
+    }
+
+    private void save() {
+        try {
+            byte[] bytes = encode(cache);
+            AppData.writeAtomically(AppData.file(FILE), out -> out.write(bytes));
+        } catch (IOException e) {
+            System.err.println("Failed to save shot analysis cache: " + e.getMessage());
+        }
+    }
+
+    private static byte[] encode(Map<Long, Report> reports) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(reports.size());
+        for (Map.Entry<Long, Report> entry : reports.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeShort(entry.getValue().shots().size());
+            for (Shot shot : entry.getValue().shots()) {
+                out.writeByte(shot.cell());
+                out.writeByte(shot.best());
+                out.writeByte(shot.result().ordinal());
+                out.writeFloat((float) shot.probability());
+                out.writeFloat((float) shot.bestProbability());
+                out.writeFloat((float) shot.bits());
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    private static Map<Long, Report> decode(byte[] bytes) throws IOException {
+        if (bytes.length < Long.BYTES) {
+            throw new IOException("file too short");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Long.BYTES);
+        if (ByteBuffer.wrap(bytes, bytes.length - Long.BYTES, Long.BYTES).getLong() != crc.getValue()) {
+            throw new IOException("checksum mismatch");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a shot analysis cache");
+        }
+        int count = in.readInt();
+        Map<Long, Report> reports = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            long key = in.readLong();
+            Shot[] shots = new Shot[in.readUnsignedShort()];
+            for (int s = 0; s < shots.length; s++) {
+                int cell = in.readUnsignedByte(), best = in.readUnsignedByte();
+                GameRecord.Result result = GameRecord.Result.values()[in.readUnsignedByte()];
+                shots[s] = new Shot(cell, best, in.readFloat(), in.readFloat(), in.readFloat(), result);
+            }
+            reports.put(key, new Report(List.of(shots)));
+        }
+        return reports;
+    }
+}
@@ -0,0 +1,181 @@
+package pt.goncalo3.batalhanaval;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+/**
+ * How a computer player picks its next attack on a {@link TargetBoard}.
+ *
+ * Strategies may keep state between the shots of one game (e.g. a sampler), so each
+ * game gets its own instance from {@link Level#create(long)}.
+ */
+public interface ShotStrategy {
+    /**
+     * Pick the next cell to attack
+     * @param board What is known of the opponent's board; not modified
+     * @param random Random source of the game
+     * @param deadline Answer by this {@link System#nanoTime()}
+     * @return A cell not attacked yet, indexed by y * 10 + x
+     */
+    int nextShot(TargetBoard board, SplittableRandom random, long deadline);
+
+    /**
+     * The built-in strategies, weakest first
+     */
+    enum Level {
+        RANDOM("Easy"),
+        HUNT_TARGET("Medium"),
+        DENSITY("Hard");
+
+        private final String label;
+
+        Level(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Create the strategy for one game
+         * @param seed Seed for any randomness of its own
+         */
+        public ShotStrategy create(long seed) {
+            return switch (this) {
+                case RANDOM -> ShotStrategy::randomShot;
+                case HUNT_TARGET -> ShotStrategy::huntTargetShot;
+                // No EndgameSolver: EndgameBenchmark shows no significant gain from it yet
+                case DENSITY -> new Density(new FleetSampler(seed), OpeningBook.getInstance());
+            };
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Any cell not attacked yet
+     */
+    static int randomShot(TargetBoard board, SplittableRandom random, long deadline) {
+        int open = Fleet.CELLS - board.shots();
+        int pick = random.nextInt(open);
+        for (int cell = 0; cell < Fleet.CELLS; cell++) {
+            if (!board.isShot(cell) && pick-- == 0) {
+                return cell;
+            }
+        }
+        throw new IllegalStateException("no cell left to attack");
+    }
+
+    /**
+     * The classic human strategy: while a ship is hit and not sunk, attack the cells
+     * next to the open hits; otherwise attack a random cell of a checkerboard, since
+     * every ship covers at least one of its cells
+     */
+    static int huntTargetShot(TargetBoard board, SplittableRandom random, long deadline) {
+        int[] candidates = new int[Fleet.CELLS];
+        int count = 0;
+        if (board.openHits() > 0) {
+            for (int cell = 0; cell < Fleet.CELLS; cell++) {
+                if (!board.isShot(cell) && nextToOpenHit(board, cell)) {
+                    candidates[count++] = cell;
+                }
+            }
+        }
+        if (count == 0) {
+            for (int cell = 0; cell < Fleet.CELLS; cell++) {
+                int x = cell % Fleet.BOARD_SIZE, y = cell / Fleet.BOARD_SIZE;
+                if (!board.isShot(cell) && (x + y) % 2 == 0) {
+                    candidates[count++] = cell;
+                }
+            }
+        }
+        return count == 0 ? randomShot(board, random, deadline) : candidates[random.nextInt(count)];
+    }
+
+    private static boolean nextToOpenHit(TargetBoard board, int cell) {
+        int x = cell % Fleet.BOARD_SIZE, y = cell / Fleet.BOARD_SIZE;
+        return x > 0 && board.isOpenHit(cell - 1)
+                || x < Fleet.BOARD_SIZE - 1 && board.isOpenHit(cell + 1)
+                || y > 0 && board.isOpenHit(cell - Fleet.BOARD_SIZE)
+                || y < Fleet.BOARD_SIZE - 1 && board.isOpenHit(cell + Fleet.BOARD_SIZE);
+    }
+
+    /**
+     * The best cell of the {@link DensityTargeting} heatmap, or of the sampled one
+     * once open hits constrain the board and there is time left for it. Openings in the
+     * {@link OpeningBook} are looked up instead, and boards seen before come from the
+     * heatmap caches. With an {@link EndgameSolver}, the last ships are shot exactly
+     * when the solver finishes in half of the time left.
+     */
+    final class Density implements ShotStrategy {
+        // Sample when this many hits are open or this few ships are left
+        private static final int SAMPLE_MIN_OPEN_HITS = 2;
+        private static final int SAMPLE_MAX_SHIPS = 2;
+        // Not worth starting the sampler with less time than this
+        private static final long MIN_SAMPLE_NANOS = Duration.ofMillis(5).toNanos();
+
+        private final FleetSampler sampler;
+        private final OpeningBook book;
+        private final EndgameSolver solver;
+
+        /**
+         * @param sampler Sampler for the late game, or null for the quick heatmap only
+         */
+        public Density(FleetSampler sampler) {
+            this(sampler, null);
+        }
+
+        /**
+         * @param sampler Sampler for the late game, or null for the quick heatmap only
+         * @param book Book of openings, or null to compute every heatmap
+         */
+        public Density(FleetSampler sampler, OpeningBook book) {
+            this(sampler, book, null);
+        }
+
+        /**
+         * @param sampler Sampler for the late game, or null for the quick heatmap only
+         * @param book Book of openings, or null to compute every heatmap
+         * @param solver Solver for the endgame, or null to shoot it by the heatmap
+         */
+        public Density(FleetSampler sampler, OpeningBook book, EndgameSolver solver) {
+            this.sampler = sampler;
+            this.book = book;
+            this.solver = solver;
+        }
+
+        @Override
+        public int nextShot(TargetBoard board, SplittableRandom random, long deadline) {
+            DensityTargeting.Heatmap booked = book != null ? book.lookup(board) : null;
+            if (booked != null && booked.best() >= 0) {
+                return booked.best();
+            }
+            if (solver != null && board.remainingShips() <= EndgameSolver.MAX_SHIPS) {
+                long now = System.nanoTime();
+                EndgameSolver.Solution solution = solver.solve(board, deadline == Long.MAX_VALUE
+                        ? deadline : now + (deadline - now) / 2);
+                if (solution != null) {
+                    return solution.cell();
+                }
+            }
+            boolean constrained = board.openHits() >= SAMPLE_MIN_OPEN_HITS || board.remainingShips() <= SAMPLE_MAX_SHIPS;
+            DensityTargeting.Heatmap sampled = sampler != null && constrained ? DensityTargeting.sampledHeatmap(board) : null;
+            if (sampled != null && sampled.best() >= 0) {
+                return sampled.best();
+            }
+            DensityTargeting.Heatmap heatmap = DensityTargeting.cachedHeatmap(board);
+            long left = deadline - System.nanoTime();
+            if (sampler != null && constrained && left > MIN_SAMPLE_NANOS) {
+                FleetSampler.Estimate estimate = sampler.sample(board, Duration.ofNanos(left));
+                if (estimate.samples() > 0) {
+                    heatmap = DensityTargeting.storeSampled(board, estimate.probability());
+                }
+            }
+            return heatmap.best() >= 0 ? heatmap.best() : randomShot(board, random, deadline);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package pt.goncalo3.batalhanaval;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the milestones of application startup relative to the start of the JVM,
+ * so regressions in time-to-first-frame show up in the console output.
+ */
+public final class StartupTimeline {
+    // When the JVM was started, to the millisecond (the process start time from the OS
+    // may be off by up to a second)
+    private static final long JVM_START_MILLIS = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+    private record Milestone(String name, long millis) {
+    }
+
+    private static final List<Milestone> milestones = new ArrayList<>();
+
+    private StartupTimeline() {
+    }
+
+    /**
+     * Record a milestone at the current time
+     * @param name Short description of what just finished
+     */
+    public static synchronized void mark(String name) {
+        milestones.add(new Milestone(name, sinceJvmStart()));
+    }
+
+    /**
+     * Get the time elapsed since the JVM started
+     * @return Milliseconds since JVM start
+     */
+    public static long sinceJvmStart() {
+        return System.currentTimeMillis() - JVM_START_MILLIS;
+    }
+
+    /**
+     * Get the time of a recorded milestone
+     * @param name The milestone name
+     * @return Milliseconds since JVM start, or -1 if the milestone was not recorded
+     */
+    public static synchronized long get(String name) {
+        for (Milestone milestone : milestones) {
+            if (milestone.name().equals(name)) {
+                return milestone.millis();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Print every milestone recorded so far
+     */
+    public static synchronized void print() {
+        System.out.println("=== STARTUP TIMELINE ===");
+        System.out.printf("  %-20s %6d ms%n", "jvm start", 0);
+        long previous = 0;
+        for (Milestone milestone : milestones) {
+            System.out.printf("  %-20s %6d ms  (+%d)%n",
+                    milestone.name(), milestone.millis(), milestone.millis() - previous);
+            previous = milestone.millis();
+        }
+        System.out.println("========================");
+    }
+}
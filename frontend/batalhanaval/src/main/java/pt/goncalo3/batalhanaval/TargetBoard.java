@@ -0,0 +1,376 @@
+package pt.goncalo3.batalhanaval;
+
+import java.util.SplittableRandom;
+
+/**
+ * What the attacker knows of the opponent's board: the misses, the hits on ships
+ * still afloat, the cells of the sunk ships and the ships that remain.
+ *
+ * Each set of cells is a 100-bit board held in two longs, bit y * 10 + x set for a
+ * cell: cells 0-63 in the low long and 64-99 in the high one. The possible placements
+ * of a ship are precomputed as the same kind of boards, so checking a placement
+ * against the board is a couple of ANDs. Not thread-safe: {@link Game} updates it on
+ * the FX thread, and anything working on another thread takes a {@link #copy()}.
+ *
+ * The board keeps a Zobrist hash of its state for the {@link TranspositionCache}: one
+ * fixed random number per cell and state (miss, open hit, sunk) and per count of ships
+ * afloat of each length, XORed together. Each attack or sunk ship XORs in and out the
+ * numbers that change, so boards reached by different shot orders hash the same
+ * without rehashing the whole board.
+ */
+public class TargetBoard {
+    private static final int BOARD_SIZE = Fleet.BOARD_SIZE;
+
+    // Placement boards per ship length: horizontal ones first, then vertical
+    private static final long[][] PLACEMENTS_LOW = new long[BOARD_SIZE + 1][];
+    private static final long[][] PLACEMENTS_HIGH = new long[BOARD_SIZE + 1][];
+    // First cell (top or leftmost) of each placement
+    private static final int[][] PLACEMENT_STARTS = new int[BOARD_SIZE + 1][];
+
+    /**
+     * Number of symmetries of the board: 4 rotations, each optionally mirrored
+     */
+    static final int SYMMETRIES = 8;
+    // The cell every cell maps to, per symmetry; symmetry 0 is the identity
+    private static final int[][] SYMMETRY_MAPS = symmetryMaps();
+
+    // Zobrist numbers per cell for each state, and per length for each count afloat;
+    // from a fixed seed so that hashes are the same on every run
+    private static final long[] ZOBRIST_MISS = new long[BOARD_SIZE * BOARD_SIZE];
+    private static final long[] ZOBRIST_HIT = new long[BOARD_SIZE * BOARD_SIZE];
+    private static final long[] ZOBRIST_SUNK = new long[BOARD_SIZE * BOARD_SIZE];
+    private static final long[][] ZOBRIST_REMAINING = new long[BOARD_SIZE + 1][BOARD_SIZE * BOARD_SIZE + 1];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5A0B1575L);
+        for (int cell = 0; cell < BOARD_SIZE * BOARD_SIZE; cell++) {
+            ZOBRIST_MISS[cell] = random.nextLong();
+            ZOBRIST_HIT[cell] = random.nextLong();
+            ZOBRIST_SUNK[cell] = random.nextLong();
+        }
+        for (long[] counts : ZOBRIST_REMAINING) {
+            for (int count = 0; count < counts.length; count++) {
+                counts[count] = random.nextLong();
+            }
+        }
+    }
+
+    static {
+        for (int length = 1; length <= BOARD_SIZE; length++) {
+            int count = 2 * BOARD_SIZE * (BOARD_SIZE - length + 1);
+            long[] low = new long[count];
+            long[] high = new long[count];
+            int[] starts = new int[count];
+            int i = 0;
+            for (int horizontal = 1; horizontal >= 0; horizontal--) {
+                for (int y = 0; y < BOARD_SIZE; y++) {
+                    for (int x = 0; x < BOARD_SIZE; x++) {
+                        if ((horizontal == 1 ? x : y) + length > BOARD_SIZE) {
+                            continue;
+                        }
+                        starts[i] = cell(x, y);
+                        for (int k = 0; k < length; k++) {
+                            int cell = horizontal == 1 ? cell(x + k, y) : cell(x, y + k);
+                            if (cell < 64) {
+                                low[i] |= 1L << cell;
+                            } else {
+                                high[i] |= 1L << (cell - 64);
+                            }
+                        }
+                        i++;
+                    }
+                }
+            }
+            PLACEMENTS_LOW[length] = low;
+            PLACEMENTS_HIGH[length] = high;
+            PLACEMENT_STARTS[length] = starts;
+        }
+    }
+
+    private long missLow, missHigh;
+    private long hitLow, hitHigh;    // Hits on ships that are not sunk yet
+    private long sunkLow, sunkHigh;
+    private final int[] remaining;   // Ships afloat per length
+    // The sunk ships, as placement boards
+    private final int[] sunkLength;
+    private final long[] sunkShipLow, sunkShipHigh;
+    private int sunkShips;
+    private long hash;
+
+    /**
+     * Create an empty board
+     * @param lengths The length of every ship of the opponent's fleet
+     */
+    public TargetBoard(int[] lengths) {
+        remaining = new int[BOARD_SIZE + 1];
+        for (int length : lengths) {
+            remaining[length]++;
+        }
+        sunkLength = new int[lengths.length];
+        sunkShipLow = new long[lengths.length];
+        sunkShipHigh = new long[lengths.length];
+        for (int length = 1; length <= BOARD_SIZE; length++) {
+            hash ^= ZOBRIST_REMAINING[length][remaining[length]];
+        }
+    }
+
+    private TargetBoard(TargetBoard other) {
+        missLow = other.missLow;
+        missHigh = other.missHigh;
+        hitLow = other.hitLow;
+        hitHigh = other.hitHigh;
+        sunkLow = other.sunkLow;
+        sunkHigh = other.sunkHigh;
+        remaining = other.remaining.clone();
+        sunkLength = other.sunkLength.clone();
+        sunkShipLow = other.sunkShipLow.clone();
+        sunkShipHigh = other.sunkShipHigh.clone();
+        sunkShips = other.sunkShips;
+        hash = other.hash;
+    }
+
+    /**
+     * Create an empty board for the standard {@link Fleet}
+     */
+    public static TargetBoard forFleet() {
+        return new TargetBoard(Fleet.lengths());
+    }
+
+    public TargetBoard copy() {
+        return new TargetBoard(this);
+    }
+
+    /**
+     * Get the cell index of a coordinate
+     */
+    public static int cell(int x, int y) {
+        return y * BOARD_SIZE + x;
+    }
+
+    /**
+     * Record an attack that missed
+     */
+    public void miss(int x, int y) {
+        int cell = cell(x, y);
+        if (!isSet(missLow, missHigh, cell)) {
+            hash ^= ZOBRIST_MISS[cell];
+        }
+        if (cell < 64) {
+            missLow |= 1L << cell;
+        } else {
+            missHigh |= 1L << (cell - 64);
+        }
+    }
+
+    /**
+     * Record an attack that hit a ship
+     */
+    public void hit(int x, int y) {
+        int cell = cell(x, y);
+        if (!isSet(hitLow | sunkLow, hitHigh | sunkHigh, cell)) {
+            hash ^= ZOBRIST_HIT[cell];
+        }
+        if (cell < 64) {
+            hitLow |= 1L << cell;
+        } else {
+            hitHigh |= 1L << (cell - 64);
+        }
+    }
+
+    /**
+     * Record a sunk ship: its cells stop counting as open hits
+     * @param ship The ship, as revealed by the server
+     */
+    public void sunk(Ship ship) {
+        long shipLow = 0, shipHigh = 0;
+        for (int i = 0; i < ship.getLength(); i++) {
+            int x = ship.getPosX() + (ship.isHorizontal() ? i : 0);
+            int y = ship.getPosY() + (ship.isHorizontal() ? 0 : i);
+            if (x >= BOARD_SIZE || y >= BOARD_SIZE) {
+                continue;
+            }
+            int cell = cell(x, y);
+            if (cell < 64) {
+                shipLow |= 1L << cell;
+            } else {
+                shipHigh |= 1L << (cell - 64);
+            }
+        }
+        hash ^= zobrist(ZOBRIST_HIT, hitLow & shipLow, hitHigh & shipHigh)
+                ^ zobrist(ZOBRIST_SUNK, shipLow & ~sunkLow, shipHigh & ~sunkHigh);
+        hitLow &= ~shipLow;
+        hitHigh &= ~shipHigh;
+        sunkLow |= shipLow;
+        sunkHigh |= shipHigh;
+        if (ship.getLength() <= BOARD_SIZE && remaining[ship.getLength()] > 0) {
+            long[] counts = ZOBRIST_REMAINING[ship.getLength()];
+            hash ^= counts[remaining[ship.getLength()]] ^ counts[remaining[ship.getLength()] - 1];
+            remaining[ship.getLength()]--;
+            sunkLength[sunkShips] = ship.getLength();
+            sunkShipLow[sunkShips] = shipLow;
+            sunkShipHigh[sunkShips] = shipHigh;
+            sunkShips++;
+        }
+    }
+
+    /**
+     * Check if a cell was attacked already
+     */
+    public boolean isShot(int cell) {
+        return isSet(missLow | hitLow | sunkLow, missHigh | hitHigh | sunkHigh, cell);
+    }
+
+    /**
+     * Check if a cell is a hit on a ship that is not sunk yet
+     */
+    public boolean isOpenHit(int cell) {
+        return isSet(hitLow, hitHigh, cell);
+    }
+
+    /**
+     * Get the number of ships of a length that are still afloat
+     */
+    public int remaining(int length) {
+        return length <= BOARD_SIZE ? remaining[length] : 0;
+    }
+
+    /**
+     * Get the number of ships still afloat
+     */
+    public int remainingShips() {
+        int count = 0;
+        for (int ships : remaining) {
+            count += ships;
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of hits on ships that are not sunk yet
+     */
+    public int openHits() {
+        return Long.bitCount(hitLow) + Long.bitCount(hitHigh);
+    }
+
+    /**
+     * Get the Zobrist hash of the board: equal for equal boards, whatever the order of
+     * the attacks, and different for different ones except with negligible probability
+     */
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * XOR the numbers of the cells of a bitboard
+     */
+    private static long zobrist(long[] numbers, long low, long high) {
+        long result = 0;
+        while (low != 0) {
+            result ^= numbers[Long.numberOfTrailingZeros(low)];
+            low &= low - 1;
+        }
+        while (high != 0) {
+            result ^= numbers[64 + Long.numberOfTrailingZeros(high)];
+            high &= high - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of attacks made so far
+     */
+    public int shots() {
+        return Long.bitCount(missLow | hitLow | sunkLow) + Long.bitCount(missHigh | hitHigh | sunkHigh);
+    }
+
+    // Raw boards, for the engines that work on them directly
+
+    long blockedLow() {
+        return missLow | sunkLow;
+    }
+
+    long blockedHigh() {
+        return missHigh | sunkHigh;
+    }
+
+    long hitLow() {
+        return hitLow;
+    }
+
+    long hitHigh() {
+        return hitHigh;
+    }
+
+    long missLow() {
+        return missLow;
+    }
+
+    long missHigh() {
+        return missHigh;
+    }
+
+    long sunkLow() {
+        return sunkLow;
+    }
+
+    long sunkHigh() {
+        return sunkHigh;
+    }
+
+    /**
+     * Check if a placement is exactly one of the sunk ships
+     */
+    boolean isSunkShip(int length, long low, long high) {
+        for (int i = 0; i < sunkShips; i++) {
+            if (sunkLength[i] == length && sunkShipLow[i] == low && sunkShipHigh[i] == high) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static long[] placementsLow(int length) {
+        return PLACEMENTS_LOW[length];
+    }
+
+    static long[] placementsHigh(int length) {
+        return PLACEMENTS_HIGH[length];
+    }
+
+    static int[] placementStarts(int length) {
+        return PLACEMENT_STARTS[length];
+    }
+
+    /**
+     * Get the number of horizontal placements of a length, which come first
+     */
+    static int horizontalPlacements(int length) {
+        return BOARD_SIZE * (BOARD_SIZE - length + 1);
+    }
+
+    /**
+     * Get where each cell goes under a symmetry of the board; not to be modified
+     * @param symmetry From 0 (the identity) to {@link #SYMMETRIES} - 1
+     */
+    static int[] symmetry(int symmetry) {
+        return SYMMETRY_MAPS[symmetry];
+    }
+
+    private static int[][] symmetryMaps() {
+        int last = BOARD_SIZE - 1;
+        int[][] maps = new int[SYMMETRIES][BOARD_SIZE * BOARD_SIZE];
+        for (int cell = 0; cell < BOARD_SIZE * BOARD_SIZE; cell++) {
+            int x = cell % BOARD_SIZE, y = cell / BOARD_SIZE;
+            for (int s = 0; s < SYMMETRIES; s++) {
+                int mx = (s & 1) != 0 ? last - x : x;
+                int my = (s & 2) != 0 ? last - y : y;
+                maps[s][cell] = (s & 4) != 0 ? cell(my, mx) : cell(mx, my);
+            }
+        }
+        return maps;
+    }
+
+    static boolean isSet(long low, long high, int cell) {
+        return cell < 64 ? (low >>> cell & 1) != 0 : (high >>> (cell - 64) & 1) != 0;
+    }
+}
@@ -0,0 +1,159 @@
+package pt.goncalo3.batalhanaval;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Results computed for a board, by its {@link TargetBoard#hash()}, so that a board
+ * reached again (by another order of the same shots, in another playout of a search,
+ * or by turning hints off and on) is not computed again.
+ *
+ * The cache is bounded and lossy, like the transposition tables of game engines: a key
+ * may only live in one set of {@link #WAYS} slots, and storing into a full set evicts
+ * one of them by CLOCK. Every slot has a reference bit, set when the slot is read; a
+ * hand per set sweeps its slots, clearing the bits it passes, and evicts the first
+ * slot whose bit is already clear, so entries read since the last sweep get a second
+ * chance. Slots are read and written without locks from any thread; two threads
+ * storing into the same set at once may lose one of the entries, which only costs a
+ * recomputation. Boards are told apart by their 64-bit hash alone.
+ *
+ * @param <V> The cached results; shared between threads, so they must not be modified
+ */
+public final class TranspositionCache<V> {
+    /**
+     * Slots a key may be stored in
+     */
+    public static final int WAYS = 8;
+
+    /**
+     * Counters since the cache was made
+     * @param hits Lookups that found their board
+     * @param misses Lookups that did not
+     * @param stores Entries stored
+     * @param evictions Entries dropped to make room
+     * @param capacity Slots of the cache
+     */
+    public record Stats(long hits, long misses, long stores, long evictions, int capacity) {
+        /**
+         * Get the share of lookups that found their board, from 0 to 1
+         */
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f%% hits (%d of %d lookups), %d stored, %d evicted, %d slots",
+                    100 * hitRate(), hits, hits + misses, stores, evictions, capacity);
+        }
+    }
+
+    private record Entry<V>(long key, V value) {
+    }
+
+    private final AtomicReferenceArray<Entry<V>> slots;
+    private final AtomicIntegerArray referenced;
+    private final int[] hands;  // Next way of each set to look at; races only skew the sweep
+    private final int setMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity Entries to hold at most, rounded up to a power of two of at least {@link #WAYS}
+     */
+    public TranspositionCache(int capacity) {
+        int size = Math.max(WAYS, Integer.highestOneBit(Math.max(1, capacity) * 2 - 1));
+        slots = new AtomicReferenceArray<>(size);
+        referenced = new AtomicIntegerArray(size);
+        hands = new int[size / WAYS];
+        setMask = size / WAYS - 1;
+    }
+
+    /**
+     * Get the result stored for a board
+     * @param key The hash of the board
+     * @return The result, or null if it is not in the cache
+     */
+    public V get(long key) {
+        int first = set(key) * WAYS;
+        for (int way = 0; way < WAYS; way++) {
+            Entry<V> entry = slots.get(first + way);
+            if (entry != null && entry.key() == key) {
+                if (referenced.get(first + way) == 0) {
+                    referenced.lazySet(first + way, 1);
+                }
+                hits.increment();
+                return entry.value();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Store the result for a board, replacing any stored for it
+     * @param key The hash of the board
+     * @param value The result, not null
+     */
+    public void put(long key, V value) {
+        Entry<V> entry = new Entry<>(key, value);
+        int set = set(key);
+        int first = set * WAYS;
+        stores.increment();
+        // The board's own slot, or an empty one
+        for (int way = 0; way < WAYS; way++) {
+            Entry<V> stored = slots.get(first + way);
+            if (stored == null || stored.key() == key) {
+                slots.set(first + way, entry);
+                referenced.lazySet(first + way, 0);
+                return;
+            }
+        }
+        // CLOCK: within two turns of the hand every bit has been cleared
+        int hand = hands[set];
+        int victim = hand;
+        for (int step = 0; step < 2 * WAYS; step++) {
+            int way = (hand + step) % WAYS;
+            if (referenced.get(first + way) == 0) {
+                victim = way;
+                break;
+            }
+            referenced.lazySet(first + way, 0);
+        }
+        hands[set] = (victim + 1) % WAYS;
+        slots.set(first + victim, entry);
+        referenced.lazySet(first + victim, 0);
+        evictions.increment();
+    }
+
+    /**
+     * Get the result stored for a board, computing and storing it if there is none
+     * @param key The hash of the board
+     * @param compute Computes the result; may run on several threads at once for one board
+     * @return The result
+     */
+    public V get(long key, Supplier<V> compute) {
+        V value = get(key);
+        if (value == null) {
+            value = compute.get();
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Get the counters of the cache
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), stores.sum(), evictions.sum(), slots.length());
+    }
+
+    private int set(long key) {
+        return (int) (key ^ key >>> 32) & setMask;
+    }
+}
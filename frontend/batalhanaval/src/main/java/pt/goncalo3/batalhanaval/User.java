@@ -1,41 +1,64 @@
 package pt.goncalo3.batalhanaval;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.prefs.Preferences;
-import org.json.JSONObject;
 
 /**
  * User class to handle authentication and user-related operations
  */
 public class User {
-    private static final String AUTH_ENDPOINT = ServerConfig.API_BASE_URL + "/auth"; // Use ServerConfig and ensure /api/auth path
+    private static final String AUTH_PATH = "/auth"; // Relative to ServerConfig.API_BASE_URL
     private static final String PREFS_NODE = "pt.goncalo3.batalhanaval";
     private static final String TOKEN_KEY = "jwt_token";
     private static final String USERNAME_KEY = "username";
     private static final String EMAIL_KEY = "email";
 
-    private String username;
-    private String email;
-    private String token;
-    private boolean isAuthenticated;
+    private volatile String username;
+    private volatile String email;
+    private volatile String token;
+    private volatile boolean isAuthenticated;
     
     // Store the last error message from server responses
-    private String lastErrorMessage = null;
+    private volatile String lastErrorMessage = null;
 
     private static User instance;
-    private final HttpClient httpClient;
-    private final Preferences prefs;
+    private final ApiClient api = ApiClient.getInstance();
+    private final SettingsStore settings = SettingsStore.getInstance();
+
+    // Request and response bodies of the /auth routes
+    record UserData(String username, String email) {
+    }
+
+    record AuthResponse(String token, UserData user) {
+    }
+
+    record ProfileResponse(UserData user) {
+    }
+
+    record LoginRequest(String username, String password) {
+    }
+
+    record RegisterRequest(String username, String email, String password) {
+    }
+
+    // Null fields are left out, so the server keeps the current value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record ProfileUpdate(String username, String email) {
+    }
 
     // Private constructor for singleton pattern
     private User() {
-        httpClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_1_1)
-                .build();
-        prefs = Preferences.userRoot().node(PREFS_NODE);
+        // Earlier versions kept the session in java.util.prefs
+        settings.migrateFrom(Preferences.userRoot().node(PREFS_NODE));
         loadUserFromPrefs();
     }
 
@@ -47,32 +70,32 @@ public class User {
         return instance;
     }
 
-    // Load user data from preferences (if saved from previous session)
+    // Load user data from the settings (if saved from previous session)
     private void loadUserFromPrefs() {
-        token = prefs.get(TOKEN_KEY, null);
-        username = prefs.get(USERNAME_KEY, null);
-        email = prefs.get(EMAIL_KEY, null);
+        token = settings.get(TOKEN_KEY);
+        username = settings.get(USERNAME_KEY);
+        email = settings.get(EMAIL_KEY);
         isAuthenticated = token != null;
     }
 
-    // Save user data to preferences
+    // Save user data to the settings; written to disk in the background
     private void saveUserToPrefs() {
         if (token != null) {
-            prefs.put(TOKEN_KEY, token);
+            settings.put(TOKEN_KEY, token);
         }
         if (username != null) {
-            prefs.put(USERNAME_KEY, username);
+            settings.put(USERNAME_KEY, username);
         }
         if (email != null) {
-            prefs.put(EMAIL_KEY, email);
+            settings.put(EMAIL_KEY, email);
         }
     }
 
-    // Clear user data from preferences
+    // Clear user data from the settings
     private void clearUserPrefs() {
-        prefs.remove(TOKEN_KEY);
-        prefs.remove(USERNAME_KEY);
-        prefs.remove(EMAIL_KEY);
+        settings.remove(TOKEN_KEY);
+        settings.remove(USERNAME_KEY);
+        settings.remove(EMAIL_KEY);
     }
 
     /**
@@ -87,54 +110,27 @@ public class User {
     public boolean register(String username, String email, String password)
             throws IOException, InterruptedException {
         try {
-            JSONObject requestBody = new JSONObject();
-            requestBody.put("username", username);
-            requestBody.put("email", email);
-            requestBody.put("password", password);
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(AUTH_ENDPOINT + "/register"))
-                    .header("Content-Type", "application/json")
-                    .header("Accept", "application/json")
-                    .header("User-Agent", "BattleshipGame/1.0")
-                    .timeout(java.time.Duration.ofSeconds(30))
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
-                    .build();
-
-            System.out.println("Making registration request to: " + AUTH_ENDPOINT + "/register");
-            System.out.println("Request body: " + requestBody.toString());
-
-            HttpResponse<String> response = httpClient.send(request,
-                    HttpResponse.BodyHandlers.ofString());
-
-            System.out.println("Response status: " + response.statusCode());
-            System.out.println("Response headers: " + response.headers().map());
-            System.out.println("Response body: " + response.body());
-
-            if (response.statusCode() == 201) {
-                // Registration successful - backend returns 201 for created
-                JSONObject responseBody = new JSONObject(response.body());
-                this.token = responseBody.getString("token");
-                JSONObject user = responseBody.getJSONObject("user");
-                this.username = user.getString("username");
-                this.email = user.getString("email");
-                this.isAuthenticated = true;
-                saveUserToPrefs();
-                this.lastErrorMessage = null; // Clear any previous error
-                System.out.println("Registration successful! User: " + this.username + ", Email: " + this.email);
-                return true;
-            } else {
-                // Registration failed - extract error message from response
-                try {
-                    JSONObject errorResponse = new JSONObject(response.body());
-                    this.lastErrorMessage = errorResponse.optString("error", "Registration failed");
-                } catch (Exception e) {
-                    this.lastErrorMessage = "Registration failed with status: " + response.statusCode();
-                }
-                System.err.println("Registration failed with status: " + response.statusCode());
-                System.err.println("Response body: " + response.body());
-                return false;
-            }
+            System.out.println("Making registration request to: " + AUTH_PATH + "/register");
+
+            // Backend answers 201 with the token and user data
+            AuthResponse response = api.post(AUTH_PATH + "/register",
+                    new RegisterRequest(username, email, password), AuthResponse.class, null);
+
+            this.token = response.token();
+            this.username = response.user().username();
+            this.email = response.user().email();
+            this.isAuthenticated = true;
+            saveUserToPrefs();
+            this.lastErrorMessage = null; // Clear any previous error
+            System.out.println("Registration successful! User: " + this.username + ", Email: " + this.email);
+            return true;
+        } catch (ApiClient.ApiException e) {
+            // Registration failed - use the error message from the response
+            this.lastErrorMessage = e.getServerMessage() != null
+                    ? e.getServerMessage()
+                    : "Registration failed with status: " + e.getStatusCode();
+            System.err.println("Registration failed with status: " + e.getStatusCode());
+            return false;
         } catch (Exception e) {
             this.lastErrorMessage = "Connection error: " + e.getMessage();
             System.err.println("Exception during registration: " + e.getMessage());
@@ -153,46 +149,30 @@ public class User {
      */
     public boolean login(String username, String password)
             throws IOException, InterruptedException {
-        JSONObject requestBody = new JSONObject();
-        requestBody.put("username", username);
-        requestBody.put("password", password);
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(AUTH_ENDPOINT + "/login"))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
-                .build();
-
-        HttpResponse<String> response = httpClient.send(request,
-                HttpResponse.BodyHandlers.ofString());
-
-        if (response.statusCode() == 200) {
-            // Login successful
-            JSONObject responseBody = new JSONObject(response.body());
-            this.token = responseBody.getString("token");
-            
+        try {
+            AuthResponse response = api.post(AUTH_PATH + "/login",
+                    new LoginRequest(username, password), AuthResponse.class, null);
+
+            this.token = response.token();
+
             // Extract user data from login response if available
-            if (responseBody.has("user")) {
-                JSONObject user = responseBody.getJSONObject("user");
-                this.username = user.getString("username");
-                this.email = user.getString("email");
+            if (response.user() != null) {
+                this.username = response.user().username();
+                this.email = response.user().email();
             } else {
                 // Fallback to the provided username if user object not in response
                 this.username = username;
             }
-            
+
             this.isAuthenticated = true;
             saveUserToPrefs();
             this.lastErrorMessage = null; // Clear any previous error
             return true;
-        } else {
-            // Login failed - extract error message from response
-            try {
-                JSONObject errorResponse = new JSONObject(response.body());
-                this.lastErrorMessage = errorResponse.optString("error", "Login failed");
-            } catch (Exception e) {
-                this.lastErrorMessage = "Login failed with status: " + response.statusCode();
-            }
+        } catch (ApiClient.ApiException e) {
+            // Login failed - use the error message from the response
+            this.lastErrorMessage = e.getServerMessage() != null
+                    ? e.getServerMessage()
+                    : "Login failed with status: " + e.getStatusCode();
             return false;
         }
     }
@@ -208,29 +188,73 @@ public class User {
             return false;
         }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(AUTH_ENDPOINT + "/profile"))
-                .header("Authorization", "Bearer " + token)
-                .GET()
-                .build();
-
-        HttpResponse<String> response = httpClient.send(request,
-                HttpResponse.BodyHandlers.ofString());
-
-        if (response.statusCode() == 200) {
-            // Profile fetch successful
-            JSONObject responseBody = new JSONObject(response.body());
-            JSONObject user = responseBody.getJSONObject("user");
-            this.username = user.getString("username");
-            this.email = user.getString("email");
+        try {
+            ProfileResponse response = api.get(AUTH_PATH + "/profile", ProfileResponse.class, token);
+            this.username = response.user().username();
+            this.email = response.user().email();
             saveUserToPrefs();
             return true;
-        } else {
+        } catch (ApiClient.ApiException e) {
             // Profile fetch failed
             return false;
         }
     }
 
+    /**
+     * Check the stored token with the server, refreshing the profile with it.
+     * A token the server refuses is cleared, as if the user logged out.
+     * @return True if the session is valid, false if it was refused
+     * @throws ApiClient.ApiException If the server fails for another reason
+     * @throws IOException If network issues occur
+     * @throws InterruptedException If request is interrupted
+     */
+    public boolean validateSession() throws IOException, InterruptedException {
+        String checked = token;
+        if (checked == null) {
+            return false;
+        }
+
+        try {
+            ProfileResponse response = api.get(AUTH_PATH + "/profile", ProfileResponse.class, checked);
+            if (!checked.equals(token)) {
+                return isAuthenticated; // Logged out or in again meanwhile
+            }
+            this.username = response.user().username();
+            this.email = response.user().email();
+            saveUserToPrefs();
+            return true;
+        } catch (ApiClient.ApiException e) {
+            if (e.getStatusCode() != 401 && e.getStatusCode() != 403) {
+                throw e;
+            }
+            System.out.println("Stored session refused by the server: " + e.getMessage());
+            if (checked.equals(token)) {
+                logout();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Check the expiry time written in the token, without asking the server
+     * @return True if the token has expired; false if it has not, or cannot be read
+     */
+    public boolean isTokenExpired() {
+        String current = token;
+        if (current == null) {
+            return false;
+        }
+        try {
+            String[] parts = current.split("\\.");
+            byte[] payload = Base64.getUrlDecoder().decode(parts[1]);
+            JsonNode exp = Json.MAPPER.readTree(payload).path("exp");
+            return exp.isNumber() && exp.asLong() * 1000 <= System.currentTimeMillis();
+        } catch (IOException | RuntimeException e) {
+            // Not a token we can read: let the server decide
+            return false;
+        }
+    }
+
     /**
      * Update user profile information
      * @param newUsername New username (or null to keep current)
@@ -245,38 +269,75 @@ public class User {
             return false;
         }
 
-        JSONObject requestBody = new JSONObject();
-        if (newUsername != null) {
-            requestBody.put("username", newUsername);
-        }
-        if (newEmail != null) {
-            requestBody.put("email", newEmail);
-        }
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(AUTH_ENDPOINT + "/profile"))
-                .header("Content-Type", "application/json")
-                .header("Authorization", "Bearer " + token)
-                .PUT(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
-                .build();
-
-        HttpResponse<String> response = httpClient.send(request,
-                HttpResponse.BodyHandlers.ofString());
-
-        if (response.statusCode() == 200) {
-            // Update successful
-            JSONObject responseBody = new JSONObject(response.body());
-            JSONObject user = responseBody.getJSONObject("user");
-            this.username = user.getString("username");
-            this.email = user.getString("email");
+        try {
+            ProfileResponse response = api.put(AUTH_PATH + "/profile",
+                    new ProfileUpdate(newUsername, newEmail), ProfileResponse.class, token);
+            this.username = response.user().username();
+            this.email = response.user().email();
             saveUserToPrefs();
             return true;
-        } else {
+        } catch (ApiClient.ApiException e) {
             // Update failed
             return false;
         }
     }
 
+    /**
+     * Register a new user without blocking the calling thread
+     * @param username The desired username
+     * @param email The user's email
+     * @param password The user's password
+     * @param deadline Maximum time to wait for the whole operation
+     * @return Completes with true if registration was successful; cancelling it aborts the request
+     */
+    public CompletableFuture<Boolean> registerAsync(String username, String email, String password,
+                                                    Duration deadline) {
+        return runAsync(() -> register(username, email, password), deadline);
+    }
+
+    /**
+     * Log in without blocking the calling thread
+     * @param username The username
+     * @param password The password
+     * @param deadline Maximum time to wait for the whole operation
+     * @return Completes with true if login was successful; cancelling it aborts the request
+     */
+    public CompletableFuture<Boolean> loginAsync(String username, String password, Duration deadline) {
+        return runAsync(() -> login(username, password), deadline);
+    }
+
+    /**
+     * Fetch the user profile without blocking the calling thread
+     * @param deadline Maximum time to wait for the whole operation
+     * @return Completes with true if the profile was fetched; cancelling it aborts the request
+     */
+    public CompletableFuture<Boolean> fetchProfileAsync(Duration deadline) {
+        return runAsync(this::fetchProfile, deadline);
+    }
+
+    /**
+     * Run a blocking operation on a virtual thread.
+     * The returned future fails with a TimeoutException once the deadline passes.
+     * When it is cancelled or times out, the virtual thread is interrupted,
+     * which makes HttpClient.send abort the exchange.
+     */
+    private <T> CompletableFuture<T> runAsync(Callable<T> operation, Duration deadline) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> worker = api.getExecutor().submit(() -> {
+            try {
+                result.complete(operation.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (error != null) {
+                worker.cancel(true);
+            }
+        });
+        return result.orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Log out the current user
      */
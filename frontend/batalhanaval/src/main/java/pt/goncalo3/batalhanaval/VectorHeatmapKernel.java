@@ -0,0 +1,31 @@
+package pt.goncalo3.batalhanaval;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link HeatmapKernel} on the Vector API, in the widest vectors the CPU has, with a
+ * scalar loop for the tail. Only loaded when the jdk.incubator.vector module is
+ * present, see {@link HeatmapKernel#get()}.
+ */
+final class VectorHeatmapKernel extends HeatmapKernel {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public String name() {
+        return "vector (" + INTS.length() + " lanes)";
+    }
+
+    @Override
+    public void spread(int[] counts, int[] starts, int shift, int count) {
+        int i = 0;
+        for (int bound = INTS.loopBound(count); i < bound; i += INTS.length()) {
+            IntVector.fromArray(INTS, starts, i)
+                    .add(IntVector.fromArray(INTS, counts, i + shift))
+                    .intoArray(counts, i + shift);
+        }
+        for (; i < count; i++) {
+            counts[i + shift] += starts[i];
+        }
+    }
+}
@@ -3,24 +3,18 @@ package pt.goncalo3.batalhanaval;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressIndicator;
-import javafx.stage.Stage;
 
-import java.io.IOException;
 import java.net.URL;
 import java.util.ResourceBundle;
 
 /**
  * Controller for the waiting/matchmaking view
  */
-public class WaitingController implements Initializable, Game.GameStateListener {
+public class WaitingController implements Initializable, Navigator.Lifecycle, Game.GameStateListener {
 
     @FXML private ProgressIndicator loadingIndicator;
     @FXML private Label statusLabel;
@@ -32,6 +26,20 @@ public class WaitingController implements Initializable, Game.GameStateListener
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
+        // The game is only created when the view is shown, see onShow()
+    }
+
+    /**
+     * Reset the view and start a new matchmaking session every time it is shown
+     */
+    @Override
+    public void onShow() {
+        gameStarted = false;
+        statusLabel.setText("Connecting to game server...");
+        loadingIndicator.setVisible(true);
+        queueInfoLabel.setText("");
+        queueInfoLabel.setVisible(false);
+        cancelButton.setText("CANCEL");
 
         // Initialize the game
         gameInstance = Game.createInstance();
@@ -56,32 +64,14 @@ public class WaitingController implements Initializable, Game.GameStateListener
      */
     @FXML
     public void onCancelClick(ActionEvent event) {
-  
+        if (gameInstance != null) {
             gameInstance.leaveQueue();
             gameInstance = null; // Clear the game instance
-
-            
-            // Return to home view
-            try {
-                URL fxmlUrl = getClass().getResource("/pt/goncalo3/batalhanaval/fxml/home-view.fxml");
-                if (fxmlUrl == null) {
-                    throw new RuntimeException("Cannot find home-view.fxml");
-                }
-
-                FXMLLoader loader = new FXMLLoader(fxmlUrl);
-                Parent homeRoot = loader.load();
-
-                Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-                Scene scene = new Scene(homeRoot, 400, 600);
-
-                stage.setTitle("Battleship – Home");
-                stage.setScene(scene);
-                stage.show();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
-    
+
+        // Return to home view
+        Navigator.getInstance().show(Navigator.View.HOME);
+    }
 
     // Game.GameStateListener implementation
     @Override
@@ -115,24 +105,7 @@ public class WaitingController implements Initializable, Game.GameStateListener
             loadingIndicator.setVisible(false);
             
             // Transition to ship placement view
-            try {
-                URL fxmlUrl = getClass().getResource("/pt/goncalo3/batalhanaval/fxml/ship-placement-view.fxml");
-                if (fxmlUrl == null) {
-                    throw new RuntimeException("Cannot find ship-placement-view.fxml");
-                }
-
-                FXMLLoader loader = new FXMLLoader(fxmlUrl);
-                Parent placementRoot = loader.load();
-
-                Stage stage = (Stage) cancelButton.getScene().getWindow();
-                Scene scene = new Scene(placementRoot, 800, 900);
-
-                stage.setTitle("Battleship – Place Your Ships");
-                stage.setScene(scene);
-                stage.show();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            Navigator.getInstance().show(Navigator.View.SHIP_PLACEMENT);
         });
     }
 
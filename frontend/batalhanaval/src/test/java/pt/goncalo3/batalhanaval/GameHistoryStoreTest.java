@@ -0,0 +1,208 @@
+package pt.goncalo3.batalhanaval;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks {@link GameHistoryStore} on its own data directory, including recovery from
+ * files left inconsistent by a crash
+ */
+class GameHistoryStoreTest {
+    private static final String DATA_DIR_PROPERTY = "batalhanaval.dataDir";
+    private static final int INDEX_MAGIC = 0x47494458;  // "GIDX"
+
+    @TempDir
+    Path dataDir;
+    private String previousDataDir;
+    private final List<GameHistoryStore> stores = new ArrayList<>();
+
+    @BeforeEach
+    void useDataDir() {
+        previousDataDir = System.getProperty(DATA_DIR_PROPERTY);
+        System.setProperty(DATA_DIR_PROPERTY, dataDir.toString());
+    }
+
+    @AfterEach
+    void restoreDataDir() throws IOException {
+        for (GameHistoryStore store : stores) {
+            store.close();
+        }
+        if (previousDataDir != null) {
+            System.setProperty(DATA_DIR_PROPERTY, previousDataDir);
+        } else {
+            System.clearProperty(DATA_DIR_PROPERTY);
+        }
+    }
+
+    @Test
+    void findsGamesByDateOpponentAndOutcome() throws Exception {
+        GameHistoryStore store = open();
+        List<GameRecord> games = List.of(
+                game(1_000, "Alice", GameRecord.Outcome.WIN),
+                game(2_000, "bob", GameRecord.Outcome.LOSS),
+                game(3_000, "ALICE", GameRecord.Outcome.LOSS),
+                game(4_000, null, GameRecord.Outcome.ABANDONED),
+                game(5_000, "alice", GameRecord.Outcome.WIN));
+        for (int id = 0; id < games.size(); id++) {
+            assertEquals(id, store.append(games.get(id)).get());
+        }
+
+        assertEquals(games.size(), store.size());
+        assertArrayEquals(new int[]{1, 2, 3}, store.findBetween(2_000, 5_000));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, store.findBetween(0, 10_000));
+        assertArrayEquals(new int[0], store.findBetween(6_000, 7_000));
+        assertArrayEquals(new int[]{0, 2, 4}, store.findByOpponent("alice"));
+        assertArrayEquals(new int[]{1}, store.findByOpponent("Bob"));
+        assertArrayEquals(new int[0], store.findByOpponent("carol"));
+        assertArrayEquals(new int[]{0, 4}, store.findByOutcome(GameRecord.Outcome.WIN));
+        assertArrayEquals(new int[]{1, 2}, store.findByOutcome(GameRecord.Outcome.LOSS));
+        assertArrayEquals(new int[]{3}, store.findByOutcome(GameRecord.Outcome.ABANDONED));
+        for (int id = 0; id < games.size(); id++) {
+            assertGame(games.get(id), store.read(id));
+        }
+
+        // The same after reopening
+        store.close();
+        GameHistoryStore reopened = open();
+        assertEquals(games.size(), reopened.size());
+        assertArrayEquals(new int[]{0, 2, 4}, reopened.findByOpponent("ALICE"));
+        assertGame(games.get(3), reopened.read(3));
+    }
+
+    @Test
+    void dropsTruncatedLastRecord() throws Exception {
+        List<GameRecord> games = appendGames(3);
+        Path log = dataDir.resolve("history.log");
+        long size = Files.size(log);
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            file.setLength(size - 5);
+        }
+
+        GameHistoryStore store = open();
+        assertEquals(2, store.size());
+        assertGame(games.get(1), store.read(1));
+        // The partial record is cut off, so the next game follows the last complete one
+        GameRecord next = game(9_000, "dave", GameRecord.Outcome.WIN);
+        assertEquals(2, store.append(next).get());
+        store.close();
+        GameHistoryStore reopened = open();
+        assertEquals(3, reopened.size());
+        assertGame(next, reopened.read(2));
+    }
+
+    @Test
+    void indexesRecordWrittenWithoutEntry() throws Exception {
+        List<GameRecord> games = appendGames(2);
+        Path index = dataDir.resolve("history.idx");
+        Path saved = dataDir.resolve("saved.idx");
+        Files.copy(index, saved);
+        GameHistoryStore store = open();
+        GameRecord third = game(3_000, "erin", GameRecord.Outcome.LOSS);
+        store.append(third).get();
+        store.close();
+        // As if the process died between writing the record and its entry
+        Files.copy(saved, index, StandardCopyOption.REPLACE_EXISTING);
+
+        GameHistoryStore reopened = open();
+        assertEquals(3, reopened.size());
+        assertGame(games.get(0), reopened.read(0));
+        assertGame(third, reopened.read(2));
+        assertArrayEquals(new int[]{2}, reopened.findByOpponent("erin"));
+    }
+
+    @Test
+    void rebuildsDamagedIndexOnce() throws Exception {
+        List<GameRecord> games = appendGames(3);
+        Path index = dataDir.resolve("history.idx");
+        try (RandomAccessFile file = new RandomAccessFile(index.toFile(), "rw")) {
+            file.writeInt(0x12345678);
+        }
+
+        GameHistoryStore store = open();
+        assertEquals(3, store.size());
+        assertGame(games.get(2), store.read(2));
+        store.close();
+        // The header is valid again and counts every game, so the next open rebuilds nothing
+        try (RandomAccessFile file = new RandomAccessFile(index.toFile(), "r")) {
+            assertEquals(INDEX_MAGIC, file.readInt());
+            file.readInt();
+            assertEquals(3, file.readLong());
+        }
+        assertEquals(3, open().size());
+    }
+
+    @Test
+    void rebuildsTruncatedIndex() throws Exception {
+        List<GameRecord> games = appendGames(3);
+        // Still counts 3 games, but only has room for part of one entry
+        try (RandomAccessFile file = new RandomAccessFile(dataDir.resolve("history.idx").toFile(), "rw")) {
+            file.setLength(40);
+        }
+
+        GameHistoryStore store = open();
+        assertEquals(3, store.size());
+        assertGame(games.get(2), store.read(2));
+        assertArrayEquals(new int[]{0, 1, 2}, store.findBetween(0, Long.MAX_VALUE));
+    }
+
+    private GameHistoryStore open() {
+        GameHistoryStore store = new GameHistoryStore();
+        stores.add(store);
+        return store;
+    }
+
+    private List<GameRecord> appendGames(int count) throws Exception {
+        GameHistoryStore store = open();
+        List<GameRecord> games = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            GameRecord game = game(1_000L * (i + 1), "player" + i, GameRecord.Outcome.values()[i % 3]);
+            store.append(game).get();
+            games.add(game);
+        }
+        store.close();
+        return games;
+    }
+
+    static GameRecord game(long startedAt, String opponent, GameRecord.Outcome outcome) {
+        List<Ship> fleet = List.of(new Ship(0, 0, 0, 4, true), new Ship(1, 9, 2, 3, false));
+        List<Ship> opponentFleet = List.of(new Ship(0, 5, 5, 2, true));
+        List<GameRecord.Move> moves = List.of(
+                new GameRecord.Move(true, 5, 5, GameRecord.Result.HIT, 1_230),
+                new GameRecord.Move(false, 0, 0, GameRecord.Result.HIT, 2_500),
+                new GameRecord.Move(true, 6, 5, GameRecord.Result.SUNK, 4_010),
+                new GameRecord.Move(false, 15, 15, GameRecord.Result.MISS, 4_020));
+        return new GameRecord(startedAt, startedAt + 60_000, opponent, outcome, fleet, opponentFleet, moves);
+    }
+
+    static void assertGame(GameRecord expected, GameRecord actual) {
+        assertEquals(expected.startedAt(), actual.startedAt());
+        assertEquals(expected.endedAt(), actual.endedAt());
+        assertEquals(expected.opponent(), actual.opponent());
+        assertEquals(expected.outcome(), actual.outcome());
+        assertEquals(expected.moves(), actual.moves());
+        assertFleet(expected.fleet(), actual.fleet());
+        assertFleet(expected.opponentFleet(), actual.opponentFleet());
+    }
+
+    static void assertFleet(List<Ship> expected, List<Ship> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Ship a = expected.get(i), b = actual.get(i);
+            assertEquals(List.of(a.getPosX(), a.getPosY(), a.getLength(), a.isHorizontal()),
+                    List.of(b.getPosX(), b.getPosY(), b.getLength(), b.isHorizontal()), "ship " + i);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package pt.goncalo3.batalhanaval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the compact encoding of moves and ships used by {@link GameHistoryStore}
+ */
+class GameRecordTest {
+
+    @Test
+    void movesRoundTrip() {
+        Random random = new Random(1);
+        List<GameRecord.Move> moves = new ArrayList<>();
+        long atMs = 0;
+        for (int i = 0; i < 500; i++) {
+            atMs += random.nextInt(5_000) / 10 * 10;  // Whole 10 ms units survive exactly
+            moves.add(new GameRecord.Move(random.nextBoolean(), random.nextInt(16), random.nextInt(16),
+                    GameRecord.Result.values()[random.nextInt(3)], atMs));
+        }
+        int[] packed = GameRecord.packMoves(moves);
+        assertEquals(moves, GameRecord.unpackMoves(packed));
+        for (int i = 0; i < packed.length; i++) {
+            GameRecord.Move move = moves.get(i);
+            assertEquals(move.x(), GameRecord.moveX(packed[i]));
+            assertEquals(move.y(), GameRecord.moveY(packed[i]));
+            assertEquals(move.byPlayer(), GameRecord.isPlayerMove(packed[i]));
+            assertEquals(move.result() != GameRecord.Result.MISS, GameRecord.isHit(packed[i]));
+        }
+    }
+
+    @Test
+    void moveTimesRoundDownAndCapTheGap() {
+        List<GameRecord.Move> moves = List.of(
+                new GameRecord.Move(true, 1, 2, GameRecord.Result.MISS, 1_239),
+                new GameRecord.Move(false, 3, 4, GameRecord.Result.HIT, 1_240),
+                // More than the 21-bit gap of about 5.8 hours
+                new GameRecord.Move(true, 5, 6, GameRecord.Result.SUNK, 1_240 + 30_000_000L));
+        List<GameRecord.Move> unpacked = GameRecord.unpackMoves(GameRecord.packMoves(moves));
+        assertEquals(1_230, unpacked.get(0).atMs());
+        assertEquals(1_240, unpacked.get(1).atMs());
+        assertEquals(1_240 + ((1 << 21) - 1) * 10L, unpacked.get(2).atMs());
+        assertEquals(GameRecord.Result.SUNK, unpacked.get(2).result());
+    }
+
+    @Test
+    void shipsRoundTrip() {
+        int id = 0;
+        for (int length = 1; length <= 15; length++) {
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    for (boolean horizontal : new boolean[]{false, true}) {
+                        Ship ship = new Ship(id, x, y, length, horizontal);
+                        Ship unpacked = GameRecord.unpackShip(id, GameRecord.packShip(ship));
+                        assertEquals(List.of(id, x, y, length, horizontal), List.of(unpacked.getId(),
+                                unpacked.getPosX(), unpacked.getPosY(), unpacked.getLength(), unpacked.isHorizontal()));
+                        id++;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package pt.goncalo3.batalhanaval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+/**
+ * Checks that the scalar and vector {@link HeatmapKernel} count exactly what adding up
+ * every placement one by one counts. Needs --add-modules=jdk.incubator.vector, which
+ * the build passes to the tests.
+ */
+class HeatmapKernelTest {
+    // Sizes around the vector lengths, so the loops run with and without a tail
+    private static final int[] SIZES = {1, 2, 5, 7, 8, 9, 10, 15, 16, 17, 31, 32, 33, 64};
+    private static final int MAX_LENGTH = 6;
+
+    @Test
+    void vectorKernelIsUsed() {
+        assertNotSame(HeatmapKernel.scalar(), HeatmapKernel.get(), "run the tests with --add-modules=jdk.incubator.vector");
+    }
+
+    @Test
+    void kernelsMatchPlacementByPlacement() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int size : SIZES) {
+            int cells = size * size;
+            int[] expected = new int[cells];
+            int[] scalar = new int[cells];
+            int[] vector = new int[cells];
+            for (int length = 1; length <= Math.min(MAX_LENGTH, size); length++) {
+                int[] horizontal = new int[cells];
+                int[] vertical = new int[cells];
+                for (int y = 0; y < size; y++) {
+                    for (int x = 0; x < size; x++) {
+                        // Some placements ruled out, some through open hits, as DensityTargeting weighs them
+                        if (x + length <= size) {
+                            horizontal[y * size + x] = weight(random);
+                        }
+                        if (y + length <= size) {
+                            vertical[y * size + x] = weight(random);
+                        }
+                    }
+                }
+                for (int start = 0; start < cells; start++) {
+                    for (int k = 0; k < length; k++) {
+                        if (horizontal[start] != 0) {
+                            expected[start + k] += horizontal[start];
+                        }
+                        if (vertical[start] != 0) {
+                            expected[start + k * size] += vertical[start];
+                        }
+                    }
+                }
+                HeatmapKernel.scalar().placements(scalar, horizontal, vertical, length, size);
+                HeatmapKernel.get().placements(vector, horizontal, vertical, length, size);
+                assertArrayEquals(expected, scalar, "scalar, " + size + "x" + size + " up to length " + length);
+                assertArrayEquals(expected, vector, HeatmapKernel.get().name() + ", " + size + "x" + size + " up to length " + length);
+            }
+        }
+    }
+
+    @Test
+    void spreadAddsAtShift() {
+        SplittableRandom random = new SplittableRandom(8);
+        for (int count = 0; count < 70; count++) {
+            for (int shift : new int[]{0, 1, 3, 10, 17}) {
+                int[] starts = random.ints(count, 0, 1000).toArray();
+                int[] expected = random.ints(count + shift + 5, 0, 1000).toArray();
+                int[] scalar = expected.clone();
+                int[] vector = expected.clone();
+                for (int i = 0; i < count; i++) {
+                    expected[i + shift] += starts[i];
+                }
+                HeatmapKernel.scalar().spread(scalar, starts, shift, count);
+                HeatmapKernel.get().spread(vector, starts, shift, count);
+                assertArrayEquals(expected, scalar, "scalar, " + count + " at " + shift);
+                assertArrayEquals(expected, vector, "vector, " + count + " at " + shift);
+            }
+        }
+    }
+
+    private static int weight(SplittableRandom random) {
+        return random.nextInt(4) == 0 ? 0 : 1 << 4 * random.nextInt(3);
+    }
+}
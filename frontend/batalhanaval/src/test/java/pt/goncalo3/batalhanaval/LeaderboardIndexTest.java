@@ -0,0 +1,183 @@
+package pt.goncalo3.batalhanaval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks {@link LeaderboardIndex} against sorting and filtering the whole leaderboard by brute force
+ */
+class LeaderboardIndexTest {
+    // More names share each prefix than a trie node holds before it bursts
+    private static final String[] PREFIXES = {"player", "Player_", "pro", "sea", "Z"};
+
+    @Test
+    void prefixQueriesMatchAcrossBursts() {
+        List<Leaderboard.Row> board = randomBoard(new Random(1), 600);
+        LeaderboardIndex index = new LeaderboardIndex();
+        index.addRows(0, board);
+
+        for (String prefix : new String[]{"", "p", "P", "pl", "PLAYER", "player1", "player_1", "player12",
+                "pro4", "sea", "z", "zz", "x", "player1234567"}) {
+            assertQuery(board, index, prefix, LeaderboardIndex.SortKey.RANK, false);
+        }
+    }
+
+    @Test
+    void everyKeySortsBothWays() {
+        List<Leaderboard.Row> board = randomBoard(new Random(2), 400);
+        LeaderboardIndex index = new LeaderboardIndex();
+        index.addRows(0, board);
+
+        for (LeaderboardIndex.SortKey key : LeaderboardIndex.SortKey.values()) {
+            for (boolean descending : new boolean[]{false, true}) {
+                assertQuery(board, index, "", key, descending);
+                assertQuery(board, index, "p", key, descending);    // Many matches: scans the order
+                assertQuery(board, index, "sea1", key, descending); // Few: sorts them by position
+            }
+        }
+    }
+
+    @Test
+    void pagesAddedOutOfOrderAndAgain() {
+        List<Leaderboard.Row> board = randomBoard(new Random(3), 250);
+        LeaderboardIndex index = new LeaderboardIndex();
+        index.addRows(200, board.subList(200, 250));
+        index.addRows(0, board.subList(0, 100));
+        assertQuery(board.subList(0, 100), board.subList(200, 250), index);
+        index.addRows(100, board.subList(100, 200));
+        index.addRows(0, board.subList(0, 100));  // Fetched again: updates, does not duplicate
+        assertEquals(board.size(), index.size());
+        for (LeaderboardIndex.SortKey key : LeaderboardIndex.SortKey.values()) {
+            assertQuery(board, index, "", key, true);
+        }
+    }
+
+    @Test
+    void deltasKeepTheOrdersValid() {
+        Random random = new Random(4);
+        List<Leaderboard.Row> board = randomBoard(random, 300);
+        LeaderboardIndex index = new LeaderboardIndex();
+        index.addRows(0, board);
+        for (int round = 0; round < 50; round++) {
+            Leaderboard.Delta delta = randomDelta(random, board, round);
+            index.applyDelta(delta);
+            assertEquals(delta.total(), board.size());
+            assertEquals(board.size(), index.size());
+            // Query between deltas, so changes are merged into orders built before
+            LeaderboardIndex.SortKey key = LeaderboardIndex.SortKey.values()[round % LeaderboardIndex.SortKey.values().length];
+            assertQuery(board, index, "", key, round % 2 == 0);
+            assertQuery(board, index, PREFIXES[round % PREFIXES.length].substring(0, 1), key, round % 2 == 1);
+        }
+    }
+
+    /**
+     * Make a leaderboard sorted by rank, with stats that tie often
+     */
+    static List<Leaderboard.Row> randomBoard(Random random, int players) {
+        List<Leaderboard.Row> board = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            board.add(randomRow(random, PREFIXES[random.nextInt(PREFIXES.length)] + i));
+        }
+        return board;
+    }
+
+    static Leaderboard.Row randomRow(Random random, String username) {
+        int wins = random.nextInt(20);
+        int losses = random.nextInt(20);
+        int total = wins + losses;
+        return new Leaderboard.Row(username, wins, losses, total, total == 0 ? 0 : 100.0 * wins / total);
+    }
+
+    /**
+     * Make a delta for a leaderboard, and apply it to the list: a few players change,
+     * some of them new, and every changed player moves to a random rank
+     */
+    static Leaderboard.Delta randomDelta(Random random, List<Leaderboard.Row> board, int round) {
+        List<String> changed = new ArrayList<>();
+        List<Integer> previousRanks = new ArrayList<>();
+        int existing = 1 + random.nextInt(4);
+        while (changed.size() < existing) {
+            int rank = 1 + random.nextInt(board.size());
+            String username = board.get(rank - 1).username();
+            if (!changed.contains(username)) {
+                changed.add(username);
+                previousRanks.add(rank);
+            }
+        }
+        int added = random.nextInt(3);
+        for (int i = 0; i < added; i++) {
+            changed.add(PREFIXES[random.nextInt(PREFIXES.length)] + "new" + round + "_" + i);
+            previousRanks.add(null);
+        }
+        board.removeIf(row -> changed.contains(row.username()));
+        int total = board.size() + changed.size();
+        List<Integer> ranks = random.ints(1, total + 1).distinct().limit(changed.size()).sorted().boxed().toList();
+        List<Leaderboard.Change> changes = new ArrayList<>();
+        for (int i = 0; i < changed.size(); i++) {
+            Leaderboard.Row row = randomRow(random, changed.get(i));
+            changes.add(new Leaderboard.Change(row.username(), row.wins(), row.losses(), row.totalGames(),
+                    row.winPercentage(), ranks.get(i), previousRanks.get(i)));
+        }
+        List<Leaderboard.Change> ascending = new ArrayList<>(changes);
+        ascending.sort(Comparator.comparingInt(Leaderboard.Change::rank));
+        for (Leaderboard.Change change : ascending) {
+            board.add(change.rank() - 1, change.row());
+        }
+        return new Leaderboard.Delta(total, changes);
+    }
+
+    private static void assertQuery(List<Leaderboard.Row> first, List<Leaderboard.Row> second, LeaderboardIndex index) {
+        // Two separate slices of a leaderboard: their rows keep their ranks
+        List<String> expected = new ArrayList<>();
+        first.forEach(row -> expected.add(row.username()));
+        second.forEach(row -> expected.add(row.username()));
+        assertEquals(expected, usernames(index, index.query("", LeaderboardIndex.SortKey.RANK, false)));
+    }
+
+    private static void assertQuery(List<Leaderboard.Row> board, LeaderboardIndex index, String prefix,
+                                    LeaderboardIndex.SortKey key, boolean descending) {
+        List<Integer> ranks = new ArrayList<>();
+        for (int i = 0; i < board.size(); i++) {
+            if (board.get(i).username().regionMatches(true, 0, prefix, 0, prefix.length())) {
+                ranks.add(i + 1);
+            }
+        }
+        // Largest first, ties by rank; the other way round is the exact reverse
+        Comparator<Integer> byValue = Comparator.comparingDouble((Integer rank) -> -value(board.get(rank - 1), key));
+        Comparator<Integer> order = key == LeaderboardIndex.SortKey.RANK
+                ? Comparator.naturalOrder() : byValue.thenComparing(Comparator.naturalOrder());
+        ranks.sort(key == LeaderboardIndex.SortKey.RANK == descending ? order.reversed() : order);
+        List<String> expected = ranks.stream().map(rank -> board.get(rank - 1).username()).toList();
+
+        int[] slots = index.query(prefix, key, descending);
+        assertEquals(expected, usernames(index, slots), "'" + prefix + "' by " + key + (descending ? " descending" : ""));
+        for (int slot : slots) {
+            LeaderboardEntry entry = index.entry(slot);
+            assertEquals(entry.getUsername(), board.get(entry.getRank() - 1).username(), "rank of " + entry.getUsername());
+        }
+    }
+
+    private static double value(Leaderboard.Row row, LeaderboardIndex.SortKey key) {
+        return switch (key) {
+            case RANK -> 0;
+            case WINS -> row.wins();
+            case LOSSES -> row.losses();
+            case TOTAL_GAMES -> row.totalGames();
+            case WIN_PERCENTAGE -> (float) row.winPercentage();
+        };
+    }
+
+    private static List<String> usernames(LeaderboardIndex index, int[] slots) {
+        List<String> usernames = new ArrayList<>();
+        for (int slot : slots) {
+            usernames.add(index.entry(slot).getUsername());
+        }
+        return usernames;
+    }
+}
@@ -0,0 +1,189 @@
+package pt.goncalo3.batalhanaval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks how {@link LeaderboardPages#applyDelta} shifts the rows of the pages it holds,
+ * against the whole leaderboard updated by brute force
+ */
+class LeaderboardPagesTest {
+    private static final int PAGE = LeaderboardPages.PAGE_SIZE;
+
+    @Test
+    void moveUpWithinPage() {
+        List<Leaderboard.Row> board = LeaderboardIndexTest.randomBoard(new Random(1), 200);
+        LeaderboardPages pages = pages(board, 0);
+        assertTrue(pages.applyDelta(move(board, 10, 3)));
+        assertRows(board, pages);
+        assertKnown(pages, 0, PAGE);
+    }
+
+    @Test
+    void moveDownWithinPage() {
+        List<Leaderboard.Row> board = LeaderboardIndexTest.randomBoard(new Random(2), 200);
+        LeaderboardPages pages = pages(board, 0);
+        assertTrue(pages.applyDelta(move(board, 3, 40)));
+        assertRows(board, pages);
+        assertKnown(pages, 0, PAGE);
+    }
+
+    @Test
+    void moveAcrossPageBoundary() {
+        List<Leaderboard.Row> board = LeaderboardIndexTest.randomBoard(new Random(3), 200);
+        LeaderboardPages pages = pages(board, 0, 1);
+        assertTrue(pages.applyDelta(move(board, 10, 70)));
+        assertRows(board, pages);
+        assertKnown(pages, 0, 2 * PAGE);
+        assertTrue(pages.applyDelta(move(board, 95, 1)));
+        assertRows(board, pages);
+        assertKnown(pages, 0, 2 * PAGE);
+    }
+
+    @Test
+    void moveIntoUnloadedPage() {
+        List<Leaderboard.Row> board = LeaderboardIndexTest.randomBoard(new Random(4), 200);
+        LeaderboardPages pages = pages(board, 0);
+        assertTrue(pages.applyDelta(move(board, 5, 120)));
+        assertRows(board, pages);
+        // The last row of the page came from page 1, which is not loaded
+        assertKnown(pages, 0, PAGE - 1);
+        assertNull(pages.rowAt(PAGE - 1));
+        assertEquals(1, pages.getLoadedPageCount());
+    }
+
+    @Test
+    void moveOutOfUnloadedPage() {
+        List<Leaderboard.Row> board = LeaderboardIndexTest.randomBoard(new Random(5), 200);
+        LeaderboardPages pages = pages(board, 0, 3);
+        assertTrue(pages.applyDelta(move(board, 120, 2)));
+        assertRows(board, pages);
+        assertKnown(pages, 0, PAGE);
+        // Page 3 starts with the last row of page 2, which is not loaded
+        assertNull(pages.rowAt(3 * PAGE));
+        assertKnown(pages, 3 * PAGE + 1, 4 * PAGE);
+    }
+
+    @Test
+    void moveBetweenEvictedPages() {
+        List<Leaderboard.Row> board = LeaderboardIndexTest.randomBoard(new Random(6), (LeaderboardPages.MAX_PAGES + 2) * PAGE);
+        LeaderboardPages pages = pages(board, 0);
+        for (int page = 1; page <= LeaderboardPages.MAX_PAGES + 1; page++) {
+            pages.addPage(page(board, page));
+        }
+        // Pages 0 and 1 were the least recently used
+        assertEquals(LeaderboardPages.MAX_PAGES, pages.getLoadedPageCount());
+        assertNull(pages.rowAt(0));
+        assertTrue(pages.applyDelta(move(board, 10, 60)));
+        assertRows(board, pages);
+        assertNull(pages.rowAt(2 * PAGE - 1));
+    }
+
+    @Test
+    void newPlayersChangeTotal() {
+        List<Leaderboard.Row> board = LeaderboardIndexTest.randomBoard(new Random(7), 120);
+        LeaderboardPages pages = pages(board, 0, 2);
+        Leaderboard.Row newcomer = new Leaderboard.Row("newcomer", 1, 0, 1, 100);
+        board.add(4, newcomer);
+        Leaderboard.Change change = new Leaderboard.Change(newcomer.username(), newcomer.wins(), newcomer.losses(),
+                newcomer.totalGames(), newcomer.winPercentage(), 5, null);
+        assertTrue(pages.applyDelta(new Leaderboard.Delta(board.size(), List.of(change))));
+        assertEquals(121, pages.size());
+        assertRows(board, pages);
+        assertKnown(pages, 0, PAGE);
+        // Page 2 is not full: it grew by the row shifted in from page 1
+        assertNull(pages.rowAt(2 * PAGE));
+        assertKnown(pages, 2 * PAGE + 1, 121);
+    }
+
+    @Test
+    void rejectsDeltaForAnotherTotal() {
+        List<Leaderboard.Row> board = LeaderboardIndexTest.randomBoard(new Random(8), 100);
+        LeaderboardPages pages = pages(board, 0);
+        Leaderboard.Row row = board.get(9);
+        Leaderboard.Change change = new Leaderboard.Change(row.username(), row.wins(), row.losses(),
+                row.totalGames(), row.winPercentage(), 1, 10);
+        assertFalse(pages.applyDelta(new Leaderboard.Delta(101, List.of(change))));
+        assertFalse(pages.applyDelta(new Leaderboard.Delta(100, List.of(new Leaderboard.Change(
+                row.username(), 0, 0, 0, 0, 101, 10)))));
+        // Left as it was
+        assertEquals(100, pages.size());
+        assertRows(board, pages);
+        assertKnown(pages, 0, PAGE);
+    }
+
+    @Test
+    void randomDeltasKeepKnownRowsRight() {
+        Random random = new Random(9);
+        List<Leaderboard.Row> board = LeaderboardIndexTest.randomBoard(random, 6 * PAGE);
+        LeaderboardPages pages = pages(board, 0, 2, 3, 5);
+        for (int round = 0; round < 100; round++) {
+            assertTrue(pages.applyDelta(LeaderboardIndexTest.randomDelta(random, board, round)), "round " + round);
+            assertEquals(board.size(), pages.size());
+            assertRows(board, pages);
+        }
+    }
+
+    /**
+     * Make the list of a leaderboard holding some of its pages
+     */
+    private static LeaderboardPages pages(List<Leaderboard.Row> board, int... loaded) {
+        LeaderboardPages pages = new LeaderboardPages(page(board, 0), null);
+        for (int page : loaded) {
+            if (page != 0) {
+                pages.addPage(page(board, page));
+            }
+        }
+        return pages;
+    }
+
+    private static Leaderboard.Page page(List<Leaderboard.Row> board, int page) {
+        int from = page * PAGE;
+        return new Leaderboard.Page(from, List.copyOf(board.subList(from, Math.min(from + PAGE, board.size()))), board.size());
+    }
+
+    /**
+     * Move a player to another rank, in the list and as a delta
+     */
+    private static Leaderboard.Delta move(List<Leaderboard.Row> board, int from, int to) {
+        Leaderboard.Row row = board.remove(from - 1);
+        Leaderboard.Row moved = new Leaderboard.Row(row.username(), row.wins() + 1, row.losses(),
+                row.totalGames() + 1, 100.0 * (row.wins() + 1) / (row.totalGames() + 1));
+        board.add(to - 1, moved);
+        return new Leaderboard.Delta(board.size(), List.of(new Leaderboard.Change(moved.username(), moved.wins(),
+                moved.losses(), moved.totalGames(), moved.winPercentage(), to, from)));
+    }
+
+    /**
+     * Every row the list knows is the row at that rank of the whole leaderboard
+     */
+    private static void assertRows(List<Leaderboard.Row> board, LeaderboardPages pages) {
+        assertEquals(board.size(), pages.size());
+        for (int i = 0; i < board.size(); i++) {
+            Leaderboard.Row row = pages.rowAt(i);
+            if (row != null) {
+                assertEquals(key(board.get(i)), key(row), "row " + i);
+            }
+        }
+    }
+
+    private static void assertKnown(LeaderboardPages pages, int from, int to) {
+        for (int i = from; i < to; i++) {
+            assertTrue(pages.rowAt(i) != null, "row " + i + " should be known");
+        }
+    }
+
+    /**
+     * The fields of a row as the pages keep them, with the percentage as a float
+     */
+    private static List<Object> key(Leaderboard.Row row) {
+        return List.of(row.username(), row.wins(), row.losses(), row.totalGames(), (float) row.winPercentage());
+    }
+}
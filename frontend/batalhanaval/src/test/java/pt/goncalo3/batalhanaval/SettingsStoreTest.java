@@ -0,0 +1,124 @@
+package pt.goncalo3.batalhanaval;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the settings file format and that {@link SettingsStore} keeps the latest settings
+ */
+class SettingsStoreTest {
+    private static final String DATA_DIR_PROPERTY = "batalhanaval.dataDir";
+
+    @TempDir
+    Path dataDir;
+    private String previousDataDir;
+
+    @BeforeEach
+    void useDataDir() {
+        previousDataDir = System.getProperty(DATA_DIR_PROPERTY);
+        System.setProperty(DATA_DIR_PROPERTY, dataDir.toString());
+    }
+
+    @AfterEach
+    void restoreDataDir() {
+        if (previousDataDir != null) {
+            System.setProperty(DATA_DIR_PROPERTY, previousDataDir);
+        } else {
+            System.clearProperty(DATA_DIR_PROPERTY);
+        }
+    }
+
+    @Test
+    void encodeDecodeRoundTrip() throws IOException {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("token", "eyJhbGciOiJIUzI1NiJ9.e30.abc");
+        settings.put("username", "Gonçalo 🚢");
+        settings.put("empty", "");
+        for (int i = 0; i < 100; i++) {
+            settings.put("key" + i, "value" + i);
+        }
+        assertEquals(settings, SettingsStore.decode(SettingsStore.encode(settings)));
+        assertEquals(Map.of(), SettingsStore.decode(SettingsStore.encode(Map.of())));
+    }
+
+    @Test
+    void decodeRejectsDamagedContent() throws IOException {
+        byte[] content = SettingsStore.encode(Map.of("token", "abc"));
+        for (int i = 0; i < content.length; i++) {
+            byte[] damaged = content.clone();
+            damaged[i] ^= 0x10;
+            assertThrows(IOException.class, () -> SettingsStore.decode(damaged), "byte " + i);
+        }
+        assertThrows(IOException.class, () -> SettingsStore.decode(Arrays.copyOf(content, content.length - 1)));
+        assertThrows(IOException.class, () -> SettingsStore.decode(new byte[4]));
+    }
+
+    @Test
+    void closeFlushesLastCoalescedWrite() {
+        SettingsStore store = new SettingsStore();
+        store.put("token", "first");
+        store.put("username", "alice");
+        store.put("token", "last");
+        store.put("server", "example.org");
+        store.remove("server");
+        // Within the flush delay: nothing is written until close()
+        store.close();
+
+        SettingsStore reopened = new SettingsStore();
+        assertEquals("last", reopened.get("token"));
+        assertEquals("alice", reopened.get("username"));
+        assertNull(reopened.get("server"));
+    }
+
+    @Test
+    void closeWaitsForRunningFlush() throws InterruptedException {
+        SettingsStore store = new SettingsStore();
+        Thread closer = new Thread(store::close);
+        // flush() locks the store: holding it stops the flush once it has started
+        synchronized (store) {
+            store.put("token", "abc");
+            Thread.sleep(400);  // Past the flush delay: the flush is waiting for the lock
+            closer.start();
+            closer.join(200);
+            assertTrue(closer.isAlive(), "close() returned while a flush was running");
+        }
+        closer.join();
+        assertEquals("abc", new SettingsStore().get("token"));
+    }
+
+    @Test
+    void readsBackupWhenFileIsDamaged() throws IOException {
+        SettingsStore store = new SettingsStore();
+        store.put("token", "abc");
+        store.close();
+
+        Path file = dataDir.resolve("settings.bin");
+        byte[] content = Files.readAllBytes(file);
+        content[content.length / 2] ^= 0x01;
+        Files.write(file, content);
+        assertEquals("abc", new SettingsStore().get("token"));
+
+        Files.delete(file);
+        assertEquals("abc", new SettingsStore().get("token"));
+    }
+
+    @Test
+    void startsEmptyWithoutUsableFile() throws IOException {
+        Files.write(dataDir.resolve("settings.bin"), new byte[]{1, 2, 3});
+        assertNull(new SettingsStore().get("token"));
+    }
+}